@@ -5,15 +5,22 @@ import com.kyochigo.economy.commands.KyochigoCommand;
 import com.kyochigo.economy.expansions.KyochigoExpansion;
 import com.kyochigo.economy.gui.TradeSelectorMenu;
 import com.kyochigo.economy.managers.*;
+import com.kyochigo.economy.model.MarketCatalog;
 import com.kyochigo.economy.utils.CraftEngineHook;
 import com.kyochigo.economy.utils.FancyNpcsHook;
+import com.kyochigo.economy.utils.RateLimiter;
+import com.kyochigo.economy.utils.TaskScheduler;
 import net.milkbowl.vault.economy.Economy;
 import org.bukkit.Bukkit;
 import org.bukkit.plugin.RegisteredServiceProvider;
 import org.bukkit.plugin.java.JavaPlugin;
 
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
@@ -45,6 +52,10 @@ public class KyochigoPlugin extends JavaPlugin {
 
         // 2. ★ 注册 GUI 事件监听器 (必须注册，否则箱子菜单无法点击)
         getServer().getPluginManager().registerEvents(new TradeSelectorMenu(), this);
+        getServer().getPluginManager().registerEvents(components.inventoryManager().getCountCache(), this);
+        getServer().getPluginManager().registerEvents(components.rateLimiter(), this);
+        getServer().getPluginManager().registerEvents(components.exchangeZoneIndex(), this);
+        getServer().getPluginManager().registerEvents(components.pendingDeliveryManager(), this);
 
         long duration = System.currentTimeMillis() - startTime;
         Bukkit.getConsoleSender().sendMessage("§8[§bKyochigo§8] §f系统核心已就绪 §7(" + duration + "ms)");
@@ -80,24 +91,45 @@ public class KyochigoPlugin extends JavaPlugin {
 
     @Override
     public void onDisable() {
+        // 停用期间调度器不再执行本插件任务：异步结果改为就地交付，在途结算得以走完
+        if (components.taskScheduler() != null) components.taskScheduler().beginShutdown();
+        // 先结算已到达的回执，再退回仍在等待后端的预留资产 (须在 Vault 执行通道关闭前完成)
+        components.settleInFlight();
+
         // ★ 在关闭前强制将内存数据同步至后端，防止汇率计算偏差
         if (components.marketManager() != null) {
             components.marketManager().reSyncToBackend();
         }
         
-        components.cleanup();
         integrations.cleanup();
+        components.cleanup();
         getLogger().info("👋 核心进程已断开，所有数据已安全刷入后端。");
     }
 
-    public void reloadPlugin() {
+    /**
+     * 重载配置与市场名录
+     * @return 新配置与名录生效时完成的 Future (后台构建与校验，期间旧配置与名录继续服务；校验失败时以异常结束)
+     */
+    public CompletableFuture<ReloadReport> reloadPlugin() {
         getLogger().info("正在重新加载插件配置与市场数据...");
-        components.reload();
-        getLogger().info("✅ 插件重载完成。");
+        return components.reload().whenComplete((report, error) -> {
+            if (error != null) {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                getLogger().warning("插件重载未生效，继续使用当前配置: " + cause.getMessage());
+                return;
+            }
+            getLogger().info("✅ 插件重载完成，共 " + report.changes().size() + " 项变更。");
+            report.changes().forEach(line -> getLogger().info("  " + line));
+            report.warnings().forEach(line -> getLogger().warning("  " + line));
+        });
     }
 
-    public boolean checkRateLimit(UUID uuid) {
-        return components.rateLimiter().check(uuid, components.configManager().getCooldownMs());
+    /**
+     * 按动作检查玩家操作频率 (令牌桶)
+     * @return false 表示操作过于频繁，调用方应直接拒绝
+     */
+    public boolean checkRateLimit(UUID uuid, RateLimiter.Action action) {
+        return components.rateLimiter().tryAcquire(uuid, action);
     }
 
     private void registerCommands() {
@@ -124,27 +156,73 @@ public class KyochigoPlugin extends JavaPlugin {
     public TransactionManager getTransactionManager() { return components.transactionManager(); }
     public InventoryManager getInventoryManager() { return components.inventoryManager(); }
     public MarketManager getMarketManager() { return components.marketManager(); }
+    public StatisticsManager getStatisticsManager() { return components.statisticsManager(); }
+    public PriceHistoryManager getPriceHistoryManager() { return components.priceHistoryManager(); }
+    public TradeJournal getTradeJournal() { return components.tradeJournal(); }
+    public TradeMetrics getTradeMetrics() { return components.tradeMetrics(); }
+    public AuditLogManager getAuditLogManager() { return components.auditLogManager(); }
+    public RateLimiter getRateLimiter() { return components.rateLimiter(); }
+    public MainThreadDispatcher getMainThreadDispatcher() { return components.mainThreadDispatcher(); }
+    public TaskScheduler getTaskScheduler() { return components.taskScheduler(); }
+    public ExchangeZoneIndex getExchangeZoneIndex() { return components.exchangeZoneIndex(); }
+    public PendingDeliveryManager getPendingDeliveryManager() { return components.pendingDeliveryManager(); }
     public Economy getEconomy() { return integrations.economy(); }
+    public VaultAdapter getVaultAdapter() { return integrations.vaultAdapter(); }
     public Map<UUID, TradeData> getTradeCache() { return components.tradeCache(); }
 
     /**
      * 组件容器：管理所有核心管理器的生命周期
      */
     private static class PluginComponents {
+        private static final int TRADE_JOURNAL_CAPACITY = 4096;
+        private static final long SHUTDOWN_SETTLE_TIMEOUT_MS = 5000L;
+
         private ConfigManager configManager;
         private HistoryManager historyManager;
         private BackendManager backendManager;
         private TransactionManager transactionManager;
         private InventoryManager inventoryManager;
         private MarketManager marketManager;
+        private StatisticsManager statisticsManager;
+        private PriceHistoryManager priceHistoryManager;
+        private TradeJournal tradeJournal;
+        private AuditLogManager auditLogManager;
+        private final TradeMetrics tradeMetrics = new TradeMetrics();
         private CraftEngineHook craftEngineHook;
 
         private final Map<UUID, TradeData> tradeCache = new ConcurrentHashMap<>();
-        private final RateLimiter rateLimiter = new RateLimiter();
+        private RateLimiter rateLimiter;
+        private MainThreadDispatcher mainThreadDispatcher;
+        private TaskScheduler taskScheduler;
+        private ExchangeZoneIndex exchangeZoneIndex;
+        private PendingDeliveryManager pendingDeliveryManager;
 
         boolean initialize(KyochigoPlugin plugin) {
+            // 调度器最先创建：其余组件的定时任务与回调均经由它投递到对应区域
+            this.taskScheduler = new TaskScheduler(plugin);
             this.configManager = new ConfigManager(plugin);
+            this.rateLimiter = new RateLimiter(plugin);
+            this.rateLimiter.start();
+            this.mainThreadDispatcher = new MainThreadDispatcher(plugin);
+            this.mainThreadDispatcher.start();
+            this.exchangeZoneIndex = new ExchangeZoneIndex(plugin);
+            this.exchangeZoneIndex.rebuild(configManager.getExchangeZones());
             this.historyManager = new HistoryManager(plugin);
+            this.pendingDeliveryManager = new PendingDeliveryManager(plugin);
+            this.pendingDeliveryManager.load();
+            this.statisticsManager = new StatisticsManager(plugin);
+            this.statisticsManager.start();
+            this.priceHistoryManager = new PriceHistoryManager(plugin);
+            this.priceHistoryManager.open();
+
+            // 成交日志：历史计数、统计与审计为关键消费者 (不丢事件)，指标为非关键消费者
+            this.auditLogManager = new AuditLogManager(plugin);
+            this.tradeJournal = new TradeJournal(plugin, TRADE_JOURNAL_CAPACITY);
+            this.tradeJournal.register(historyManager);
+            this.tradeJournal.register(statisticsManager);
+            this.tradeJournal.register(auditLogManager);
+            this.tradeJournal.register(tradeMetrics);
+            this.tradeJournal.start();
             this.craftEngineHook = new CraftEngineHook();
             this.inventoryManager = new InventoryManager(this.craftEngineHook);
 
@@ -154,23 +232,76 @@ public class KyochigoPlugin extends JavaPlugin {
             this.marketManager = new MarketManager(plugin, this.craftEngineHook);
             this.marketManager.loadItems();
 
-            // 初始化交易管理器，初始 Economy 注入 null，后续由 Integrations 补齐
+            // 初始化交易管理器，初始经济适配层注入 null，后续由 Integrations 补齐
             this.transactionManager = new TransactionManager(plugin, inventoryManager, 
                 backendManager, null, tradeCache);
 
             return true;
         }
 
-        void reload() {
-            configManager.reload();
-            historyManager.reload();
-            marketManager.loadItems();
+        /**
+         * 热重载流水线 (全程不阻塞 Tick)
+         * 1. 异步读取并校验 config.yml，任何问题都使本次重载失败，当前配置保持不变；
+         * 2. 以新配置的 items 节点构建名录 (异步解析 + 跨 Tick 预热图标)，并校验解析结果；
+         * 3. 在同一个全局区域任务内切换配置与名录、重建交易所索引、重启统计，读者不会看到新旧混合的状态。
+         * 进行中的交易持有旧名录的 MarketItem 与各自的资产事务，按发起时的快照完成结算。
+         * 历史计数只存于内存并定期落盘，重载不再从磁盘回读，避免丢失未保存的计数。
+         */
+        CompletableFuture<ReloadReport> reload() {
+            CompletableFuture<ConfigManager.ConfigData> loaded = CompletableFuture.supplyAsync(() -> {
+                ConfigManager.ConfigData next;
+                try {
+                    next = configManager.load();
+                } catch (Exception e) {
+                    throw new CompletionException(new IllegalStateException("config.yml 解析失败: " + e.getMessage(), e));
+                }
+                List<String> problems = configManager.validate(next);
+                if (!problems.isEmpty()) {
+                    throw new CompletionException(new IllegalStateException("配置校验失败: " + String.join("; ", problems)));
+                }
+                return next;
+            });
+
+            return loaded.thenCompose(next -> marketManager.buildCatalog(next.getItemsSection()).thenApply(catalog -> {
+                int declared = next.getItemsSection().getKeys(false).size();
+                if (declared > 0 && catalog.isEmpty()) {
+                    throw new IllegalStateException("名录校验失败: " + declared + " 个物品配置全部无效");
+                }
+                if (!marketManager.isLatest(catalog)) {
+                    throw new CancellationException("已被更新的重载取代");
+                }
+
+                // 切换点：以下均在全局区域线程的同一任务内完成
+                ConfigManager.ConfigData previousConfig = configManager.getData();
+                MarketCatalog previousCatalog = marketManager.getCatalog();
+                configManager.apply(next);
+                // backend.max-in-flight 可能已调高：立即放行排队请求至新上限
+                backendManager.getAdmission().drain();
+                marketManager.publishCatalog(catalog);
+                exchangeZoneIndex.rebuild(configManager.getExchangeZones());
+                statisticsManager.start();
+                return ReloadReport.diff(previousConfig, next, previousCatalog, catalog);
+            }));
+        }
+
+        void settleInFlight() {
+            if (mainThreadDispatcher != null) mainThreadDispatcher.stop();
+            if (transactionManager != null) transactionManager.shutdown(SHUTDOWN_SETTLE_TIMEOUT_MS);
         }
 
         void cleanup() {
+            if (rateLimiter != null) rateLimiter.stop();
+            if (mainThreadDispatcher != null) mainThreadDispatcher.stop();
             if (backendManager != null) backendManager.stopProcess();
+            if (marketManager != null) marketManager.abortPendingBuilds();
+            // 先排空成交日志，确保历史计数落盘前已包含全部成交
+            if (tradeJournal != null) tradeJournal.stop();
+            if (auditLogManager != null) auditLogManager.close();
+            if (statisticsManager != null) statisticsManager.stop();
+            if (priceHistoryManager != null) priceHistoryManager.close();
             if (configManager != null) configManager.save();
             if (historyManager != null) historyManager.save();
+            if (pendingDeliveryManager != null) pendingDeliveryManager.save();
             tradeCache.clear();
         }
 
@@ -181,9 +312,18 @@ public class KyochigoPlugin extends JavaPlugin {
         TransactionManager transactionManager() { return transactionManager; }
         InventoryManager inventoryManager() { return inventoryManager; }
         MarketManager marketManager() { return marketManager; }
+        StatisticsManager statisticsManager() { return statisticsManager; }
+        PriceHistoryManager priceHistoryManager() { return priceHistoryManager; }
+        TradeJournal tradeJournal() { return tradeJournal; }
+        TradeMetrics tradeMetrics() { return tradeMetrics; }
+        AuditLogManager auditLogManager() { return auditLogManager; }
         CraftEngineHook craftEngineHook() { return craftEngineHook; }
         Map<UUID, TradeData> tradeCache() { return tradeCache; }
         RateLimiter rateLimiter() { return rateLimiter; }
+        MainThreadDispatcher mainThreadDispatcher() { return mainThreadDispatcher; }
+        TaskScheduler taskScheduler() { return taskScheduler; }
+        ExchangeZoneIndex exchangeZoneIndex() { return exchangeZoneIndex; }
+        PendingDeliveryManager pendingDeliveryManager() { return pendingDeliveryManager; }
     }
 
     /**
@@ -191,6 +331,7 @@ public class KyochigoPlugin extends JavaPlugin {
      */
     private static class PluginIntegrations {
         private Economy economy;
+        private VaultAdapter vaultAdapter;
         private boolean papiEnabled;
 
         boolean initialize(KyochigoPlugin plugin, PluginComponents components) {
@@ -200,8 +341,10 @@ public class KyochigoPlugin extends JavaPlugin {
                 return false;
             }
 
-            // 2. 注入获取到的经济系统
-            components.transactionManager().setEconomy(economy);
+            // 2. 注入经济适配层 (Vault 调用在专用线程执行)
+            this.vaultAdapter = new VaultAdapter(plugin, economy);
+            components.transactionManager().setVault(vaultAdapter);
+            plugin.getServer().getPluginManager().registerEvents(vaultAdapter, plugin);
 
             // 3. FancyNpcs 挂钩
             if (plugin.getServer().getPluginManager().isPluginEnabled("FancyNpcs")) {
@@ -222,25 +365,16 @@ public class KyochigoPlugin extends JavaPlugin {
             return economy != null;
         }
 
-        void cleanup() {}
+        void cleanup() {
+            // 等待在途的扣款 / 入账执行完毕
+            if (vaultAdapter != null) vaultAdapter.shutdown();
+        }
+
         Economy economy() { return economy; }
+        VaultAdapter vaultAdapter() { return vaultAdapter; }
         boolean isPapiEnabled() { return papiEnabled; }
     }
 
-    /**
-     * 高性能限流器
-     */
-    private static class RateLimiter {
-        private final Map<UUID, Long> cache = new ConcurrentHashMap<>();
-        boolean check(UUID uuid, long cooldown) {
-            long now = System.currentTimeMillis();
-            long last = cache.getOrDefault(uuid, 0L);
-            if (now - last < cooldown) return false;
-            cache.put(uuid, now);
-            return true;
-        }
-    }
-
     private void sendBanner() {
         String[] banner = {
             "§b    §b§l  _  ____    ______   §6§l  _____ _    _ _____  _____  ____  ",
@@ -1,17 +1,27 @@
 package com.kyochigo.economy.commands;
 
 import com.kyochigo.economy.KyochigoPlugin;
+import com.kyochigo.economy.managers.AuditLogManager;
+import com.kyochigo.economy.managers.BackendAdmission;
+import com.kyochigo.economy.managers.MainThreadDispatcher;
+import com.kyochigo.economy.managers.QuoteCache;
+import com.kyochigo.economy.managers.TradeJournal;
+import com.kyochigo.economy.managers.TradeMetrics;
 import com.kyochigo.economy.managers.InventoryManager;
 import com.kyochigo.economy.managers.MarketManager;
 import com.kyochigo.economy.managers.TransactionManager;
 import com.kyochigo.economy.model.MarketItem;
+import com.kyochigo.economy.model.TradeEvent;
+import com.kyochigo.economy.utils.RateLimiter;
 import com.kyochigo.economy.utils.CraftEngineHook;
+import com.kyochigo.economy.utils.TaskScheduler;
 import de.oliver.fancynpcs.api.FancyNpcsPlugin;
 import de.oliver.fancynpcs.api.Npc;
 import de.oliver.fancynpcs.api.NpcData;
 import de.oliver.fancynpcs.api.actions.ActionTrigger;
 import de.oliver.fancynpcs.api.actions.NpcAction;
 import net.kyori.adventure.text.minimessage.MiniMessage;
+import net.kyori.adventure.text.minimessage.tag.resolver.Placeholder;
 import org.bukkit.Bukkit;
 import org.bukkit.Location;
 import org.bukkit.command.Command;
@@ -22,10 +32,16 @@ import org.bukkit.entity.Player;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 /**
@@ -39,6 +55,10 @@ public class KyochigoCommand implements CommandExecutor, TabCompleter {
 
     private static final MiniMessage MM = MiniMessage.miniMessage();
 
+    private static final DateTimeFormatter AUDIT_TIME = DateTimeFormatter.ofPattern("MM-dd HH:mm:ss");
+    // 重载报告在聊天栏中最多展示的变更条目 (完整列表输出到控制台)
+    private static final int RELOAD_REPORT_LINES = 12;
+
     private static final List<String> CATEGORIES = Arrays.asList(
             "ores", "food", "crops", "animal_husbandry", "weapons", "misc"
     );
@@ -55,16 +75,48 @@ public class KyochigoCommand implements CommandExecutor, TabCompleter {
 
     @Override
     public boolean onCommand(@NotNull CommandSender sender, @NotNull Command cmd, @NotNull String label, @NotNull String[] args) {
+        if (cmd.getName().equalsIgnoreCase("sellall")) {
+            if (sender instanceof Player p) handleSellAll(p, args);
+            else sender.sendMessage("§c控制台无法执行此操作。");
+            return true;
+        }
+
         if (args.length > 0 && args[0].equalsIgnoreCase("reload")) {
             if (sender.hasPermission("kyochigo.admin")) {
-                plugin.reloadPlugin();
-                sender.sendMessage(MM.deserialize("<dark_gray>[</dark_gray><aqua>Kyochigo</aqua><dark_gray>]</dark_gray> <green>配置已重载，后端协议握手成功。</green>"));
+                sender.sendMessage(MM.deserialize("<dark_gray>[</dark_gray><aqua>Kyochigo</aqua><dark_gray>]</dark_gray> <gray>正在后台重建市场名录...</gray>"));
+                plugin.reloadPlugin().whenComplete((report, error) -> {
+                    if (error != null || report == null) {
+                        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                        String reason = cause != null && cause.getMessage() != null ? cause.getMessage() : "已被新的重载取代";
+                        sender.sendMessage(MM.deserialize("<red>重载未生效，当前配置保持不变：</red><gray><reason></gray>",
+                                Placeholder.unparsed("reason", reason)));
+                        return;
+                    }
+                    sender.sendMessage(MM.deserialize("<dark_gray>[</dark_gray><aqua>Kyochigo</aqua><dark_gray>]</dark_gray> <green>配置已重载，共 " + report.catalog().size() + " 个物品，" + (report.isEmpty() ? "无变化。" : report.changes().size() + " 项变更：") + "</green>"));
+                    report.changes().stream().limit(RELOAD_REPORT_LINES).forEach(line ->
+                            sender.sendMessage(MM.deserialize("<gray> <line></gray>", Placeholder.unparsed("line", line))));
+                    if (report.changes().size() > RELOAD_REPORT_LINES) {
+                        sender.sendMessage(MM.deserialize("<dark_gray> ... 其余 " + (report.changes().size() - RELOAD_REPORT_LINES) + " 项见控制台</dark_gray>"));
+                    }
+                    report.warnings().forEach(line ->
+                            sender.sendMessage(MM.deserialize("<yellow> ⚠ <line></yellow>", Placeholder.unparsed("line", line))));
+                });
             } else {
                 sender.sendMessage(MM.deserialize("<red>错误：权限不足。</red>"));
             }
             return true;
         }
 
+        if (args.length > 0 && args[0].equalsIgnoreCase("audit")) {
+            handleAudit(sender, args);
+            return true;
+        }
+
+        if (args.length > 0 && args[0].equalsIgnoreCase("status")) {
+            handleStatus(sender);
+            return true;
+        }
+
         if (!(sender instanceof Player p)) {
             sender.sendMessage("§c控制台无法执行此操作。");
             return true;
@@ -149,6 +201,24 @@ public class KyochigoCommand implements CommandExecutor, TabCompleter {
         p.sendMessage(MM.deserialize("<dark_gray>[</dark_gray><aqua>Kyochigo</aqua><dark_gray>]</dark_gray> <green>已召唤 </green>" + displayName + " <gray>(协议已绑定)</gray>"));
     }
 
+    /**
+     * 快速出售：/sellall [Key]，省略 Key 时出售背包中全部市场物品
+     */
+    private void handleSellAll(Player p, String[] args) {
+        List<MarketItem> targets;
+        if (args.length > 0) {
+            MarketItem item = marketManager.getItem(args[0]);
+            if (item == null) {
+                p.sendMessage(MM.deserialize("<red>未知物品: " + args[0] + "</red>"));
+                return;
+            }
+            targets = List.of(item);
+        } else {
+            targets = marketManager.getAllItems();
+        }
+        plugin.getTransactionManager().executeBatchSell(p, targets);
+    }
+
     private void handleMarket(Player p) {
         if (marketManager.getAllItems().isEmpty()) {
             p.sendMessage(MM.deserialize("<red>错误：市场行情中心尚未准备就绪。</red>"));
@@ -171,12 +241,129 @@ public class KyochigoCommand implements CommandExecutor, TabCompleter {
         }
     }
 
+    /**
+     * /kyochigo status：后端准入、报价缓存、限流与成交日志的运行指标
+     */
+    private void handleStatus(CommandSender sender) {
+        if (!sender.hasPermission("kyochigo.admin")) {
+            sender.sendMessage(MM.deserialize("<red>错误：权限不足。</red>"));
+            return;
+        }
+
+        sender.sendMessage(MM.deserialize("<dark_gray>──────</dark_gray> <aqua>Kyochigo 运行状态</aqua> <dark_gray>──────</dark_gray>"));
+
+        // 1. 后端准入控制
+        BackendAdmission.Stats admission = plugin.getBackendManager().getAdmission().getStats();
+        String saturation = admission.inFlight() >= admission.maxInFlight() ? "§c已饱和" : "§a正常";
+        sender.sendMessage(String.format("§7后端在途: §f%d§7/§f%d §7(峰值 %d) %s",
+                admission.inFlight(), admission.maxInFlight(), admission.peakInFlight(), saturation));
+        for (BackendAdmission.Priority priority : BackendAdmission.Priority.values()) {
+            int i = priority.ordinal();
+            sender.sendMessage(String.format("§8  %-7s §7放行 §f%d §7排队中 §f%d §7累计排队 §f%d §7合并 §f%d §7丢弃 §c%d",
+                    priority, admission.admitted()[i], admission.waiting()[i], admission.queued()[i],
+                    admission.merged()[i], admission.dropped()[i]));
+        }
+
+        // 2. 报价缓存
+        QuoteCache.Stats quotes = plugin.getBackendManager().getQuoteCache().getStats();
+        MainThreadDispatcher.Stats dispatcher = plugin.getMainThreadDispatcher().getStats();
+        sender.sendMessage(String.format("§7主线程回调: §f待处理 %d §7(峰值 %d) | 已执行 §f%d §7| 顺延 Tick §e%d",
+                dispatcher.pending(), dispatcher.peakPending(), dispatcher.executed(), dispatcher.deferredTicks()));
+
+        sender.sendMessage(String.format("§7报价缓存: §f%d §7条 | 命中 §a%d §7未命中 §f%d §7命中率 §e%.1f%%",
+                quotes.size(), quotes.hits(), quotes.misses(), quotes.hitRatio() * 100));
+
+        // 3. 限流
+        RateLimiter limiter = plugin.getRateLimiter();
+        StringBuilder rejected = new StringBuilder();
+        for (RateLimiter.Action action : RateLimiter.Action.values()) {
+            rejected.append(" §7").append(action.getConfigKey()).append(" §c").append(limiter.getRejected(action));
+        }
+        sender.sendMessage("§7限流拒绝:" + rejected + " §8(跟踪玩家 " + limiter.getTrackedPlayers() + ")");
+
+        // 4. 成交日志与指标
+        TradeJournal journal = plugin.getTradeJournal();
+        sender.sendMessage("§7成交日志: §f" + journal.getPublishedCount() + " §7条已发布");
+        for (TradeJournal.ConsumerStats consumer : journal.getConsumerStats()) {
+            sender.sendMessage(String.format("§8  %-10s §7处理 §f%d §7积压 §f%d §7丢弃 §c%d §7溢出 §e%d%s",
+                    consumer.name(), consumer.processed(), consumer.lag(), consumer.dropped(), consumer.spilled(),
+                    consumer.critical() ? " §8(关键)" : ""));
+        }
+        TradeMetrics.Snapshot trades = plugin.getTradeMetrics().snapshot();
+        sender.sendMessage(String.format("§7成交统计: §a买入 %d 笔 / %.2f §7| §6卖出 %d 笔 / %.2f",
+                trades.buyTrades(), trades.buyTurnover(), trades.sellTrades(), trades.sellTurnover()));
+    }
+
+    /**
+     * /kyochigo audit [player:<名称|UUID>] [item:<Key>] [since:<30m|24h|7d>] [limit:<条数>]
+     * 在异步线程流式扫描审计日志，结果回到主线程输出。
+     */
+    private void handleAudit(CommandSender sender, String[] args) {
+        if (!sender.hasPermission("kyochigo.admin")) {
+            sender.sendMessage(MM.deserialize("<red>错误：权限不足。</red>"));
+            return;
+        }
+
+        String player = null, item = null;
+        long sinceMs = System.currentTimeMillis() - TimeUnit.HOURS.toMillis(24);
+        int limit = 10;
+        for (int i = 1; i < args.length; i++) {
+            String[] kv = args[i].split(":", 2);
+            if (kv.length != 2) continue;
+            switch (kv[0].toLowerCase()) {
+                case "player" -> player = kv[1];
+                case "item" -> item = kv[1];
+                case "since" -> {
+                    long window = parseDuration(kv[1]);
+                    if (window > 0) sinceMs = System.currentTimeMillis() - window;
+                }
+                case "limit" -> limit = Math.max(1, Math.min(100, tryParseInt(kv[1])));
+            }
+        }
+
+        AuditLogManager.Query query = new AuditLogManager.Query(player, item, sinceMs, limit);
+        sender.sendMessage(MM.deserialize("<gray>正在检索审计日志...</gray>"));
+        TaskScheduler scheduler = plugin.getTaskScheduler();
+        scheduler.runAsync(() -> {
+            List<TradeEvent> results = plugin.getAuditLogManager().query(query);
+            scheduler.runForSender(sender, () -> sendAuditResults(sender, results));
+        });
+    }
+
+    private void sendAuditResults(CommandSender sender, List<TradeEvent> results) {
+        if (results.isEmpty()) {
+            sender.sendMessage(MM.deserialize("<yellow>未找到匹配的成交记录。</yellow>"));
+            return;
+        }
+        sender.sendMessage(MM.deserialize("<dark_gray>──────</dark_gray> <aqua>审计记录 (" + results.size() + ")</aqua> <dark_gray>──────</dark_gray>"));
+        for (TradeEvent e : results) {
+            String time = LocalDateTime.ofInstant(Instant.ofEpochMilli(e.timestamp()), ZoneId.systemDefault()).format(AUDIT_TIME);
+            sender.sendMessage(String.format("§7#%d §8%s §f%s %s §e%s §fx%d §7@%.2f (ε%.2f) §8余额 %.2f → %.2f",
+                    e.tradeId(), time, e.playerName(), e.isBuy() ? "§a买入" : "§c卖出", e.itemKey(), e.amount(),
+                    e.unitPrice(), e.envIndex(), e.balanceBefore(), e.balanceAfter()));
+        }
+    }
+
+    private long parseDuration(String raw) {
+        if (raw.length() < 2) return -1;
+        long value = tryParseInt(raw.substring(0, raw.length() - 1));
+        if (value <= 0) return -1;
+        return switch (Character.toLowerCase(raw.charAt(raw.length() - 1))) {
+            case 'm' -> TimeUnit.MINUTES.toMillis(value);
+            case 'h' -> TimeUnit.HOURS.toMillis(value);
+            case 'd' -> TimeUnit.DAYS.toMillis(value);
+            default -> -1;
+        };
+    }
+
     private void sendHelp(Player p) {
         p.sendMessage(MM.deserialize("<dark_gray>──────────</dark_gray> <aqua><b>Kyochigo Economy</b></aqua> <dark_gray>──────────</dark_gray>"));
         p.sendMessage(MM.deserialize("<gray>/market</gray> <dark_gray>─</dark_gray> <white>访问行情看板</white>"));
         if (p.hasPermission("kyochigo.admin")) {
             p.sendMessage(MM.deserialize("<gray>/" + labelOrPluginName() + " spawn <分类></gray> <dark_gray>─</dark_gray> <white>召唤贸易专员</white>"));
             p.sendMessage(MM.deserialize("<gray>/" + labelOrPluginName() + " reload</gray> <dark_gray>─</dark_gray> <white>强制同步数据</white>"));
+            p.sendMessage(MM.deserialize("<gray>/" + labelOrPluginName() + " audit [player:] [item:] [since:] [limit:]</gray> <dark_gray>─</dark_gray> <white>检索成交审计日志</white>"));
+            p.sendMessage(MM.deserialize("<gray>/" + labelOrPluginName() + " status</gray> <dark_gray>─</dark_gray> <white>查看后端负载与运行指标</white>"));
         }
         p.sendMessage(MM.deserialize("<dark_gray>───────────────────────────────────</dark_gray>"));
     }
@@ -191,16 +378,23 @@ public class KyochigoCommand implements CommandExecutor, TabCompleter {
 
     @Override
     public @Nullable List<String> onTabComplete(@NotNull CommandSender sender, @NotNull Command cmd, @NotNull String alias, @NotNull String[] args) {
+        if (cmd.getName().equalsIgnoreCase("sellall")) {
+            if (args.length != 1) return new ArrayList<>();
+            return filter(marketManager.getAllItems().stream().map(MarketItem::getConfigKey).collect(Collectors.toList()), args[0]);
+        }
         if (args.length == 1) {
             List<String> subs = new ArrayList<>(List.of("market"));
             if (sender.hasPermission("kyochigo.admin")) {
-                subs.addAll(Arrays.asList("spawn", "reload", "clear"));
+                subs.addAll(Arrays.asList("spawn", "reload", "clear", "audit", "status"));
             }
             return filter(subs, args[0]);
         }
         if (args.length == 2 && args[0].equalsIgnoreCase("spawn") && sender.hasPermission("kyochigo.admin")) {
             return filter(CATEGORIES, args[1]);
         }
+        if (args.length >= 2 && args[0].equalsIgnoreCase("audit") && sender.hasPermission("kyochigo.admin")) {
+            return filter(List.of("player:", "item:", "since:", "limit:"), args[args.length - 1]);
+        }
         return new ArrayList<>();
     }
 
@@ -4,6 +4,9 @@ import com.kyochigo.economy.KyochigoPlugin;
 import com.kyochigo.economy.TradeData;
 import com.kyochigo.economy.managers.InventoryManager;
 import com.kyochigo.economy.managers.MarketManager;
+import com.kyochigo.economy.managers.PriceHistoryManager;
+import com.kyochigo.economy.managers.StatisticsManager;
+import com.kyochigo.economy.model.MarketCatalog;
 import com.kyochigo.economy.model.MarketItem;
 import me.clip.placeholderapi.expansion.PlaceholderExpansion;
 import org.bukkit.Bukkit;
@@ -12,9 +15,12 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.function.BiFunction;
 
 /**
@@ -23,6 +29,9 @@ import java.util.function.BiFunction;
  * 1. 价格计算逻辑增加 envIndex 乘数，与 GUI 保持绝对对齐。
  * 2. 汉化了 env_note 的输出。
  * 3. 修正了趋势判断的基准值。
+ * 4. 预编译分发：每个 params 仅解析一次 (前缀字典树)，结果按行情版本 / 统计快照 / 玩家 × Tick 缓存。
+ * 5. 排行榜与成交量占位符读取 StatisticsManager 发布的只读快照。
+ * 6. 走势图占位符读取 PriceHistoryManager 的小时档历史行情。
  */
 public class KyochigoExpansion extends PlaceholderExpansion {
     
@@ -31,9 +40,29 @@ public class KyochigoExpansion extends PlaceholderExpansion {
     private final MarketManager marketManager;
     private final Map<UUID, TradeData> tradeCache;
 
-    private final Map<String, BiFunction<Player, String, String>> placeholderHandlers = new HashMap<>();
-    private final Map<String, MarketItem> itemCache = new ConcurrentHashMap<>();
-    private static final long CACHE_TTL_TICKS = 1200L; 
+    // 绑定到名录快照的物品查找视图，名录换代 (重载) 时整体失效；未知 Key 同样缓存
+    private volatile CatalogView catalogView = new CatalogView(MarketCatalog.EMPTY);
+
+    // 分发表：精确键 (忽略大小写) + 前缀字典树，仅在编译新 params 时查询
+    private final Map<String, Handler> exactHandlers = new HashMap<>();
+    private final PrefixTrie prefixHandlers = new PrefixTrie();
+
+    // 已编译的 params (Key = 原始 params)，超过上限整体清空防止异常输入撑爆内存
+    private final Map<String, Compiled> compiledParams = new ConcurrentHashMap<>();
+    private static final int MAX_COMPILED = 4096;
+    private static final Compiled UNKNOWN = new Compiled(null, "");
+
+    // 玩家相关结果仅在同一 Tick 内复用 (计分板/全息图同 Tick 内多次求值)
+    private volatile TickResults tickResults = new TickResults(-1);
+    private static final String NULL_RESULT = "\u0000";
+
+    private static final char[] SPARK_BARS = "▁▂▃▄▅▆▇█".toCharArray();
+    private static final int CHART_POINTS = 24;
+    // 走势 / 趋势占位符的时间桶 (与小时档采样对齐)
+    private static final long HISTORY_BUCKET_MS = TimeUnit.HOURS.toMillis(1);
+    // trend_ 的比较窗口与涨跌判定阈值 (与商店界面的 24h 走势一致)
+    private static final long TREND_WINDOW_MS = TimeUnit.HOURS.toMillis(24);
+    private static final double TREND_THRESHOLD = 0.01;
 
     public KyochigoExpansion(KyochigoPlugin plugin, InventoryManager inventoryManager, MarketManager marketManager, Map<UUID, TradeData> tradeCache) {
         this.plugin = plugin;
@@ -44,13 +73,40 @@ public class KyochigoExpansion extends PlaceholderExpansion {
     }
 
     private void initializeHandlers() {
-        placeholderHandlers.put("balance_", this::handleBalance);
-        placeholderHandlers.put("item_name_", this::handleItemName);
-        placeholderHandlers.put("price_sell_", (p, s) -> handlePrice(s, false));
-        placeholderHandlers.put("price_buy_", (p, s) -> handlePrice(s, true));
-        placeholderHandlers.put("trend_", this::handleTrend);
-        placeholderHandlers.put("daily_remaining_", this::handleDailyRemaining);
-        placeholderHandlers.put("item_category_", this::handleItemCategory);
+        // 1. 环境因子 (与玩家无关，按行情版本缓存)
+        exactHandlers.put("env_note", Handler.global((p, s) -> translateEnvNote(marketManager.getLastEnvNote())));
+        exactHandlers.put("env_index", Handler.global((p, s) -> String.format("%.2f", marketManager.getLastEnvIndex())));
+
+        // 2. 交易会话数据 (无会话时返回 null，交由 PAPI 原样输出)
+        exactHandlers.put("session_total", Handler.player((p, s) -> {
+            TradeData data = tradeCache.get(p.getUniqueId());
+            return data != null ? String.format("%.2f", data.totalPrice) : null;
+        }));
+        exactHandlers.put("session_type", Handler.player((p, s) -> {
+            TradeData data = tradeCache.get(p.getUniqueId());
+            return data != null ? (data.isBuy ? "购买" : "出售") : null;
+        }));
+        exactHandlers.put("session_item", Handler.player((p, s) -> {
+            TradeData data = tradeCache.get(p.getUniqueId());
+            return data != null ? data.displayName : null;
+        }));
+
+        // 3. 动态属性处理器
+        prefixHandlers.put("balance_", Handler.player(this::handleBalance));
+        prefixHandlers.put("item_name_", Handler.global(this::handleItemName));
+        prefixHandlers.put("price_sell_", Handler.global((p, s) -> handlePrice(s, false)));
+        prefixHandlers.put("price_buy_", Handler.global((p, s) -> handlePrice(s, true)));
+        prefixHandlers.put("trend_", Handler.history(this::handleTrend));
+        prefixHandlers.put("chart_", Handler.history(this::handleChart));
+        prefixHandlers.put("daily_remaining_", Handler.player(this::handleDailyRemaining));
+        prefixHandlers.put("item_category_", Handler.global(this::handleItemCategory));
+
+        // 4. 市场统计 (读取统计快照，按快照版本缓存)
+        prefixHandlers.put("top_seller_", Handler.stats((p, s) -> handleTopSeller(s, false)));
+        prefixHandlers.put("top_seller_value_", Handler.stats((p, s) -> handleTopSeller(s, true)));
+        prefixHandlers.put("top_item_seller_", Handler.stats((p, s) -> handleTopItemSeller(s)));
+        prefixHandlers.put("volume_", Handler.stats((p, s) -> handleVolume(s, false)));
+        prefixHandlers.put("vwap_", Handler.stats((p, s) -> handleVolume(s, true)));
     }
 
     @Override
@@ -66,42 +122,93 @@ public class KyochigoExpansion extends PlaceholderExpansion {
     public @Nullable String onPlaceholderRequest(Player player, @NotNull String params) {
         if (player == null) return "";
 
-        // 1. 环境因子 (增加汉化映射，与 GUI 状态对齐)
-        if (params.equalsIgnoreCase("env_note")) {
-            String rawNote = marketManager.getLastEnvNote();
-            return switch (rawNote.toLowerCase()) {
-                case "normal" -> "行情平稳";
-                case "weekend" -> "周末特惠";
-                case "prosperous" -> "贸易繁荣";
-                case "depressed" -> "行情低迷";
-                default -> rawNote;
-            };
-        }
-        
-        if (params.equalsIgnoreCase("env_index")) return String.format("%.2f", marketManager.getLastEnvIndex());
-
-        // 2. 交易会话数据
-        TradeData data = tradeCache.get(player.getUniqueId());
-        if (data != null) {
-            if (params.equalsIgnoreCase("session_total")) return String.format("%.2f", data.totalPrice);
-            if (params.equalsIgnoreCase("session_type")) return data.isBuy ? "购买" : "出售";
-            if (params.equalsIgnoreCase("session_item")) return data.displayName;
+        Compiled compiled = compile(params);
+        Handler handler = compiled.handler;
+        if (handler == null) return null;
+
+        // 与玩家无关：同一 (占位符, 数据版本) 只计算一次
+        if (handler.scope != Scope.PLAYER) {
+            long primary, secondary;
+            if (handler.scope == Scope.MARKET) {
+                primary = marketManager.getPriceVersion();
+                secondary = marketManager.getEnvVersion();
+            } else if (handler.scope == Scope.HISTORY) {
+                // 时间窗口视图：行情不变时也需随整点滑动
+                primary = marketManager.getPriceVersion();
+                secondary = System.currentTimeMillis() / HISTORY_BUCKET_MS;
+            } else {
+                primary = plugin.getStatisticsManager().getSnapshot().version();
+                secondary = 0L;
+            }
+            CachedResult cached = compiled.cached;
+            if (cached != null && cached.primary == primary && cached.secondary == secondary) {
+                return cached.value;
+            }
+            String value = handler.function.apply(player, compiled.arg);
+            compiled.cached = new CachedResult(primary, secondary, value);
+            return value;
         }
 
-        // 3. 动态属性处理器
-        for (Map.Entry<String, BiFunction<Player, String, String>> entry : placeholderHandlers.entrySet()) {
-            if (params.startsWith(entry.getKey())) {
-                String arg = params.substring(entry.getKey().length());
-                return entry.getValue().apply(player, arg);
+        // 玩家相关：同一 (玩家, 占位符, Tick) 只计算一次
+        Map<Compiled, String> results = currentTickResults().forPlayer(player.getUniqueId());
+        synchronized (results) {
+            String value = results.get(compiled);
+            if (value == null) {
+                value = handler.function.apply(player, compiled.arg);
+                results.put(compiled, value != null ? value : NULL_RESULT);
+                return value;
             }
+            return value == NULL_RESULT ? null : value;
+        }
+    }
+
+    /**
+     * 将 params 解析为 (处理器, 参数)，结果缓存后同一 params 不再解析
+     */
+    private Compiled compile(String params) {
+        Compiled compiled = compiledParams.get(params);
+        if (compiled != null) return compiled;
+
+        Handler exact = exactHandlers.get(params.toLowerCase());
+        if (exact != null) {
+            compiled = new Compiled(exact, "");
+        } else {
+            PrefixTrie.Match match = prefixHandlers.match(params);
+            compiled = (match != null) ? new Compiled(match.handler(), params.substring(match.length())) : UNKNOWN;
+        }
+
+        if (compiledParams.size() >= MAX_COMPILED) compiledParams.clear();
+        compiledParams.put(params, compiled);
+        return compiled;
+    }
+
+    private TickResults currentTickResults() {
+        int tick = Bukkit.getCurrentTick();
+        TickResults results = tickResults;
+        if (results.tick != tick) {
+            // 跨 Tick 整体换新，旧 Tick 的结果连同离线玩家一并丢弃
+            results = new TickResults(tick);
+            tickResults = results;
         }
+        return results;
+    }
 
-        return null; 
+    private static String translateEnvNote(String rawNote) {
+        return switch (rawNote.toLowerCase()) {
+            case "normal" -> "行情平稳";
+            case "weekend" -> "周末特惠";
+            case "prosperous" -> "贸易繁荣";
+            case "depressed" -> "行情低迷";
+            default -> rawNote;
+        };
     }
 
     private String handleBalance(Player player, String itemKey) {
-        MarketItem item = getCachedItem(itemKey);
-        return item != null ? String.valueOf(inventoryManager.countItems(player, item)) : "0";
+        // 数量取自背包缓存：一次遍历统计全部物品，背包变化事件触发失效
+        CatalogView view = currentView();
+        MarketItem item = view.find(itemKey);
+        if (item == null) return "0";
+        return String.valueOf(inventoryManager.getCountCache().getCount(player, view.catalog, item));
     }
 
     private String handleItemName(Player player, String itemKey) {
@@ -127,25 +234,63 @@ public class KyochigoExpansion extends PlaceholderExpansion {
     }
 
     /**
-     * 核心修正：趋势判断逻辑同步应用环境指数
+     * trend_<item>：当前售价相对 24 小时前 (小时档) 的涨跌；无历史数据时显示持平
+     * 历史与当前售价均为未乘环境指数的原始价，比值不受环境指数影响。
      */
     private String handleTrend(Player player, String itemKey) {
         MarketItem item = getCachedItem(itemKey);
         if (item == null) return "";
-        
-        double envIndex = marketManager.getLastEnvIndex();
-        // 当前最终售价
-        double current = item.getSellPrice() * envIndex;
-        // 配置的基础参考价
-        double base = item.getBasePrice();
-        
-        if (current > base * 1.01) return "§a↑"; // 涨幅超过 1%
-        if (current < base * 0.99) return "§c↓"; // 跌幅超过 1%
+
+        PriceHistoryManager.PricePoint ref = plugin.getPriceHistoryManager().latestAtOrBefore(item.getConfigKey(),
+                PriceHistoryManager.Tier.HOUR, System.currentTimeMillis() - TREND_WINDOW_MS);
+        if (ref == null || ref.sellPrice() <= 0) return "§7-";
+
+        double change = (item.getSellPrice() - ref.sellPrice()) / ref.sellPrice();
+        if (change > TREND_THRESHOLD) return "§a↑"; // 涨幅超过 1%
+        if (change < -TREND_THRESHOLD) return "§c↓"; // 跌幅超过 1%
         return "§7-";
     }
 
+    /**
+     * chart_<item>：近 24 小时售价走势 (小时档，缺失的小时沿用前值)
+     */
+    private String handleChart(Player player, String itemKey) {
+        MarketItem item = getCachedItem(itemKey);
+        if (item == null) return "";
+
+        PriceHistoryManager.Tier tier = PriceHistoryManager.Tier.HOUR;
+        long now = System.currentTimeMillis();
+        List<PriceHistoryManager.PricePoint> points = plugin.getPriceHistoryManager()
+                .query(item.getConfigKey(), tier, now - (CHART_POINTS - 1) * tier.getSpanMs(), now);
+        if (points.isEmpty()) return "";
+
+        double[] values = new double[CHART_POINTS];
+        long firstBucket = now / tier.getSpanMs() - (CHART_POINTS - 1);
+        int cursor = 0;
+        double last = points.get(0).sellPrice();
+        double min = Double.MAX_VALUE, max = -Double.MAX_VALUE;
+        for (int i = 0; i < CHART_POINTS; i++) {
+            long bucketStart = (firstBucket + i) * tier.getSpanMs();
+            while (cursor < points.size() && points.get(cursor).timestamp() <= bucketStart) {
+                last = points.get(cursor++).sellPrice();
+            }
+            values[i] = last;
+            min = Math.min(min, last);
+            max = Math.max(max, last);
+        }
+
+        StringBuilder chart = new StringBuilder(CHART_POINTS);
+        double range = max - min;
+        for (double value : values) {
+            int level = range <= 0 ? SPARK_BARS.length / 2 : (int) Math.round((value - min) / range * (SPARK_BARS.length - 1));
+            chart.append(SPARK_BARS[level]);
+        }
+        return chart.toString();
+    }
+
     private String handleDailyRemaining(Player player, String itemKey) {
-        int limit = plugin.getConfiguration().getItemDailyLimit(itemKey);
+        MarketItem item = getCachedItem(itemKey);
+        int limit = item != null ? item.getDailyLimit() : 0;
         if (limit <= 0) return "∞";
         
         int traded = plugin.getHistoryManager().getDailyTradeCount(player.getUniqueId().toString(), itemKey);
@@ -155,16 +300,150 @@ public class KyochigoExpansion extends PlaceholderExpansion {
     private String handleItemCategory(Player player, String itemKey) {
         MarketItem item = getCachedItem(itemKey);
         if (item == null) return "未知";
-        return plugin.getConfiguration().getRaw().getString("categories." + item.getCategory() + ".name", item.getCategory());
+        return plugin.getConfiguration().getCategory(item.getCategory()).rawName();
+    }
+
+    /**
+     * top_seller_<n> / top_seller_value_<n>：全服近 7 日售出金额排行
+     */
+    private String handleTopSeller(String arg, boolean value) {
+        int rank = parseRank(arg);
+        StatisticsManager.Ranked entry = plugin.getStatisticsManager().getSnapshot().getTopSeller(rank);
+        if (entry == null) return value ? "0.00" : "-";
+        return value ? String.format("%.2f", entry.value()) : entry.playerName();
+    }
+
+    /**
+     * top_item_seller_<item>_<n>：单个物品近 7 日售出数量排行
+     */
+    private String handleTopItemSeller(String arg) {
+        int split = arg.lastIndexOf('_');
+        if (split <= 0) return "-";
+        int rank = parseRank(arg.substring(split + 1));
+        var sellers = plugin.getStatisticsManager().getSnapshot().getItem(arg.substring(0, split)).topSellers();
+        return (rank >= 1 && rank <= sellers.size()) ? sellers.get(rank - 1).playerName() : "-";
+    }
+
+    /**
+     * volume_<item>_24h|7d / vwap_<item>_24h|7d
+     */
+    private String handleVolume(String arg, boolean vwap) {
+        boolean week = arg.endsWith("_7d");
+        if (!week && !arg.endsWith("_24h")) return null;
+        String itemKey = arg.substring(0, arg.lastIndexOf('_'));
+        StatisticsManager.ItemStats stats = plugin.getStatisticsManager().getSnapshot().getItem(itemKey);
+        if (vwap) return String.format("%.2f", week ? stats.vwap7d() : stats.vwap24h());
+        return String.valueOf(week ? stats.volume7d() : stats.volume24h());
+    }
+
+    private static int parseRank(String raw) {
+        try {
+            return Integer.parseInt(raw);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
     }
 
     private MarketItem getCachedItem(String key) {
-        return itemCache.computeIfAbsent(key, k -> {
-            MarketItem item = marketManager.findMarketItemByKey(k);
-            if (item != null) {
-                Bukkit.getScheduler().runTaskLaterAsynchronously(plugin, () -> itemCache.remove(k), CACHE_TTL_TICKS);
+        return currentView().find(key);
+    }
+
+    private CatalogView currentView() {
+        MarketCatalog catalog = marketManager.getCatalog();
+        CatalogView view = catalogView;
+        if (view.catalog != catalog) {
+            view = new CatalogView(catalog);
+            catalogView = view;
+        }
+        return view;
+    }
+
+    // =========================================================================
+    // 预编译分发结构
+    // =========================================================================
+
+    /**
+     * 结果作用域：决定使用哪一级结果缓存
+     */
+    private enum Scope { MARKET, HISTORY, STATS, PLAYER }
+
+    private record Handler(BiFunction<Player, String, String> function, Scope scope) {
+        static Handler global(BiFunction<Player, String, String> function) { return new Handler(function, Scope.MARKET); }
+        static Handler history(BiFunction<Player, String, String> function) { return new Handler(function, Scope.HISTORY); }
+        static Handler stats(BiFunction<Player, String, String> function) { return new Handler(function, Scope.STATS); }
+        static Handler player(BiFunction<Player, String, String> function) { return new Handler(function, Scope.PLAYER); }
+    }
+
+    private record CachedResult(long primary, long secondary, String value) {}
+
+    /**
+     * 已编译的 params：处理器 + 已截取的参数，并携带与玩家无关结果的缓存槽
+     */
+    private static final class Compiled {
+        final Handler handler;
+        final String arg;
+        volatile CachedResult cached;
+
+        Compiled(Handler handler, String arg) {
+            this.handler = handler;
+            this.arg = arg;
+        }
+    }
+
+    /**
+     * 名录快照上的查找视图 (Key = 占位符中的原始物品 Key，包含未命中结果)
+     */
+    private static final class CatalogView {
+        final MarketCatalog catalog;
+        private final Map<String, Optional<MarketItem>> lookups = new ConcurrentHashMap<>();
+
+        CatalogView(MarketCatalog catalog) { this.catalog = catalog; }
+
+        MarketItem find(String key) {
+            Optional<MarketItem> cached = lookups.get(key);
+            if (cached != null) return cached.orElse(null);
+            if (lookups.size() >= MAX_COMPILED) lookups.clear();
+            return lookups.computeIfAbsent(key, k -> Optional.ofNullable(catalog.findByKey(k))).orElse(null);
+        }
+    }
+
+    private static final class TickResults {
+        final int tick;
+        private final Map<UUID, Map<Compiled, String>> byPlayer = new ConcurrentHashMap<>();
+
+        TickResults(int tick) { this.tick = tick; }
+
+        Map<Compiled, String> forPlayer(UUID uuid) {
+            return byPlayer.computeIfAbsent(uuid, k -> new HashMap<>());
+        }
+    }
+
+    /**
+     * 前缀字典树：按字符逐级匹配，返回最长的已注册前缀
+     */
+    private static final class PrefixTrie {
+        private final Map<Character, PrefixTrie> children = new HashMap<>();
+        private Handler handler;
+
+        record Match(Handler handler, int length) {}
+
+        void put(String prefix, Handler handler) {
+            PrefixTrie node = this;
+            for (int i = 0; i < prefix.length(); i++) {
+                node = node.children.computeIfAbsent(prefix.charAt(i), c -> new PrefixTrie());
+            }
+            node.handler = handler;
+        }
+
+        Match match(String params) {
+            PrefixTrie node = this;
+            Match best = null;
+            for (int i = 0; i < params.length(); i++) {
+                node = node.children.get(params.charAt(i));
+                if (node == null) break;
+                if (node.handler != null) best = new Match(node.handler, i + 1);
             }
-            return item;
-        });
+            return best;
+        }
     }
-}
\ No newline at end of file
+}
@@ -1,7 +1,10 @@
 package com.kyochigo.economy.gui;
 
 import com.kyochigo.economy.KyochigoPlugin;
+import com.kyochigo.economy.managers.BackendManager;
+import com.kyochigo.economy.model.Category;
 import com.kyochigo.economy.model.MarketItem;
+import com.kyochigo.economy.utils.RateLimiter;
 import io.papermc.paper.dialog.Dialog;
 import io.papermc.paper.registry.data.dialog.ActionButton;
 import io.papermc.paper.registry.data.dialog.DialogBase;
@@ -10,7 +13,6 @@ import io.papermc.paper.registry.data.dialog.body.DialogBody;
 import io.papermc.paper.registry.data.dialog.type.DialogType;
 import io.papermc.paper.registry.data.dialog.action.DialogAction;
 import io.papermc.paper.registry.data.dialog.action.DialogActionCallback;
-import net.kyori.adventure.key.Key;
 import net.kyori.adventure.text.Component;
 import net.kyori.adventure.text.TextComponent;
 import net.kyori.adventure.text.event.ClickCallback;
@@ -18,13 +20,15 @@ import net.kyori.adventure.text.format.NamedTextColor;
 import net.kyori.adventure.text.format.TextDecoration;
 import net.kyori.adventure.text.minimessage.MiniMessage;
 import net.kyori.adventure.text.minimessage.tag.resolver.Placeholder;
-import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.entity.Player;
 import org.bukkit.inventory.ItemStack;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
@@ -39,8 +43,6 @@ public class MarketDialog {
 
     private static final MiniMessage MM = MiniMessage.miniMessage();
     private static final ClickCallback.Options DEFAULT_OPTIONS = ClickCallback.Options.builder().build();
-    // 定义 Minecraft 自带的等宽字体 Key
-    private static final Key FONT_UNIFORM = Key.key("minecraft:uniform");
     
     // 静态常量
     private static final Component SEPARATOR = Component.text("────────────────────────────────", NamedTextColor.DARK_GRAY);
@@ -50,23 +52,31 @@ public class MarketDialog {
     private static final double THRESHOLD_PROSPEROUS = 1.05;
     private static final double THRESHOLD_DEPRESSED = 0.95;
 
+    // 行情面板附带的整组报价数量
+    private static final int STACK_QUOTE_AMOUNT = 64;
+
+    /**
+     * 单个物品的整组报价 (任一方向报价失败时为 null)
+     */
+    private record StackQuote(BackendManager.Quote buy, BackendManager.Quote sell) {}
+
     /**
      * 打开行情总览 (主菜单)
      */
     public static void open(@NotNull Player player, boolean viewOnly) {
         KyochigoPlugin plugin = KyochigoPlugin.getInstance();
-        ConfigurationSection categories = plugin.getConfiguration().getRaw().getConfigurationSection("categories");
+        Collection<Category> categories = plugin.getConfiguration().getCategories();
 
-        if (categories == null) {
+        if (categories.isEmpty()) {
             player.sendMessage(MM.deserialize("<red>错误：无法读取分类配置。</red>"));
             return;
         }
 
         // 构建分类按钮
-        List<ActionButton> buttons = categories.getKeys(false).stream()
-                .map(key -> createBtn(
-                    getCategoryName(plugin, key), 
-                    (v, a) -> { if (a instanceof Player p) fetchPricesAndOpenSubMenu(p, key, viewOnly); }
+        List<ActionButton> buttons = categories.stream()
+                .map(category -> createBtn(
+                    category.displayName(), 
+                    (v, a) -> { if (a instanceof Player p) fetchPricesAndOpenSubMenu(p, category.id(), viewOnly); }
                 ))
                 .collect(Collectors.toList());
 
@@ -78,31 +88,56 @@ public class MarketDialog {
      */
     private static void fetchPricesAndOpenSubMenu(Player player, String categoryId, boolean viewOnly) {
         KyochigoPlugin plugin = KyochigoPlugin.getInstance();
-        List<String> itemIds = plugin.getMarketManager().getAllItems().stream()
-                .filter(i -> i.getCategory().equalsIgnoreCase(categoryId))
-                .map(MarketItem::getConfigKey)
-                .collect(Collectors.toList());
+        if (!plugin.checkRateLimit(player.getUniqueId(), RateLimiter.Action.MENU_REFRESH)) {
+            player.sendMessage(MM.deserialize("<red>操作过于频繁，请稍后再试。</red>"));
+            return;
+        }
+        List<String> itemIds = plugin.getMarketManager().getItemIdsByCategory(categoryId);
 
-        plugin.getBackendManager().fetchBulkPrices(itemIds, response -> {
+        plugin.getBackendManager().fetchBulkPrices(player, itemIds, response -> {
             if (!player.isOnline()) return;
             if (response != null) plugin.getMarketManager().updateInternalData(response);
-            showCategoryBoard(player, categoryId, viewOnly);
+            fetchStackQuotesAndShow(player, categoryId, viewOnly);
+        });
+    }
+
+    /**
+     * 通过批量报价接口一次性取得本分类所有物品 "整组买入 / 整组卖出" 的预览总价
+     */
+    private static void fetchStackQuotesAndShow(Player player, String categoryId, boolean viewOnly) {
+        KyochigoPlugin plugin = KyochigoPlugin.getInstance();
+        List<MarketItem> items = plugin.getMarketManager().getItemsByCategory(categoryId);
+
+        List<BackendManager.QuoteRequest> requests = new ArrayList<>(items.size() * 2);
+        for (MarketItem item : items) {
+            requests.add(new BackendManager.QuoteRequest(item, STACK_QUOTE_AMOUNT, true));
+            requests.add(new BackendManager.QuoteRequest(item, STACK_QUOTE_AMOUNT, false));
+        }
+
+        plugin.getBackendManager().sendBulkQuoteRequest(player, requests, quotes -> {
+            if (!player.isOnline()) return;
+            Map<String, StackQuote> stackQuotes = new HashMap<>();
+            if (quotes != null) {
+                for (int i = 0; i + 1 < quotes.size(); i += 2) {
+                    String key = requests.get(i).item().getConfigKey();
+                    stackQuotes.put(key, new StackQuote(quotes.get(i), quotes.get(i + 1)));
+                }
+            }
+            showCategoryBoard(player, categoryId, viewOnly, stackQuotes);
         });
     }
 
     /**
      * 显示具体分类面板 (Sub-Menu)
      */
-    private static void showCategoryBoard(Player player, String category, boolean viewOnly) {
+    private static void showCategoryBoard(Player player, String category, boolean viewOnly, Map<String, StackQuote> stackQuotes) {
         KyochigoPlugin plugin = KyochigoPlugin.getInstance();
         
-        // 1. 筛选物品
-        List<MarketItem> items = plugin.getMarketManager().getAllItems().stream()
-                .filter(i -> i.getCategory().equalsIgnoreCase(category))
-                .collect(Collectors.toList());
+        // 1. 读取分类索引
+        List<MarketItem> items = plugin.getMarketManager().getItemsByCategory(category);
 
         // 2. 构建列表内容
-        List<DialogBody> rows = buildMarketRows(plugin, items, player);
+        List<DialogBody> rows = buildMarketRows(plugin, items, player, stackQuotes);
 
         // 3. 构建底部导航 (返回/离开)
         List<ActionButton> navButtons = List.of(
@@ -145,7 +180,8 @@ public class MarketDialog {
         }));
     }
 
-    private static List<DialogBody> buildMarketRows(KyochigoPlugin plugin, List<MarketItem> items, Player player) {
+    private static List<DialogBody> buildMarketRows(KyochigoPlugin plugin, List<MarketItem> items, Player player,
+                                                    Map<String, StackQuote> stackQuotes) {
         List<DialogBody> rows = new ArrayList<>();
         double envIndex = plugin.getMarketManager().getLastEnvIndex();
 
@@ -155,8 +191,9 @@ public class MarketDialog {
 
         // 添加物品列表
         for (MarketItem item : items) {
+            MarketRenderCache.Rendered rendered = MarketRenderCache.get(item, plugin.getMarketManager());
             ItemStack icon = plugin.getMarketManager().getItemIcon(item);
-            icon.lore(renderItemLore(item, player, plugin));
+            icon.lore(renderItemLore(rendered, item, player, plugin, stackQuotes.get(item.getConfigKey())));
 
             // 这里使用 DialogBody.item 展示
             // 为了实现点击购买，通常需要在 DialogType 中定义 inputs 或者使用 ActionButton
@@ -178,7 +215,7 @@ public class MarketDialog {
             // 鉴于篇幅，这里保持原有的 Body 结构。
 
             rows.add(DialogBody.item(icon)
-                    .description(DialogBody.plainMessage(renderItemInfo(item, plugin)))
+                    .description(DialogBody.plainMessage(rendered.boardInfo()))
                     .build());
         }
         return rows;
@@ -212,24 +249,32 @@ public class MarketDialog {
         return header.build();
     }
 
-    private static List<Component> renderItemLore(MarketItem item, Player player, KyochigoPlugin plugin) {
-        List<Component> lore = new ArrayList<>();
-        lore.add(Component.text("» 市场详细数据", NamedTextColor.DARK_GRAY));
-        lore.add(renderHeatLore(item.getTempNeff()));
-        renderQuotaLore(item, player, plugin).ifPresent(lore::add);
+    private static List<Component> renderItemLore(MarketRenderCache.Rendered rendered, MarketItem item, Player player,
+                                                  KyochigoPlugin plugin, StackQuote stackQuote) {
+        Optional<Component> quota = renderQuotaLore(item, player, plugin);
+        Optional<Component> quoteLine = renderStackQuoteLore(stackQuote);
+        if (quota.isEmpty() && quoteLine.isEmpty()) return rendered.boardLore();
+
+        // 仅配额与报价行按本次请求渲染，其余行直接复用缓存
+        List<Component> lore = new ArrayList<>(rendered.boardLore());
+        quoteLine.ifPresent(lore::add);
+        quota.ifPresent(lore::add);
         return lore;
     }
 
-    private static Component renderHeatLore(double neff) {
-        TextComponent.Builder line = Component.text().append(Component.text("当前热度：", NamedTextColor.GRAY));
-        if (neff < 100) line.append(Component.text("极度匮乏", NamedTextColor.GREEN));
-        else if (neff < 1000) line.append(Component.text("供需平衡", NamedTextColor.WHITE));
-        else line.append(Component.text("大量积压", NamedTextColor.RED));
-        return line.build();
+    private static Optional<Component> renderStackQuoteLore(StackQuote stackQuote) {
+        if (stackQuote == null || (stackQuote.buy() == null && stackQuote.sell() == null)) return Optional.empty();
+
+        return Optional.of(MM.deserialize(
+            "<gray>整组 (<amount>)：</gray><gray>买</gray> <red><buy></red> <dark_gray>/</dark_gray> <gray>卖</gray> <green><sell></green> <gold>⛁</gold>",
+            Placeholder.unparsed("amount", String.valueOf(STACK_QUOTE_AMOUNT)),
+            Placeholder.unparsed("buy", stackQuote.buy() != null ? String.format("%.2f", stackQuote.buy().totalPrice()) : "--"),
+            Placeholder.unparsed("sell", stackQuote.sell() != null ? String.format("%.2f", stackQuote.sell().totalPrice()) : "--")
+        ).decoration(TextDecoration.ITALIC, false));
     }
 
     private static Optional<Component> renderQuotaLore(MarketItem item, Player player, KyochigoPlugin plugin) {
-        int limit = plugin.getConfiguration().getItemDailyLimit(item.getConfigKey());
+        int limit = item.getDailyLimit();
         if (limit <= 0) return Optional.empty();
 
         int traded = plugin.getHistoryManager().getDailyTradeCount(player.getUniqueId().toString(), item.getConfigKey());
@@ -246,27 +291,7 @@ public class MarketDialog {
         ));
     }
 
-    /**
-     * 物品信息渲染 (优化对齐版)
-     * 使用等宽字体 + 固定宽度格式化，确保价格显示整齐。
-     */
-    private static Component renderItemInfo(MarketItem item, KyochigoPlugin plugin) {
-        // 使用 String.format 固定保留位数和最小宽度 (总宽8字符，保留2位小数)
-        String sellPrice = String.format("%8.2f ⛁", item.getSellPrice());
-        String buyPrice  = String.format("%8.2f ⛁", item.getBuyPrice());
-
-        return Component.text()
-                .append(Component.text("售卖：", NamedTextColor.GRAY))
-                .append(Component.text(sellPrice, NamedTextColor.WHITE).font(FONT_UNIFORM)) // 应用等宽字体
-                .append(Component.text(" ┃ ", NamedTextColor.DARK_GRAY))
-                .append(Component.text("购买：", NamedTextColor.GRAY))
-                .append(Component.text(buyPrice, NamedTextColor.WHITE).font(FONT_UNIFORM)) // 应用等宽字体
-                .build();
-    }
-
     private static Component getCategoryName(KyochigoPlugin plugin, String categoryKey) {
-        String path = "categories." + categoryKey + ".name";
-        String rawName = plugin.getConfiguration().getRaw().getString(path, categoryKey);
-        return MM.deserialize(rawName).decoration(TextDecoration.ITALIC, false);
+        return plugin.getConfiguration().getCategory(categoryKey).displayName();
     }
 }
\ No newline at end of file
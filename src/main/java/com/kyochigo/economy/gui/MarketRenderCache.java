@@ -0,0 +1,170 @@
+package com.kyochigo.economy.gui;
+
+import com.kyochigo.economy.KyochigoPlugin;
+import com.kyochigo.economy.managers.MarketManager;
+import com.kyochigo.economy.managers.PriceHistoryManager;
+import com.kyochigo.economy.model.MarketItem;
+import net.kyori.adventure.key.Key;
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.TextComponent;
+import net.kyori.adventure.text.format.NamedTextColor;
+import net.kyori.adventure.text.format.TextDecoration;
+import net.kyori.adventure.text.minimessage.MiniMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 行情组件渲染缓存 (按 物品 × 行情版本 × 环境版本 失效)
+ * <p>
+ * 职责：
+ * 1. 缓存柜台与行情看板中与观看者无关的组件（名称、价格行、状态行、热度行）。
+ * 2. 仅当物品行情版本或环境版本变化时重新渲染；配额等玩家专属行由调用方按需渲染。
+ * 3. 行情看板的 24h 趋势箭头取自历史行情存储；其比较基准随时间滑动，缓存额外按整点小时失效。
+ */
+final class MarketRenderCache {
+
+    private static final MiniMessage MM = MiniMessage.miniMessage();
+    private static final Key FONT_UNIFORM = Key.key("minecraft:uniform");
+
+    private static final Component HINT_BUY = MM.deserialize("<gradient:#40E0D0:#00F260><b>左键点击 ➔ 发起采购</b></gradient>");
+    private static final Component HINT_SELL = MM.deserialize("<gradient:#F2994A:#F2C94C><b>右键点击 ➔ 发起出售</b></gradient>");
+    private static final Component NAME_PREFIX = Component.text("✨ ", NamedTextColor.AQUA);
+    private static final Component BOARD_LORE_HEADER = Component.text("» 市场详细数据", NamedTextColor.DARK_GRAY);
+    private static final long TREND_WINDOW_MS = TimeUnit.HOURS.toMillis(24);
+    private static final long TREND_BUCKET_MS = TimeUnit.HOURS.toMillis(1);
+    private static final double TREND_THRESHOLD = 0.01;
+
+    // Key = 物品 configKey；条目内保存物品引用，名录换代后旧条目自动判定失效
+    private static final Map<String, Rendered> CACHE = new ConcurrentHashMap<>();
+
+    /**
+     * 预渲染结果 (不可变)
+     *
+     * @param displayName 物品名称 (已去除斜体)
+     * @param menuName    柜台图标名称 ("✨ " + 名称)
+     * @param menuLore    柜台图标完整描述
+     * @param boardInfo   行情看板价格行
+     * @param boardLore   行情看板图标描述 (不含玩家配额行)
+     */
+    record Rendered(MarketItem item, int priceVersion, long envVersion, long trendBucket,
+                    Component displayName, Component menuName, List<Component> menuLore,
+                    Component boardInfo, List<Component> boardLore) {}
+
+    private MarketRenderCache() {}
+
+    static Rendered get(MarketItem item, MarketManager market) {
+        int priceVersion = item.getPriceVersion();
+        long envVersion = market.getEnvVersion();
+        long trendBucket = System.currentTimeMillis() / TREND_BUCKET_MS;
+        Rendered cached = CACHE.get(item.getConfigKey());
+        if (cached != null && cached.item() == item && cached.priceVersion() == priceVersion
+                && cached.envVersion() == envVersion && cached.trendBucket() == trendBucket) {
+            return cached;
+        }
+        Rendered rendered = render(item, market, priceVersion, envVersion, trendBucket);
+        CACHE.put(item.getConfigKey(), rendered);
+        return rendered;
+    }
+
+    private static Rendered render(MarketItem item, MarketManager market, int priceVersion, long envVersion, long trendBucket) {
+        Component displayName = item.getDisplayNameComponent(market.getCraftEngineHook())
+                .decoration(TextDecoration.ITALIC, false);
+        Component menuName = Component.text().append(NAME_PREFIX).append(displayName).build();
+
+        String buyStr = formatPrice(item.getBuyPrice());
+        String sellStr = formatPrice(item.getSellPrice());
+
+        List<Component> menuLore = new ArrayList<>();
+        menuLore.add(Component.empty());
+        menuLore.add(renderEnvLine(market.getLastEnvNote(), market.getLastEnvIndex()));
+        menuLore.add(Component.empty());
+        menuLore.add(renderPriceLine("购买：", buyStr));
+        menuLore.add(renderPriceLine("售卖：", sellStr));
+        menuLore.add(Component.empty());
+        menuLore.add(HINT_BUY);
+        menuLore.add(HINT_SELL);
+        menuLore.add(Component.empty());
+        menuLore.add(Component.text("Serial: " + item.getConfigKey().toUpperCase(), NamedTextColor.DARK_GRAY));
+
+        Component boardInfo = Component.text()
+                .append(Component.text("售卖：", NamedTextColor.GRAY))
+                .append(Component.text(sellStr, NamedTextColor.WHITE).font(FONT_UNIFORM))
+                .append(Component.text(" ┃ ", NamedTextColor.DARK_GRAY))
+                .append(Component.text("购买：", NamedTextColor.GRAY))
+                .append(Component.text(buyStr, NamedTextColor.WHITE).font(FONT_UNIFORM))
+                .append(renderTrendArrow(item))
+                .build();
+
+        List<Component> boardLore = List.of(BOARD_LORE_HEADER, renderHeatLine(item.getTempNeff()), renderTrendLine(item));
+
+        return new Rendered(item, priceVersion, envVersion, trendBucket, displayName, menuName,
+                List.copyOf(menuLore), boardInfo, boardLore);
+    }
+
+    // 固定宽度格式 (总宽8字符，保留2位小数)，配合等宽字体保证价格对齐
+    private static String formatPrice(double price) {
+        return String.format("%8.2f ⛁", price);
+    }
+
+    private static Component renderPriceLine(String label, String price) {
+        return Component.text()
+                .append(Component.text(label, NamedTextColor.GRAY))
+                .append(Component.text(price, NamedTextColor.WHITE).font(FONT_UNIFORM))
+                .build();
+    }
+
+    private static Component renderEnvLine(String envNote, double envIndex) {
+        String translatedNote = switch (envNote.toLowerCase()) {
+            case "normal" -> "行情平稳";
+            case "weekend" -> "周末特惠";
+            case "prosperous" -> "贸易繁荣";
+            case "depressed" -> "行情低迷";
+            default -> envNote;
+        };
+        return Component.text()
+                .append(Component.text("实时状态: ", NamedTextColor.GRAY))
+                .append(Component.text(translatedNote, NamedTextColor.WHITE))
+                .append(Component.text(" (x" + String.format("%.2f", envIndex) + ")", NamedTextColor.AQUA))
+                .build();
+    }
+
+    /**
+     * 相对 24 小时前 (小时档) 售价的涨跌幅；无历史数据时返回 NaN
+     */
+    private static double trendChange(MarketItem item) {
+        PriceHistoryManager history = KyochigoPlugin.getInstance().getPriceHistoryManager();
+        PriceHistoryManager.PricePoint ref = history.latestAtOrBefore(item.getConfigKey(),
+                PriceHistoryManager.Tier.HOUR, System.currentTimeMillis() - TREND_WINDOW_MS);
+        if (ref == null || ref.sellPrice() <= 0) return Double.NaN;
+        return (item.getSellPrice() - ref.sellPrice()) / ref.sellPrice();
+    }
+
+    private static Component renderTrendArrow(MarketItem item) {
+        double change = trendChange(item);
+        if (Double.isNaN(change)) return Component.empty();
+        if (change > TREND_THRESHOLD) return Component.text(" ▲", NamedTextColor.GREEN);
+        if (change < -TREND_THRESHOLD) return Component.text(" ▼", NamedTextColor.RED);
+        return Component.text(" ▬", NamedTextColor.GRAY);
+    }
+
+    private static Component renderTrendLine(MarketItem item) {
+        double change = trendChange(item);
+        TextComponent.Builder line = Component.text().append(Component.text("24h 走势：", NamedTextColor.GRAY));
+        if (Double.isNaN(change)) return line.append(Component.text("暂无数据", NamedTextColor.DARK_GRAY)).build();
+        NamedTextColor color = change > TREND_THRESHOLD ? NamedTextColor.GREEN
+                : change < -TREND_THRESHOLD ? NamedTextColor.RED : NamedTextColor.WHITE;
+        return line.append(Component.text(String.format("%+.1f%%", change * 100), color)).build();
+    }
+
+    private static Component renderHeatLine(double neff) {
+        TextComponent.Builder line = Component.text().append(Component.text("当前热度：", NamedTextColor.GRAY));
+        if (neff < 100) line.append(Component.text("极度匮乏", NamedTextColor.GREEN));
+        else if (neff < 1000) line.append(Component.text("供需平衡", NamedTextColor.WHITE));
+        else line.append(Component.text("大量积压", NamedTextColor.RED));
+        return line.build();
+    }
+}
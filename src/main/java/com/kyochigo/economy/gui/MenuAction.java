@@ -0,0 +1,8 @@
+package com.kyochigo.economy.gui;
+
+/**
+ * 柜台菜单槽位动作 (由菜单持有者按槽位索引分派)
+ */
+enum MenuAction {
+    PRODUCT, PREV, NEXT, REFRESH, BACK, CLOSE
+}
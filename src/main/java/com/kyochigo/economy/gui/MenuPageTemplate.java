@@ -0,0 +1,134 @@
+package com.kyochigo.economy.gui;
+
+import com.kyochigo.economy.model.MarketItem;
+import net.kyori.adventure.text.Component;
+import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.ItemStack;
+
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 柜台分页模板 (按 分类 × 页码 × 行情版本 共享)
+ * <p>
+ * 职责：
+ * 1. 同一分类同一页的所有观看者共享一份不可变的槽位内容，打开菜单时仅做克隆。
+ * 2. 行情变化时基于旧模板增量重建：未变化的槽位沿用同一 ItemStack 引用，
+ *    因此新旧模板之间按引用比较即可得到需要刷新的槽位 (O(变化槽位))。
+ */
+final class MenuPageTemplate {
+
+    static final int SIZE = 54;
+    static final int ITEMS_PER_PAGE = 45;
+
+    final long catalogGeneration;
+    final long envVersion;
+    final int page;
+    final int totalPages;
+    final Component title;
+
+    private final MarketItem[] slotItems;
+    private final int[] slotVersions;
+    private final ItemStack[] contents;
+    private final MenuAction[] actions;
+
+    /**
+     * 底部导航栏 (槽位 45-53) 的图标与对应动作
+     */
+    record NavBar(ItemStack[] stacks, MenuAction[] actions) {}
+
+    private MenuPageTemplate(long catalogGeneration, long envVersion, int page, int totalPages, Component title,
+                             MarketItem[] slotItems, int[] slotVersions, ItemStack[] contents, MenuAction[] actions) {
+        this.catalogGeneration = catalogGeneration;
+        this.envVersion = envVersion;
+        this.page = page;
+        this.totalPages = totalPages;
+        this.title = title;
+        this.slotItems = slotItems;
+        this.slotVersions = slotVersions;
+        this.contents = contents;
+        this.actions = actions;
+    }
+
+    /**
+     * 构建新模板；若提供了同一名录、同一环境版本下的旧模板，则仅重建行情已变化的商品槽位
+     *
+     * @param navBar   底部导航栏 (槽位 45-53)，仅在完整构建时使用
+     * @param renderer 商品槽位渲染器
+     */
+    static MenuPageTemplate build(long catalogGeneration, long envVersion, int page, int totalPages, Component title,
+                                  List<MarketItem> items, Supplier<NavBar> navBar, MenuPageTemplate previous,
+                                  Function<MarketItem, ItemStack> renderer) {
+        MarketItem[] slotItems = new MarketItem[ITEMS_PER_PAGE];
+        int[] slotVersions = new int[ITEMS_PER_PAGE];
+        ItemStack[] contents = new ItemStack[SIZE];
+        MenuAction[] actions = new MenuAction[SIZE];
+
+        boolean reuse = previous != null && previous.catalogGeneration == catalogGeneration
+                && previous.envVersion == envVersion && previous.page == page && previous.totalPages == totalPages;
+        if (reuse) {
+            System.arraycopy(previous.contents, ITEMS_PER_PAGE, contents, ITEMS_PER_PAGE, SIZE - ITEMS_PER_PAGE);
+            System.arraycopy(previous.actions, ITEMS_PER_PAGE, actions, ITEMS_PER_PAGE, SIZE - ITEMS_PER_PAGE);
+        } else {
+            NavBar nav = navBar.get();
+            System.arraycopy(nav.stacks(), 0, contents, ITEMS_PER_PAGE, SIZE - ITEMS_PER_PAGE);
+            System.arraycopy(nav.actions(), 0, actions, ITEMS_PER_PAGE, SIZE - ITEMS_PER_PAGE);
+        }
+
+        int start = page * ITEMS_PER_PAGE;
+        int end = Math.min(start + ITEMS_PER_PAGE, items.size());
+        for (int i = start; i < end; i++) {
+            int slot = i - start;
+            MarketItem item = items.get(i);
+            int version = item.getPriceVersion();
+            slotItems[slot] = item;
+            slotVersions[slot] = version;
+            actions[slot] = MenuAction.PRODUCT;
+            contents[slot] = (reuse && previous.slotItems[slot] == item && previous.slotVersions[slot] == version)
+                    ? previous.contents[slot]
+                    : renderer.apply(item);
+        }
+        return new MenuPageTemplate(catalogGeneration, envVersion, page, totalPages, title,
+                slotItems, slotVersions, contents, actions);
+    }
+
+    /**
+     * 模板是否仍与当前行情一致
+     */
+    boolean isFresh(long catalogGeneration, long envVersion) {
+        if (this.catalogGeneration != catalogGeneration || this.envVersion != envVersion) return false;
+        for (int slot = 0; slot < ITEMS_PER_PAGE; slot++) {
+            MarketItem item = slotItems[slot];
+            if (item != null && item.getPriceVersion() != slotVersions[slot]) return false;
+        }
+        return true;
+    }
+
+    MenuAction getAction(int rawSlot) {
+        return (rawSlot >= 0 && rawSlot < SIZE) ? actions[rawSlot] : null;
+    }
+
+    /**
+     * 将模板完整写入新建的菜单 (逐槽克隆，模板本身保持不可变)
+     */
+    void fill(Inventory inventory) {
+        for (int slot = 0; slot < SIZE; slot++) {
+            if (contents[slot] != null) inventory.setItem(slot, contents[slot].clone());
+        }
+    }
+
+    /**
+     * 将相对旧模板发生变化的槽位写入已打开的菜单
+     * @return 实际刷新的槽位数
+     */
+    int applyDiff(Inventory inventory, MenuPageTemplate shown) {
+        int changed = 0;
+        for (int slot = 0; slot < SIZE; slot++) {
+            if (contents[slot] == shown.contents[slot]) continue;
+            inventory.setItem(slot, contents[slot] != null ? contents[slot].clone() : null);
+            changed++;
+        }
+        return changed;
+    }
+}
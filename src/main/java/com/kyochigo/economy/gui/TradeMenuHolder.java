@@ -0,0 +1,67 @@
+package com.kyochigo.economy.gui;
+
+import com.kyochigo.economy.model.MarketCatalog;
+import com.kyochigo.economy.model.MarketItem;
+import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.InventoryHolder;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 柜台菜单持有者 (InventoryHolder)
+ * <p>
+ * 职责：
+ * 1. 作为菜单身份标识，事件监听只需一次 instanceof 即可排除其他插件的界面。
+ * 2. 携带分类、页码与当前展示的分页模板，槽位动作直接按索引分派，无需读取物品 PDC。
+ * 3. 打开时记录 槽位 → 名录序号 的原始数组，点击商品 O(1) 反查，不再比对被装饰过的图标。
+ */
+final class TradeMenuHolder implements InventoryHolder {
+
+    final String categoryId;
+    final int page;
+    final MarketCatalog catalog;
+    final List<MarketItem> items;
+    MenuPageTemplate shown;
+    private final int[] slotOrdinals = new int[MenuPageTemplate.ITEMS_PER_PAGE];
+    private Inventory inventory;
+
+    TradeMenuHolder(String categoryId, int page, MarketCatalog catalog, MenuPageTemplate shown) {
+        this.categoryId = categoryId;
+        this.page = page;
+        this.catalog = catalog;
+        this.items = catalog.getItemsByCategory(categoryId);
+        this.shown = shown;
+
+        Arrays.fill(slotOrdinals, -1);
+        int start = page * MenuPageTemplate.ITEMS_PER_PAGE;
+        for (int slot = 0; slot < slotOrdinals.length; slot++) {
+            slotOrdinals[slot] = catalog.getCategoryOrdinal(categoryId, start + slot);
+        }
+    }
+
+    void bind(Inventory inventory) {
+        this.inventory = inventory;
+    }
+
+    /**
+     * 按原始槽位索引获取动作 (玩家背包区域或空槽位返回 null)
+     */
+    MenuAction getAction(int rawSlot) {
+        return shown.getAction(rawSlot);
+    }
+
+    /**
+     * 按原始槽位索引获取商品 (非商品槽位返回 null)
+     */
+    MarketItem getItem(int rawSlot) {
+        if (rawSlot < 0 || rawSlot >= slotOrdinals.length) return null;
+        return catalog.getByOrdinal(slotOrdinals[rawSlot]);
+    }
+
+    @Override
+    public @NotNull Inventory getInventory() {
+        return inventory;
+    }
+}
@@ -1,16 +1,15 @@
 package com.kyochigo.economy.gui;
 
 import com.kyochigo.economy.KyochigoPlugin;
+import com.kyochigo.economy.model.MarketCatalog;
 import com.kyochigo.economy.model.MarketItem;
-import net.kyori.adventure.key.Key;
+import com.kyochigo.economy.utils.RateLimiter;
+import com.kyochigo.economy.utils.TaskScheduler;
 import net.kyori.adventure.text.Component;
-import net.kyori.adventure.text.format.NamedTextColor;
 import net.kyori.adventure.text.format.TextDecoration;
 import net.kyori.adventure.text.minimessage.MiniMessage;
-import net.kyori.adventure.text.serializer.plain.PlainTextComponentSerializer;
 import org.bukkit.Bukkit;
 import org.bukkit.Material;
-import org.bukkit.NamespacedKey;
 import org.bukkit.enchantments.Enchantment;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
@@ -23,11 +22,9 @@ import org.bukkit.inventory.Inventory;
 import org.bukkit.inventory.ItemFlag;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.inventory.meta.ItemMeta;
-import org.bukkit.persistence.PersistentDataType;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
 
 /**
  * 商业柜台 (严格对齐 MarketDialog 逻辑标准版)
@@ -39,130 +36,153 @@ import java.util.stream.Collectors;
 public class TradeSelectorMenu implements Listener {
 
     private static final MiniMessage MM = MiniMessage.miniMessage();
-    private static final NamespacedKey MENU_KEY = new NamespacedKey("kyochigo", "trade_menu");
-    private static final Key FONT_UNIFORM = Key.key("minecraft:uniform");
+    private static final Component MSG_RATE_LIMITED = MM.deserialize("<red>操作过于频繁，请稍后再试。</red>");
     
-    private static final int ITEMS_PER_PAGE = 45; 
-    private static final Map<UUID, String> playerCurrentCategory = new ConcurrentHashMap<>();
-    private static final Map<UUID, Integer> playerCurrentPage = new ConcurrentHashMap<>();
+    private static final int ITEMS_PER_PAGE = MenuPageTemplate.ITEMS_PER_PAGE;
     private static final ItemStack BORDER_PANE = createBorderPane();
 
+    // 共享分页模板 (Key = 分类#页码) 与每位玩家当前打开的柜台 (用于行情差量推送)
+    private static final Map<String, MenuPageTemplate> pageTemplates = new ConcurrentHashMap<>();
+    private static final Map<UUID, TradeMenuHolder> openMenus = new ConcurrentHashMap<>();
+
     /**
      * 打开柜台菜单（包含后端价格强制同步）
      */
     public static void openItemSelect(Player player, String categoryId, int page) {
         KyochigoPlugin plugin = KyochigoPlugin.getInstance();
         
-        // 1. 筛选当前分类下的所有物品
-        List<MarketItem> categoryItems = plugin.getMarketManager().getAllItems().stream()
-                .filter(i -> i.getCategory().equalsIgnoreCase(categoryId))
-                .collect(Collectors.toList());
-
-        List<String> itemIds = categoryItems.stream()
-                .map(MarketItem::getConfigKey)
-                .collect(Collectors.toList());
+        // 1. 读取名录预计算的分类索引 (同一快照内的物品与 ID 列表)
+        MarketCatalog catalog = plugin.getMarketManager().getCatalog();
+        List<String> itemIds = catalog.getItemIdsByCategory(categoryId);
 
-        // 2. 强制拉取后端最新实时价格
-        plugin.getBackendManager().fetchBulkPrices(itemIds, response -> {
+        // 2. 强制拉取后端最新实时价格 (行情变化会经 applyPriceUpdate 推送到已打开的柜台)
+        plugin.getBackendManager().fetchBulkPrices(player, itemIds, response -> {
             if (response != null) {
                 plugin.getMarketManager().updateInternalData(response);
             }
             
-            // 3. 回到主线程构建 UI
-            Bukkit.getScheduler().runTask(plugin, () -> {
-                buildAndShowInventory(player, categoryId, page, categoryItems);
-            });
+            // 3. 构建 UI (回调已在拥有该玩家的区域线程)
+            buildAndShowInventory(player, categoryId, page, catalog);
         });
     }
 
-    private static void buildAndShowInventory(Player player, String categoryId, int page, List<MarketItem> items) {
+    private static void buildAndShowInventory(Player player, String categoryId, int page, MarketCatalog catalog) {
         KyochigoPlugin plugin = KyochigoPlugin.getInstance();
-        String categoryName = getCategoryNameRaw(plugin, categoryId).replaceAll("<[^>]*>", "");
-        
-        playerCurrentCategory.put(player.getUniqueId(), categoryId);
-        playerCurrentPage.put(player.getUniqueId(), page);
-
+        List<MarketItem> items = catalog.getItemsByCategory(categoryId);
         int totalPages = Math.max(1, (int) Math.ceil((double) items.size() / ITEMS_PER_PAGE));
-        Component title = MM.deserialize("<gradient:#40E0D0:#008080>商业柜台 » " + categoryName + "</gradient> <gray>(" + (page + 1) + "/" + totalPages + ")");
-        Inventory inv = Bukkit.createInventory(null, 54, title);
-
-        // 底部导航栏布局
-        for (int i = 45; i < 54; i++) inv.setItem(i, BORDER_PANE);
-        inv.setItem(45, createNavButton(Material.IRON_DOOR, "<red>返回主柜台", "back", true));
-        inv.setItem(48, createNavButton(Material.ARROW, "<aqua>上一页", "prev", page > 0));
-        inv.setItem(49, createNavButton(Material.NETHER_STAR, "<yellow>刷新行情", "refresh", true));
-        inv.setItem(50, createNavButton(Material.ARROW, "<aqua>下一页", "next", page < totalPages - 1));
-        inv.setItem(53, createNavButton(Material.BARRIER, "<gray>关闭菜单", "close", true));
-
-        // 物品列表渲染
-        int startIdx = page * ITEMS_PER_PAGE;
-        int endIdx = Math.min(startIdx + ITEMS_PER_PAGE, items.size());
-        int slot = 0;
-        for (int i = startIdx; i < endIdx; i++) {
-            inv.setItem(slot++, buildMarketItemStack(items.get(i), plugin));
+        int safePage = Math.max(0, Math.min(page, totalPages - 1));
+
+        // 同一页已处于打开状态 (刷新按钮)：仅写入变化的槽位，不重建菜单
+        TradeMenuHolder current = openMenus.get(player.getUniqueId());
+        if (current != null && current.categoryId.equalsIgnoreCase(categoryId) && current.page == safePage
+                && current.items == items && isViewing(player, current)) {
+            refreshMenu(current);
+            return;
         }
 
+        MenuPageTemplate template = resolveTemplate(plugin, categoryId, safePage, totalPages, catalog.getGeneration(), items, null);
+        TradeMenuHolder holder = new TradeMenuHolder(categoryId, safePage, catalog, template);
+        Inventory inv = Bukkit.createInventory(holder, MenuPageTemplate.SIZE, template.title);
+        holder.bind(inv);
+        template.fill(inv);
+
         player.openInventory(inv);
+        openMenus.put(player.getUniqueId(), holder);
+    }
+
+    /**
+     * 行情推送入口：将最新价格以槽位差量写入所有已打开的柜台 (各玩家的背包写入在其所属区域线程执行)
+     */
+    public static void applyPriceUpdate() {
+        TaskScheduler scheduler = KyochigoPlugin.getInstance().getTaskScheduler();
+        openMenus.forEach((uuid, holder) -> {
+            Player player = Bukkit.getPlayer(uuid);
+            if (player == null) {
+                openMenus.remove(uuid, holder);
+                return;
+            }
+            scheduler.runForEntity(player, () -> {
+                if (!isViewing(player, holder)) {
+                    openMenus.remove(uuid, holder);
+                    return;
+                }
+                refreshMenu(holder);
+            });
+        });
+    }
+
+    private static void refreshMenu(TradeMenuHolder holder) {
+        KyochigoPlugin plugin = KyochigoPlugin.getInstance();
+        MenuPageTemplate shown = holder.shown;
+        MenuPageTemplate latest = resolveTemplate(plugin, holder.categoryId, holder.page, shown.totalPages,
+                shown.catalogGeneration, holder.items, shown);
+        if (latest == shown) return;
+        latest.applyDiff(holder.getInventory(), shown);
+        holder.shown = latest;
+    }
+
+    /**
+     * 获取 (必要时增量重建) 共享分页模板
+     */
+    private static MenuPageTemplate resolveTemplate(KyochigoPlugin plugin, String categoryId, int page, int totalPages,
+                                                    long generation, List<MarketItem> items, MenuPageTemplate shown) {
+        String key = categoryId.toLowerCase() + "#" + page;
+        long envVersion = plugin.getMarketManager().getEnvVersion();
+        MenuPageTemplate current = pageTemplates.get(key);
+        if (current != null && current.totalPages == totalPages && current.isFresh(generation, envVersion)) {
+            return current;
+        }
+
+        // 增量重建的基准：优先使用同名录的共享模板，旧名录会话则基于自身正在展示的模板
+        MenuPageTemplate previous = (current != null && current.catalogGeneration == generation) ? current : shown;
+        Component title = (previous != null && previous.catalogGeneration == generation && previous.totalPages == totalPages)
+                ? previous.title
+                : buildTitle(plugin, categoryId, page, totalPages);
+        MenuPageTemplate next = MenuPageTemplate.build(generation, envVersion, page, totalPages, title, items,
+                () -> buildNavBar(page, totalPages), previous, item -> buildMarketItemStack(item, plugin));
+        // 仅当模板属于当前名录时才共享，避免旧名录会话覆盖新模板
+        if (generation == plugin.getMarketManager().getCatalog().getGeneration()) {
+            pageTemplates.put(key, next);
+        }
+        return next;
+    }
+
+    private static Component buildTitle(KyochigoPlugin plugin, String categoryId, int page, int totalPages) {
+        String categoryName = getCategoryNameRaw(plugin, categoryId).replaceAll("<[^>]*>", "");
+        return MM.deserialize("<gradient:#40E0D0:#008080>商业柜台 » " + categoryName + "</gradient> <gray>(" + (page + 1) + "/" + totalPages + ")");
+    }
+
+    private static MenuPageTemplate.NavBar buildNavBar(int page, int totalPages) {
+        // 底部导航栏布局 (槽位 45-53)
+        ItemStack[] nav = new ItemStack[MenuPageTemplate.SIZE - ITEMS_PER_PAGE];
+        MenuAction[] actions = new MenuAction[nav.length];
+        Arrays.fill(nav, BORDER_PANE);
+        placeNavButton(nav, actions, 0, Material.IRON_DOOR, "<red>返回主柜台", MenuAction.BACK, true);
+        placeNavButton(nav, actions, 3, Material.ARROW, "<aqua>上一页", MenuAction.PREV, page > 0);
+        placeNavButton(nav, actions, 4, Material.NETHER_STAR, "<yellow>刷新行情", MenuAction.REFRESH, true);
+        placeNavButton(nav, actions, 5, Material.ARROW, "<aqua>下一页", MenuAction.NEXT, page < totalPages - 1);
+        placeNavButton(nav, actions, 8, Material.BARRIER, "<gray>关闭菜单", MenuAction.CLOSE, true);
+        return new MenuPageTemplate.NavBar(nav, actions);
+    }
+
+    private static boolean isViewing(Player player, TradeMenuHolder holder) {
+        return player.getOpenInventory().getTopInventory() == holder.getInventory();
     }
 
     /**
      * 核心渲染器：应用物理同步与视觉对齐标准
+     * 名称与描述取自渲染缓存，仅在物品行情或市场环境变化后重新解析。
      */
     private static ItemStack buildMarketItemStack(MarketItem item, KyochigoPlugin plugin) {
+        MarketRenderCache.Rendered rendered = MarketRenderCache.get(item, plugin.getMarketManager());
         ItemStack stack = plugin.getMarketManager().getItemIcon(item);
         ItemMeta meta = stack.getItemMeta();
 
-        List<Component> lore = new ArrayList<>();
-        lore.add(Component.empty());
-        
-        // 1. 环境状态参考
-        double envIndex = plugin.getMarketManager().getLastEnvIndex();
-        String envNote = plugin.getMarketManager().getLastEnvNote();
-        String translatedNote = switch (envNote.toLowerCase()) {
-            case "normal" -> "行情平稳";
-            case "weekend" -> "周末特惠";
-            case "prosperous" -> "贸易繁荣";
-            case "depressed" -> "行情低迷";
-            default -> envNote;
-        };
-        lore.add(MM.deserialize("<gray>实时状态: <white>" + translatedNote + "</white> <aqua>(x" + String.format("%.2f", envIndex) + ")</aqua>"));
-        lore.add(Component.empty());
-
-        // 2. 【核心对齐】物理同步：直接读取逻辑层判定的价格
-        String buyStr = String.format("%8.2f ⛁", item.getBuyPrice());
-        String sellStr = String.format("%8.2f ⛁", item.getSellPrice());
-
-        // 3. 描述对齐：统一标签、颜色、等宽字体
-        lore.add(Component.text()
-                .append(Component.text("购买：", NamedTextColor.GRAY))
-                .append(Component.text(buyStr, NamedTextColor.WHITE).font(FONT_UNIFORM))
-                .build());
-
-        lore.add(Component.text()
-                .append(Component.text("售卖：", NamedTextColor.GRAY))
-                .append(Component.text(sellStr, NamedTextColor.WHITE).font(FONT_UNIFORM))
-                .build());
-        
-        lore.add(Component.empty());
-        lore.add(MM.deserialize("<gradient:#40E0D0:#00F260><b>左键点击 ➔ 发起采购</b></gradient>"));
-        lore.add(MM.deserialize("<gradient:#F2994A:#F2C94C><b>右键点击 ➔ 发起出售</b></gradient>"));
-        lore.add(Component.empty());
-        lore.add(MM.deserialize("<dark_gray>Serial: " + item.getConfigKey().toUpperCase() + "</dark_gray>"));
-
-        meta.lore(lore);
-        
-        // 渲染名称
-        Component displayName = item.getDisplayNameComponent(plugin.getMarketManager().getCraftEngineHook())
-                .decoration(TextDecoration.ITALIC, false);
-        
-        meta.displayName(Component.text()
-                .append(Component.text("✨ ", NamedTextColor.AQUA))
-                .append(displayName)
-                .build());
+        meta.lore(rendered.menuLore());
+        meta.displayName(rendered.menuName());
 
         meta.addEnchant(Enchantment.UNBREAKING, 1, true);
         meta.addItemFlags(ItemFlag.HIDE_ENCHANTS, ItemFlag.HIDE_ATTRIBUTES);
-        meta.getPersistentDataContainer().set(MENU_KEY, PersistentDataType.STRING, "product");
         
         stack.setItemMeta(meta);
         return stack;
@@ -174,34 +194,37 @@ public class TradeSelectorMenu implements Listener {
 
     @EventHandler
     public void onInventoryClick(InventoryClickEvent event) {
+        // 非本插件菜单：一次 instanceof 即返回，不做标题序列化
+        if (!(event.getInventory().getHolder(false) instanceof TradeMenuHolder holder)) return;
         if (!(event.getWhoClicked() instanceof Player player)) return;
-        if (!isKyochigoMenu(event.getView().title())) return;
 
         event.setCancelled(true); 
 
-        ItemStack clicked = event.getCurrentItem();
-        if (clicked == null || !clicked.hasItemMeta()) return;
-
-        String action = clicked.getItemMeta().getPersistentDataContainer().get(MENU_KEY, PersistentDataType.STRING);
+        MenuAction action = holder.getAction(event.getRawSlot());
         if (action == null) return;
 
-        handleAction(player, action, event);
+        handleAction(player, holder, action, event);
     }
 
-    private void handleAction(Player player, String action, InventoryClickEvent event) {
-        UUID uuid = player.getUniqueId();
-        String cat = playerCurrentCategory.getOrDefault(uuid, "ores");
-        int page = playerCurrentPage.getOrDefault(uuid, 0);
+    private void handleAction(Player player, TradeMenuHolder holder, MenuAction action, InventoryClickEvent event) {
+        String cat = holder.categoryId;
+        int page = holder.page;
 
         switch (action) {
-            case "next" -> openItemSelect(player, cat, page + 1);
-            case "prev" -> openItemSelect(player, cat, page - 1);
-            case "refresh" -> openItemSelect(player, cat, page);
-            case "back" -> TransactionDialog.openEntryMenu(player, null);
-            case "close" -> player.closeInventory();
-            case "product" -> {
-                MarketItem item = KyochigoPlugin.getInstance().getMarketManager().findMarketItem(event.getCurrentItem());
-                if (item != null) {
+            case NEXT -> openItemSelect(player, cat, page + 1);
+            case PREV -> openItemSelect(player, cat, page - 1);
+            case REFRESH -> {
+                if (!checkRateLimit(player, RateLimiter.Action.MENU_REFRESH)) return;
+                openItemSelect(player, cat, page);
+            }
+            case BACK -> TransactionDialog.openEntryMenu(player, null);
+            case CLOSE -> player.closeInventory();
+            case PRODUCT -> {
+                // 槽位 → 名录序号 O(1) 反查，不检查被装饰过的图标
+                MarketItem item = holder.getItem(event.getRawSlot());
+                if (item != null && (event.getClick() == ClickType.LEFT || event.getClick() == ClickType.RIGHT)) {
+                    // 打开数量菜单会触发一次批量报价
+                    if (!checkRateLimit(player, RateLimiter.Action.QUOTE)) return;
                     if (event.getClick() == ClickType.LEFT) {
                         TransactionDialog.openActionMenu(player, item, true);
                     } else if (event.getClick() == ClickType.RIGHT) {
@@ -216,15 +239,22 @@ public class TradeSelectorMenu implements Listener {
     // 辅助工具类
     // =========================================================================
 
-    private static ItemStack createNavButton(Material mat, String name, String action, boolean enabled) {
-        if (!enabled) return BORDER_PANE;
+    private static boolean checkRateLimit(Player player, RateLimiter.Action action) {
+        if (KyochigoPlugin.getInstance().checkRateLimit(player.getUniqueId(), action)) return true;
+        player.sendMessage(MSG_RATE_LIMITED);
+        return false;
+    }
+
+    private static void placeNavButton(ItemStack[] nav, MenuAction[] actions, int index, Material mat, String name,
+                                       MenuAction action, boolean enabled) {
+        if (!enabled) return;
         ItemStack stack = new ItemStack(mat);
         ItemMeta meta = stack.getItemMeta();
         meta.displayName(MM.deserialize(name).decoration(TextDecoration.ITALIC, false).decorate(TextDecoration.BOLD));
-        meta.getPersistentDataContainer().set(MENU_KEY, PersistentDataType.STRING, action);
         meta.lore(Collections.singletonList(MM.deserialize("<gray>点击执行导航操作</gray>")));
         stack.setItemMeta(meta);
-        return stack;
+        nav[index] = stack;
+        actions[index] = action;
     }
 
     private static ItemStack createBorderPane() {
@@ -237,15 +267,15 @@ public class TradeSelectorMenu implements Listener {
         return item;
     }
 
-    private boolean isKyochigoMenu(Component title) {
-        String plainTitle = PlainTextComponentSerializer.plainText().serialize(title);
-        return plainTitle.contains("商业柜台");
-    }
-
     private static String getCategoryNameRaw(KyochigoPlugin plugin, String categoryKey) {
-        return plugin.getConfiguration().getRaw().getString("categories." + categoryKey + ".name", categoryKey);
+        return plugin.getConfiguration().getCategory(categoryKey).rawName();
     }
 
-    @EventHandler public void onInventoryDrag(InventoryDragEvent e) { if (isKyochigoMenu(e.getView().title())) e.setCancelled(true); }
-    @EventHandler public void onInventoryClose(InventoryCloseEvent e) { playerCurrentCategory.remove(e.getPlayer().getUniqueId()); playerCurrentPage.remove(e.getPlayer().getUniqueId()); }
+    @EventHandler public void onInventoryDrag(InventoryDragEvent e) { if (e.getInventory().getHolder(false) instanceof TradeMenuHolder) e.setCancelled(true); }
+    @EventHandler public void onInventoryClose(InventoryCloseEvent e) {
+        // 只移除与被关闭菜单对应的登记，避免误删翻页后新打开的菜单
+        if (e.getInventory().getHolder(false) instanceof TradeMenuHolder holder) {
+            openMenus.remove(e.getPlayer().getUniqueId(), holder);
+        }
+    }
 }
\ No newline at end of file
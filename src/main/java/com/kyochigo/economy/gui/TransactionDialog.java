@@ -1,6 +1,7 @@
 package com.kyochigo.economy.gui;
 
 import com.kyochigo.economy.KyochigoPlugin;
+import com.kyochigo.economy.managers.BackendManager;
 import com.kyochigo.economy.model.MarketItem;
 import io.papermc.paper.dialog.Dialog;
 import io.papermc.paper.registry.data.dialog.ActionButton;
@@ -48,6 +49,10 @@ public class TransactionDialog {
     private static final Component CANCEL = MM.deserialize("<gray> [ 放弃交易 ] </gray>");
     private static final Component INSUFFICIENT_FUNDS = MM.deserialize("<red> [ 账户余额不足 ] </red>");
 
+    // 数量选择档位：少量 / 整组 / 全部
+    private static final int AMOUNT_SINGLE = 1;
+    private static final int AMOUNT_STACK = 64;
+
     // ========================================================================
     // 1. 入口逻辑
     // ========================================================================
@@ -71,12 +76,40 @@ public class TransactionDialog {
     // 2. 数量选择逻辑 (已对齐单价显示)
     // ========================================================================
 
+    /**
+     * 打开数量选择菜单
+     * 先通过批量报价接口一次性取得 1 / 64 / 全部 三档的预览总价，再渲染按钮；后端不可用时按钮不显示总价。
+     */
     public static void openActionMenu(Player player, MarketItem item, boolean isBuyMode) {
         KyochigoPlugin plugin = KyochigoPlugin.getInstance();
+        int allAmount = isBuyMode
+                ? getInventoryFreeSpace(player, plugin.getMarketManager().getItemIcon(item))
+                : countPlayerItems(player, item, plugin);
+
+        List<BackendManager.QuoteRequest> requests = new ArrayList<>(3);
+        requests.add(new BackendManager.QuoteRequest(item, AMOUNT_SINGLE, isBuyMode));
+        requests.add(new BackendManager.QuoteRequest(item, AMOUNT_STACK, isBuyMode));
+        if (allAmount > 0) requests.add(new BackendManager.QuoteRequest(item, allAmount, isBuyMode));
+
+        plugin.getBackendManager().sendBulkQuoteRequest(player, requests, quotes -> {
+            if (!player.isOnline()) return;
+            String[] totals = new String[3];
+            if (quotes != null) {
+                for (int i = 0; i < quotes.size(); i++) {
+                    BackendManager.Quote quote = quotes.get(i);
+                    if (quote != null) totals[i] = formatQuoteSuffix(quote, isBuyMode);
+                }
+            }
+            showActionMenu(player, item, isBuyMode, totals);
+        });
+    }
+
+    private static void showActionMenu(Player player, MarketItem item, boolean isBuyMode, String[] totals) {
+        KyochigoPlugin plugin = KyochigoPlugin.getInstance();
         
         List<ActionButton> actions = new ArrayList<>();
-        if (isBuyMode) addBuyActions(actions, item);
-        else addSellActions(actions, item);
+        if (isBuyMode) addBuyActions(actions, item, totals);
+        else addSellActions(actions, item, totals);
         actions.add(ActionButton.builder(CANCEL).build());
 
         TextComponent.Builder desc = Component.text().append(Component.newline());
@@ -96,11 +129,11 @@ public class TransactionDialog {
         showTransactionDialog(player, item, ACTION_TITLE, desc.build(), actions);
     }
 
-    private static void addBuyActions(List<ActionButton> actions, MarketItem item) {
+    private static void addBuyActions(List<ActionButton> actions, MarketItem item, String[] totals) {
         KyochigoPlugin plugin = KyochigoPlugin.getInstance();
-        actions.add(createBtn("<green>▸ 购买少量 (1个) </green>", (v, a) -> plugin.getTransactionManager().openBuyConfirmDialog((Player)a, item, 1)));
-        actions.add(createBtn("<green>▸ 购买整组 (64个) </green>", (v, a) -> plugin.getTransactionManager().openBuyConfirmDialog((Player)a, item, 64)));
-        actions.add(createBtn("<green>▸ 购买全部 (补齐库存) </green>", (v, a) -> {
+        actions.add(createBtn("<green>▸ 购买少量 (1个) </green>" + nullToEmpty(totals[0]), (v, a) -> plugin.getTransactionManager().openBuyConfirmDialog((Player)a, item, AMOUNT_SINGLE)));
+        actions.add(createBtn("<green>▸ 购买整组 (64个) </green>" + nullToEmpty(totals[1]), (v, a) -> plugin.getTransactionManager().openBuyConfirmDialog((Player)a, item, AMOUNT_STACK)));
+        actions.add(createBtn("<green>▸ 购买全部 (补齐库存) </green>" + nullToEmpty(totals[2]), (v, a) -> {
             Player p = (Player) a;
             int maxSpace = getInventoryFreeSpace(p, plugin.getMarketManager().getItemIcon(item));
             if (maxSpace > 0) plugin.getTransactionManager().openBuyConfirmDialog(p, item, maxSpace);
@@ -108,11 +141,11 @@ public class TransactionDialog {
         }));
     }
 
-    private static void addSellActions(List<ActionButton> actions, MarketItem item) {
+    private static void addSellActions(List<ActionButton> actions, MarketItem item, String[] totals) {
         KyochigoPlugin plugin = KyochigoPlugin.getInstance();
-        actions.add(createBtn("<gold>▸ 售卖少量 (1个) </gold>", (v, a) -> plugin.getTransactionManager().openSellConfirmDialog((Player)a, item, 1)));
-        actions.add(createBtn("<gold>▸ 售卖整组 (64个) </gold>", (v, a) -> plugin.getTransactionManager().openSellConfirmDialog((Player)a, item, 64)));
-        actions.add(createBtn("<gold>▸ 售卖全部 (清空背包) </gold>", (v, a) -> {
+        actions.add(createBtn("<gold>▸ 售卖少量 (1个) </gold>" + nullToEmpty(totals[0]), (v, a) -> plugin.getTransactionManager().openSellConfirmDialog((Player)a, item, AMOUNT_SINGLE)));
+        actions.add(createBtn("<gold>▸ 售卖整组 (64个) </gold>" + nullToEmpty(totals[1]), (v, a) -> plugin.getTransactionManager().openSellConfirmDialog((Player)a, item, AMOUNT_STACK)));
+        actions.add(createBtn("<gold>▸ 售卖全部 (清空背包) </gold>" + nullToEmpty(totals[2]), (v, a) -> {
             Player p = (Player) a;
             int count = countPlayerItems(p, item, plugin);
             if (count > 0) plugin.getTransactionManager().openSellConfirmDialog(p, item, count);
@@ -133,9 +166,15 @@ public class TransactionDialog {
     }
 
     private static void openTransactionConfirm(Player player, MarketItem item, int amount, double price, boolean isBuy) {
+        // 余额仅用于展示与按钮状态，读取经济适配层缓存；实际扣款时由 Vault 响应最终裁决
+        KyochigoPlugin.getInstance().getVaultAdapter().withDisplayBalance(player,
+                balance -> showTransactionConfirm(player, item, amount, price, balance, isBuy));
+    }
+
+    private static void showTransactionConfirm(Player player, MarketItem item, int amount, double price, double balance, boolean isBuy) {
         KyochigoPlugin plugin = KyochigoPlugin.getInstance();
-        double balance = plugin.getEconomy().getBalance(player);
-        
+        if (!player.isOnline()) return;
+
         // 这里的 price 是由 Manager 传递的成交价，此时应已经过 Rust 后端更新。
         Component content = buildTransactionContent(item, amount, price, balance, isBuy);
         
@@ -171,13 +210,26 @@ public class TransactionDialog {
                 .build();
     }
 
+    /**
+     * 按钮后缀：预览总价 (全部档位附带实际数量)
+     */
+    private static String formatQuoteSuffix(BackendManager.Quote quote, boolean isBuy) {
+        String amount = quote.request().amount() > AMOUNT_STACK ? "x" + quote.request().amount() + " " : "";
+        String color = isBuy ? "red" : "green";
+        return "<dark_gray>│</dark_gray> <gray>" + amount + "</gray><" + color + ">" + String.format("%.2f", quote.totalPrice()) + "</" + color + ">" + CURRENCY;
+    }
+
+    private static String nullToEmpty(String s) {
+        return s == null ? "" : s;
+    }
+
     private static Component buildTransactionContent(MarketItem item, int amount, double price, double balance, boolean isBuy) {
         KyochigoPlugin plugin = KyochigoPlugin.getInstance();
         double total = amount * price;
 
         TextComponent.Builder builder = Component.text()
                 .append(MM.deserialize("<newline><gray>正在准备 <white>" + (isBuy ? "购买" : "售卖") + "</white> 业务：</gray><newline>"))
-                .append(item.getDisplayNameComponent(plugin.getMarketManager().getCraftEngineHook()).color(NamedTextColor.WHITE).decorate(TextDecoration.BOLD))
+                .append(MarketRenderCache.get(item, plugin.getMarketManager()).displayName().color(NamedTextColor.WHITE).decorate(TextDecoration.BOLD))
                 .append(Component.text(" x" + amount, NamedTextColor.AQUA)).append(Component.newline())
                 .append(MM.deserialize(DIVIDER)).append(Component.newline());
 
@@ -221,9 +273,7 @@ public class TransactionDialog {
 
     private static String getCategoryFriendlyName(String categoryId) {
         KyochigoPlugin plugin = KyochigoPlugin.getInstance();
-        String fromConfig = plugin.getConfiguration().getRaw().getString("categories." + categoryId + ".name");
-        if (fromConfig != null) return fromConfig.replaceAll("<[^>]*>", "");
-        return categoryId;
+        return plugin.getConfiguration().getCategory(categoryId).plainName();
     }
 
     private static ActionButton createBtn(String label, DialogActionCallback callback) {
@@ -0,0 +1,225 @@
+package com.kyochigo.economy.managers;
+
+import com.kyochigo.economy.model.MarketItem;
+import com.kyochigo.economy.utils.TaskScheduler;
+import net.milkbowl.vault.economy.EconomyResponse;
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 本地资产两阶段事务 (预留 -> 后端记账 -> 提交 / 补偿)
+ * <p>
+ * 职责：
+ * 1. 预留：买入时按预览总价预扣资金，卖出时先行扣除物品；预留成功前不向后端正式提交。
+ * 2. 提交：后端记账成功后按最终成交价结算 (买入补扣或退回差价后发货，卖出入账)。
+ * 3. 补偿：后端拒绝、通讯失败或本地结算失败时，原样退回已预留的资金或物品。
+ * 4. 每一步 Vault 调用都校验 EconomyResponse，不再假定扣款 / 入账必然成功。
+ * <p>
+ * 预留完成后资产已离开玩家账户 / 背包，同一玩家的多笔事务 (批量出售) 可并行提交而不会重复结算同一份资产。
+ * 资金操作经 VaultAdapter 在专用线程执行；各方法须在拥有该玩家的区域线程调用，返回的 Future 也在该线程完成。
+ * 玩家在结算途中下线时 Future 仍会完成 (见 TaskScheduler.resumeOn)：资金照常经 Vault 入账，
+ * 应交付的物品在当前线程不拥有该玩家时转入离线补发队列，上线后发放。
+ */
+public class AssetTransaction {
+
+    // SETTLING：已开始按最终成交价结算 (结算内部失败时仍会自行补偿)，外部不得再补偿
+    public enum State { NEW, RESERVED, SETTLING, COMMITTED, COMPENSATED }
+
+    private final Player player;
+    private final MarketItem item;
+    private final int amount;
+    private final boolean isBuy;
+    private final VaultAdapter vault;
+    private final InventoryManager inventoryManager;
+    private final TaskScheduler scheduler;
+    private final PendingDeliveryManager deliveries;
+
+    private State state = State.NEW;
+    private double reservedFunds = 0.0;
+    private int reservedItems = 0;
+    private double settledPrice = 0.0;
+    // 由经济插件响应推算的成交前后余额 (供审计日志)，未发生资金操作时为 NaN
+    private double balanceBefore = Double.NaN;
+    private double balanceAfter = Double.NaN;
+    private String failure;
+
+    public AssetTransaction(@NotNull Player player, @NotNull MarketItem item, int amount, boolean isBuy,
+                            @NotNull VaultAdapter vault, @NotNull InventoryManager inventoryManager,
+                            @NotNull TaskScheduler scheduler, @NotNull PendingDeliveryManager deliveries) {
+        this.player = player;
+        this.item = item;
+        this.amount = amount;
+        this.isBuy = isBuy;
+        this.vault = vault;
+        this.inventoryManager = inventoryManager;
+        this.scheduler = scheduler;
+        this.deliveries = deliveries;
+    }
+
+    // =========================================================================
+    // 阶段一：预留
+    // =========================================================================
+
+    /**
+     * 预留资产 (卖出仅操作背包，返回的 Future 已完成)
+     * @param quotedPrice 买入时预扣的资金 (通常为预览总价)；卖出时忽略
+     * @return false 表示预留失败 (原因见 getFailure)，此时玩家资产未发生任何变化
+     */
+    @NotNull
+    public CompletableFuture<Boolean> reserve(double quotedPrice) {
+        if (state != State.NEW) throw new IllegalStateException("事务已处于 " + state + " 状态");
+
+        if (!isBuy) {
+            if (!inventoryManager.removeItems(player, item, amount)) return done(fail("所需物资数量不足。"));
+            reservedItems = amount;
+            state = State.RESERVED;
+            return done(true);
+        }
+
+        if (!inventoryManager.hasSpaceForItem(player, item, amount)) return done(fail("行囊空间不足，请清理后再试。"));
+        return resume(vault.withdraw(player, quotedPrice)).thenApply(res -> {
+            if (!res.transactionSuccess()) return fail("账户余额不足，购买取消。" + reason(res));
+            track(res, -quotedPrice);
+            reservedFunds = quotedPrice;
+            state = State.RESERVED;
+            return true;
+        });
+    }
+
+    // =========================================================================
+    // 阶段二：提交 / 补偿
+    // =========================================================================
+
+    /**
+     * 按后端确认的最终成交价结算
+     * @return false 表示本地结算失败，预留资产已自动退回 (后端已记账，调用方需记录以便对账)
+     */
+    @NotNull
+    public CompletableFuture<Boolean> commit(double finalPrice) {
+        requireReserved();
+        state = State.SETTLING;
+
+        if (!isBuy) {
+            return resume(vault.deposit(player, finalPrice)).thenCompose(res -> {
+                if (!res.transactionSuccess()) {
+                    String message = "货款入账失败，物品已退回。" + reason(res);
+                    return compensate().thenApply(v -> fail(failure == null ? message : message + failure));
+                }
+                track(res, finalPrice);
+                return done(settle(finalPrice));
+            });
+        }
+
+        double diff = finalPrice - reservedFunds;
+        if (diff == 0) {
+            deliverItems(amount);
+            return done(settle(finalPrice));
+        }
+        CompletableFuture<EconomyResponse> adjust = diff > 0 ? vault.withdraw(player, diff) : vault.deposit(player, -diff);
+        return resume(adjust).thenCompose(res -> {
+            if (!res.transactionSuccess()) {
+                if (diff > 0) {
+                    String message = "账户余额不足以支付最终成交价。" + reason(res);
+                    return compensate().thenApply(v -> fail(failure == null ? message : message + failure));
+                }
+                // 退差价失败不影响发货，仅记录原因
+                failure = "差价退回失败。" + reason(res);
+            } else {
+                track(res, -diff);
+            }
+            deliverItems(amount);
+            return done(settle(finalPrice));
+        });
+    }
+
+    /**
+     * 退回全部预留资产 (后端拒绝、通讯失败或插件停用时调用；重复调用无副作用)
+     */
+    @NotNull
+    public CompletableFuture<Void> compensate() {
+        if (state != State.RESERVED && state != State.SETTLING) return CompletableFuture.completedFuture(null);
+        state = State.COMPENSATED;
+
+        if (reservedItems > 0) deliverItems(reservedItems);
+        reservedItems = 0;
+        double refund = reservedFunds;
+        reservedFunds = 0.0;
+        if (refund <= 0) return CompletableFuture.completedFuture(null);
+
+        return resume(vault.deposit(player, refund)).thenAccept(res -> {
+            if (!res.transactionSuccess()) {
+                failure = "预扣资金退回失败 (" + String.format("%.2f", refund) + ")。" + reason(res);
+            } else {
+                track(res, refund);
+            }
+        });
+    }
+
+    // =========================================================================
+    // Getters
+    // =========================================================================
+
+    public State getState() { return state; }
+    public Player getPlayer() { return player; }
+    public MarketItem getItem() { return item; }
+    public int getAmount() { return amount; }
+    public boolean isBuy() { return isBuy; }
+    public double getSettledPrice() { return settledPrice; }
+    public double getBalanceBefore() { return balanceBefore; }
+    public double getBalanceAfter() { return balanceAfter; }
+
+    @Nullable
+    public String getFailure() { return failure; }
+
+    private boolean settle(double finalPrice) {
+        settledPrice = finalPrice;
+        reservedFunds = 0.0;
+        reservedItems = 0;
+        state = State.COMMITTED;
+        return true;
+    }
+
+    /**
+     * 交付物品：玩家在线且当前线程拥有该玩家时直接放入背包，否则登记到离线补发队列
+     */
+    private void deliverItems(int count) {
+        if (player.isOnline() && Bukkit.isOwnedByCurrentRegion(player)) {
+            inventoryManager.giveItems(player, item, count);
+        } else {
+            deliveries.owe(player.getUniqueId(), item.getConfigKey(), count);
+        }
+    }
+
+    /**
+     * 以响应中的操作后余额推算成交前后余额 (delta 为本次操作对余额的变化量)
+     */
+    private void track(EconomyResponse res, double delta) {
+        if (Double.isNaN(balanceBefore)) balanceBefore = res.balance - delta;
+        balanceAfter = res.balance;
+    }
+
+    private <T> CompletableFuture<T> resume(CompletableFuture<T> future) {
+        return scheduler.resumeOn(player, future);
+    }
+
+    private void requireReserved() {
+        if (state != State.RESERVED) throw new IllegalStateException("事务未预留资产 (当前 " + state + ")");
+    }
+
+    private boolean fail(String message) {
+        this.failure = message;
+        return false;
+    }
+
+    private static <T> CompletableFuture<T> done(T value) {
+        return CompletableFuture.completedFuture(value);
+    }
+
+    private static String reason(@Nullable EconomyResponse res) {
+        return (res != null && res.errorMessage != null && !res.errorMessage.isEmpty()) ? " (" + res.errorMessage + ")" : "";
+    }
+}
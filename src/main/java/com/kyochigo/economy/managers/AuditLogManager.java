@@ -0,0 +1,257 @@
+package com.kyochigo.economy.managers;
+
+import com.kyochigo.economy.KyochigoPlugin;
+import com.kyochigo.economy.model.TradeEvent;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+/**
+ * 成交审计日志 (仅追加、二进制编码、按日/按大小轮转、gzip 压缩)
+ * <p>
+ * 职责：
+ * 1. 作为成交日志的关键消费者，逐笔写入成交编号、玩家、物品、数量、单价、环境指数、成交前后余额与时间。
+ * 2. 文件按日期命名并在超过大小上限时追加序号轮转；每次打开都新建一个序号文件，从不续写已有文件，
+ *    异常退出留下的截断成员只会位于文件末尾，不会遮蔽之后写入的记录。
+ *    一批事件处理完毕后同步刷新，异常退出最多丢失最后一个未刷新的批次。
+ * 3. 查询逐条流式解码并过滤，只保留最近 N 条匹配结果，不会把整个文件读入内存。
+ * <p>
+ * 记录格式 (v1)：version(byte) tradeId(long) timestamp(long) uuid(long,long) name(UTF) item(UTF)
+ * side(byte) amount(int) totalPrice(double) envIndex(double) balanceBefore(double) balanceAfter(double)
+ */
+public class AuditLogManager implements TradeJournal.Sink {
+
+    private static final byte RECORD_VERSION = 1;
+    private static final Pattern FILE_PATTERN = Pattern.compile("audit-(\\d{4}-\\d{2}-\\d{2})(?:\\.(\\d+))?\\.bin\\.gz");
+
+    private final KyochigoPlugin plugin;
+    private final File directory;
+    private final ZoneId zone = ZoneId.systemDefault();
+
+    // 以下字段仅由日志消费者线程写入 (currentFile 供查询线程判断文件是否正在写入)
+    private DataOutputStream out;
+    private volatile File currentFile;
+    private LocalDate currentDate;
+
+    public AuditLogManager(KyochigoPlugin plugin) {
+        this.plugin = plugin;
+        this.directory = new File(plugin.getDataFolder(), "audit");
+    }
+
+    // =========================================================================
+    // 写入 (成交日志消费者)
+    // =========================================================================
+
+    @Override
+    public @NotNull String name() { return "audit"; }
+
+    @Override
+    public boolean critical() { return true; }
+
+    @Override
+    public void onEvent(@NotNull TradeEvent event) throws IOException {
+        LocalDate date = LocalDate.ofInstant(Instant.ofEpochMilli(event.timestamp()), zone);
+        if (out == null || !date.equals(currentDate)) {
+            openFor(date);
+        }
+        try {
+            writeRecord(out, event);
+        } catch (IOException e) {
+            // 写入失败后流状态不可信：丢弃当前文件，重试时另起新文件
+            abandonCurrent();
+            throw e;
+        }
+    }
+
+    @Override
+    public void onBatchEnd() throws IOException {
+        if (out == null) return;
+        out.flush();
+        long limit = plugin.getConfiguration().getAuditRotateBytes();
+        if (limit > 0 && currentFile.length() >= limit) {
+            closeCurrent();
+        }
+    }
+
+    public void close() {
+        try {
+            closeCurrent();
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.WARNING, "关闭审计日志失败", e);
+        }
+    }
+
+    private void openFor(LocalDate date) throws IOException {
+        closeCurrent();
+        if (!directory.exists()) directory.mkdirs();
+
+        // 使用当天第一个未占用的序号 (上次运行的文件可能以截断的 gzip 成员结尾，不再续写)
+        int index = 0;
+        File file = fileFor(date, 0);
+        while (file.exists()) {
+            file = fileFor(date, ++index);
+        }
+
+        this.currentFile = file;
+        this.currentDate = date;
+        this.out = new DataOutputStream(new GZIPOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file)), 8192, true));
+    }
+
+    private void abandonCurrent() {
+        try {
+            closeCurrent();
+        } catch (IOException ignored) {
+            // 流已损坏，关闭失败无需处理
+        }
+        out = null;
+        currentFile = null;
+        currentDate = null;
+    }
+
+    private void closeCurrent() throws IOException {
+        if (out != null) {
+            out.close();
+            out = null;
+        }
+        currentFile = null;
+        currentDate = null;
+    }
+
+    private File fileFor(LocalDate date, int index) {
+        String name = "audit-" + date + (index > 0 ? "." + index : "") + ".bin.gz";
+        return new File(directory, name);
+    }
+
+    private static void writeRecord(DataOutputStream out, TradeEvent e) throws IOException {
+        out.writeByte(RECORD_VERSION);
+        out.writeLong(e.tradeId());
+        out.writeLong(e.timestamp());
+        out.writeLong(e.playerId().getMostSignificantBits());
+        out.writeLong(e.playerId().getLeastSignificantBits());
+        out.writeUTF(e.playerName());
+        out.writeUTF(e.itemKey());
+        out.writeByte(e.isBuy() ? 1 : 0);
+        out.writeInt(e.amount());
+        out.writeDouble(e.totalPrice());
+        out.writeDouble(e.envIndex());
+        out.writeDouble(e.balanceBefore());
+        out.writeDouble(e.balanceAfter());
+    }
+
+    private static TradeEvent readRecord(DataInputStream in) throws IOException {
+        byte version = in.readByte();
+        if (version != RECORD_VERSION) throw new IOException("未知的审计记录版本: " + version);
+        long tradeId = in.readLong();
+        long timestamp = in.readLong();
+        UUID playerId = new UUID(in.readLong(), in.readLong());
+        String playerName = in.readUTF();
+        String itemKey = in.readUTF();
+        boolean isBuy = in.readByte() == 1;
+        int amount = in.readInt();
+        double totalPrice = in.readDouble();
+        double envIndex = in.readDouble();
+        double balanceBefore = in.readDouble();
+        double balanceAfter = in.readDouble();
+        return new TradeEvent(tradeId, playerId, playerName, itemKey, amount, totalPrice, isBuy, envIndex,
+                balanceBefore, balanceAfter, timestamp);
+    }
+
+    // =========================================================================
+    // 查询 (流式过滤)
+    // =========================================================================
+
+    /**
+     * 查询条件 (null 表示不限)
+     *
+     * @param player 玩家名或 UUID
+     * @param item   物品 Key
+     * @param sinceMs 起始时间 (毫秒)
+     * @param limit  最多返回的条数 (取最近的记录)
+     */
+    public record Query(@Nullable String player, @Nullable String item, long sinceMs, int limit) {
+
+        Predicate<TradeEvent> toPredicate() {
+            return e -> e.timestamp() >= sinceMs
+                    && (player == null || e.playerName().equalsIgnoreCase(player) || e.playerId().toString().equalsIgnoreCase(player))
+                    && (item == null || e.itemKey().equalsIgnoreCase(item));
+        }
+    }
+
+    /**
+     * 按时间顺序扫描审计文件 (仅扫描日期不早于起始时间的文件)，返回最近 limit 条匹配记录
+     * 应在异步线程调用。
+     */
+    @NotNull
+    public List<TradeEvent> query(@NotNull Query query) {
+        Deque<TradeEvent> matches = new ArrayDeque<>(Math.max(1, query.limit()));
+        File[] files = directory.listFiles((dir, name) -> FILE_PATTERN.matcher(name).matches());
+        if (files == null || query.limit() <= 0) return List.of();
+
+        LocalDate sinceDate = LocalDate.ofInstant(Instant.ofEpochMilli(query.sinceMs()), zone);
+        Predicate<TradeEvent> predicate = query.toPredicate();
+
+        Arrays.stream(files)
+                .filter(f -> !fileDate(f).isBefore(sinceDate))
+                .sorted(Comparator.comparing(AuditLogManager::fileDate).thenComparingInt(AuditLogManager::fileIndex))
+                .forEach(file -> scan(file, predicate, matches, query.limit()));
+        return List.copyOf(matches);
+    }
+
+    private void scan(File file, Predicate<TradeEvent> predicate, Deque<TradeEvent> matches, int limit) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(new FileInputStream(file), 8192)))) {
+            in.mark(1);
+            while (in.read() != -1) {
+                in.reset();
+                TradeEvent event = readRecord(in);
+                in.mark(1);
+                if (!predicate.test(event)) continue;
+                if (matches.size() >= limit) matches.pollFirst();
+                matches.addLast(event);
+            }
+        } catch (EOFException | ZipException e) {
+            // 正在写入的文件末尾成员尚未结束属于正常情况；其他文件说明曾异常退出或已损坏
+            if (!file.equals(currentFile)) {
+                plugin.getLogger().warning("审计日志 " + file.getName() + " 末尾不完整 (可能是异常停服)，已读取到截断处: " + e.getMessage());
+            }
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.WARNING, "读取审计日志失败: " + file.getName(), e);
+        }
+    }
+
+    private static LocalDate fileDate(File file) {
+        Matcher m = FILE_PATTERN.matcher(file.getName());
+        return m.matches() ? LocalDate.parse(m.group(1)) : LocalDate.MIN;
+    }
+
+    private static int fileIndex(File file) {
+        Matcher m = FILE_PATTERN.matcher(file.getName());
+        return (m.matches() && m.group(2) != null) ? Integer.parseInt(m.group(2)) : 0;
+    }
+}
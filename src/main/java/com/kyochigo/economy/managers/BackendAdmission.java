@@ -0,0 +1,220 @@
+package com.kyochigo.economy.managers;
+
+import com.kyochigo.economy.KyochigoPlugin;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.net.http.HttpResponse;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 后端请求准入控制 (有界并发 + 优先级 + 背压)
+ * <p>
+ * 职责：
+ * 1. 限制同时在途的后端请求数，后端卡顿时不会无限堆积 sendAsync Future 及其捕获的回调与玩家引用。
+ * 2. 按优先级分配并发额度：提交类可用全部额度，报价类与刷新类只能使用其中一部分，为提交预留余量。
+ * 3. 额度不足时：提交类排队等待 (不丢弃)；报价类进入有界队列，队列满则丢弃；
+ *    刷新类不排队，与相同请求合并 (共享同一次 HTTP 调用)，无法合并则直接丢弃。
+ * 4. 记录各优先级的放行、排队、合并、丢弃次数与在途峰值，供状态指令展示。
+ * 5. 排队请求由单一放行循环逐个启动 (不随完成回调递归)；在途上限经热重载调高后立即放行至新上限。
+ */
+public class BackendAdmission {
+
+    /**
+     * 请求优先级 (share 为可使用的在途额度比例，queueCapacity 为额度不足时的排队上限)
+     */
+    public enum Priority {
+        // 正式提交、名录同步、批量出售：不可丢弃
+        COMMIT(1.0, Integer.MAX_VALUE),
+        // 预览报价：可短暂排队
+        QUOTE(0.75, 32),
+        // 行情刷新：可合并、可丢弃
+        REFRESH(0.5, 0);
+
+        final double share;
+        final int queueCapacity;
+
+        Priority(double share, int queueCapacity) {
+            this.share = share;
+            this.queueCapacity = queueCapacity;
+        }
+    }
+
+    public record Stats(int inFlight, int maxInFlight, int peakInFlight,
+                        long[] admitted, long[] queued, long[] merged, long[] dropped, int[] waiting) {}
+
+    private static final Priority[] PRIORITIES = Priority.values();
+
+    private final KyochigoPlugin plugin;
+
+    // 以下状态由 this 监视器保护
+    private int inFlight = 0;
+    private int peakInFlight = 0;
+    @SuppressWarnings("unchecked")
+    private final Deque<Ticket>[] queues = new Deque[PRIORITIES.length];
+    private final Map<String, CompletableFuture<HttpResponse<String>>> mergeable = new HashMap<>();
+    // 放行循环的待处理次数：非 0 表示已有线程在循环中，其他调用只登记、由该线程补跑
+    private final AtomicInteger drainRequests = new AtomicInteger();
+
+    private final LongAdder[] admitted = adders();
+    private final LongAdder[] queued = adders();
+    private final LongAdder[] merged = adders();
+    private final LongAdder[] dropped = adders();
+
+    /**
+     * 等待放行的请求
+     */
+    private record Ticket(Priority priority, Supplier<CompletableFuture<HttpResponse<String>>> call,
+                          CompletableFuture<HttpResponse<String>> result) {}
+
+    public BackendAdmission(KyochigoPlugin plugin) {
+        this.plugin = plugin;
+        for (int i = 0; i < queues.length; i++) queues[i] = new ArrayDeque<>();
+    }
+
+    /**
+     * 提交一次后端调用
+     * @param mergeKey 可合并请求的标识 (相同标识且尚未完成的请求共享结果)，为 null 表示不可合并
+     * @return 调用结果；被丢弃时以 RejectedExecutionException 异常完成
+     */
+    @NotNull
+    public CompletableFuture<HttpResponse<String>> submit(@NotNull Priority priority, @Nullable String mergeKey,
+                                                          @NotNull Supplier<CompletableFuture<HttpResponse<String>>> call) {
+        Ticket ticket = new Ticket(priority, call, new CompletableFuture<>());
+        int index = priority.ordinal();
+        boolean startNow;
+        synchronized (this) {
+            if (mergeKey != null) {
+                CompletableFuture<HttpResponse<String>> existing = mergeable.get(mergeKey);
+                if (existing != null) {
+                    merged[index].increment();
+                    return existing;
+                }
+            }
+
+            if (inFlight < limitFor(priority)) {
+                acquire(priority);
+                startNow = true;
+            } else if (queues[index].size() < priority.queueCapacity) {
+                queues[index].addLast(ticket);
+                queued[index].increment();
+                startNow = false;
+            } else {
+                dropped[index].increment();
+                return CompletableFuture.failedFuture(new RejectedExecutionException("后端繁忙，请求已被丢弃 (" + priority + ")"));
+            }
+
+            if (mergeKey != null) mergeable.put(mergeKey, ticket.result());
+        }
+
+        if (mergeKey != null) {
+            ticket.result().whenComplete((res, ex) -> {
+                synchronized (this) {
+                    mergeable.remove(mergeKey, ticket.result());
+                }
+            });
+        }
+        if (startNow) start(ticket);
+        return ticket.result();
+    }
+
+    /**
+     * 按当前额度放行排队中的请求，直到额度用尽或队列为空
+     * 请求完成时自动调用；在途上限变更 (热重载) 后也应调用一次，否则调高的额度要等下一次完成才开始使用。
+     */
+    public void drain() {
+        if (drainRequests.getAndIncrement() != 0) return;
+        int missed = 1;
+        do {
+            while (true) {
+                Ticket next;
+                synchronized (this) {
+                    next = pollNext();
+                    if (next == null) break;
+                    acquire(next.priority());
+                }
+                start(next);
+            }
+            missed = drainRequests.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    @NotNull
+    public synchronized Stats getStats() {
+        int[] waiting = new int[PRIORITIES.length];
+        for (int i = 0; i < waiting.length; i++) waiting[i] = queues[i].size();
+        return new Stats(inFlight, maxInFlight(), peakInFlight,
+                sums(admitted), sums(queued), sums(merged), sums(dropped), waiting);
+    }
+
+    // =========================================================================
+    // 内部调度
+    // =========================================================================
+
+    private void start(Ticket ticket) {
+        CompletableFuture<HttpResponse<String>> future;
+        try {
+            future = ticket.call().get();
+        } catch (Throwable t) {
+            future = CompletableFuture.failedFuture(t);
+        }
+        // 已完成的 Future 会在当前线程同步执行回调：drain 在嵌套调用时只登记，由外层循环继续放行，调用栈不随队列长度增长
+        future.whenComplete((res, ex) -> {
+            release();
+            if (ex != null) ticket.result().completeExceptionally(ex);
+            else ticket.result().complete(res);
+        });
+    }
+
+    /**
+     * 释放一个在途额度，并按优先级放行排队中的请求
+     */
+    private void release() {
+        synchronized (this) {
+            inFlight--;
+        }
+        drain();
+    }
+
+    private Ticket pollNext() {
+        for (Priority priority : PRIORITIES) {
+            Deque<Ticket> queue = queues[priority.ordinal()];
+            if (!queue.isEmpty() && inFlight < limitFor(priority)) return queue.pollFirst();
+        }
+        return null;
+    }
+
+    private void acquire(Priority priority) {
+        inFlight++;
+        peakInFlight = Math.max(peakInFlight, inFlight);
+        admitted[priority.ordinal()].increment();
+    }
+
+    private int limitFor(Priority priority) {
+        return Math.max(1, (int) (maxInFlight() * priority.share));
+    }
+
+    private int maxInFlight() {
+        return Math.max(1, plugin.getConfiguration().getBackendMaxInFlight());
+    }
+
+    private static LongAdder[] adders() {
+        LongAdder[] adders = new LongAdder[PRIORITIES.length];
+        for (int i = 0; i < adders.length; i++) adders[i] = new LongAdder();
+        return adders;
+    }
+
+    private static long[] sums(LongAdder[] adders) {
+        long[] sums = new long[adders.length];
+        for (int i = 0; i < adders.length; i++) sums[i] = adders[i].sum();
+        return sums;
+    }
+}
@@ -2,11 +2,11 @@ package com.kyochigo.economy.managers;
 
 import com.google.gson.Gson;
 import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.kyochigo.economy.KyochigoPlugin;
 import com.kyochigo.economy.TradeData;
 import com.kyochigo.economy.model.MarketItem;
-import org.bukkit.Bukkit;
 import org.bukkit.entity.Player;
 
 import java.io.BufferedReader;
@@ -18,7 +18,12 @@ import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
@@ -29,15 +34,25 @@ import java.util.function.Consumer;
  */
 public class BackendManager {
 
+    // 旧版后端逐条回退时单次最多并发的预览条数 (交易菜单最多 3 条)；超过时不回退，避免整版面板放大为 2N 次请求
+    private static final int MAX_FAN_OUT = 3;
+
     private final KyochigoPlugin plugin;
     private final Gson gson;
     private final HttpClient httpClient;
     private Process rustProcess;
     private final String binaryName;
+    private final QuoteCache quoteCache;
+    private final BackendAdmission admission;
+
+    // 后端是否支持 /api/calculate_bulk (null=尚未探测；旧版后端返回 404/405 后改为逐条并发预览)
+    private volatile Boolean bulkQuoteSupported = null;
 
     public BackendManager(KyochigoPlugin plugin, Gson gson) {
         this.plugin = plugin;
         this.gson = gson;
+        this.quoteCache = new QuoteCache(plugin);
+        this.admission = new BackendAdmission(plugin);
         
         // 动态识别系统环境
         boolean isWindows = System.getProperty("os.name").toLowerCase().contains("win");
@@ -56,9 +71,28 @@ public class BackendManager {
         startProcess();
     }
 
+    public QuoteCache getQuoteCache() {
+        return quoteCache;
+    }
+
+    public BackendAdmission getAdmission() {
+        return admission;
+    }
+
+    /**
+     * 将结果投递到主线程回调分发器 (受每 Tick 时间预算约束)
+     * 回调本身已在主线程执行，调用方无需再次 runTask。
+     */
     private <T> void syncCallback(Consumer<T> callback, T result) {
+        syncCallback(null, callback, result);
+    }
+
+    /**
+     * 与玩家绑定的回调：经分发器出队后在拥有该玩家的区域线程执行 (Paper 下即主线程)
+     */
+    private <T> void syncCallback(Player owner, Consumer<T> callback, T result) {
         if (plugin.isEnabled()) {
-            Bukkit.getScheduler().runTask(plugin, () -> callback.accept(result));
+            plugin.getMainThreadDispatcher().submit(owner, () -> callback.accept(result));
         }
     }
 
@@ -66,21 +100,54 @@ public class BackendManager {
     // 1. 市场同步接口
     // =========================================================================
     
-    public void syncMarketData(JsonArray items, Consumer<Boolean> callback) {
+    /**
+     * 推送名录同步包
+     * @param baseVersion 后端当前已确认的名录版本；为 null 时执行全量同步 (mode=full)
+     * @param version     本次推送完成后的目标名录版本
+     * @param items       新增或变更的物品 (全量模式下为完整名录)
+     * @param removed     已被移除的物品 Key (全量模式下为空)
+     * @param callback    同步结果 (accepted=后端已接收；ackVersion=后端确认的名录版本，旧版后端为 null)
+     */
+    public void syncMarketData(String baseVersion, String version, JsonArray items, JsonArray removed,
+                               Consumer<SyncResult> callback) {
         JsonObject requestBody = new JsonObject();
+        requestBody.addProperty("mode", baseVersion == null ? "full" : "delta");
+        if (baseVersion != null) requestBody.addProperty("baseVersion", baseVersion);
+        requestBody.addProperty("version", version);
         requestBody.add("items", items);
+        requestBody.add("removed", removed);
 
         String url = plugin.getConfiguration().getBackendUrl() + "/api/market/sync";
         
-        sendPostRequest(url, requestBody, res -> {
-            boolean success = res.statusCode() == 200;
-            syncCallback(callback, success);
+        sendPostRequest(url, requestBody, BackendAdmission.Priority.COMMIT, res -> {
+            if (res.statusCode() != 200) {
+                // 409 表示后端持有的名录版本与 baseVersion 不一致，由调用方回退为全量同步
+                plugin.getLogger().warning("❌ 市场同步被拒绝 (HTTP " + res.statusCode() + ")");
+                syncCallback(callback, new SyncResult(false, null));
+                return;
+            }
+            syncCallback(callback, new SyncResult(true, parseAckVersion(res.body())));
         }, err -> {
-            plugin.getLogger().warning("❌ 市场同步网络错误: " + err.getMessage());
-            syncCallback(callback, false);
+            if (!isShed(err)) plugin.getLogger().warning("❌ 市场同步网络错误: " + err.getMessage());
+            syncCallback(callback, new SyncResult(false, null));
         });
     }
 
+    /**
+     * 名录同步结果
+     */
+    public record SyncResult(boolean accepted, String ackVersion) {}
+
+    private String parseAckVersion(String body) {
+        try {
+            JsonObject json = gson.fromJson(body, JsonObject.class);
+            if (json != null && json.has("version")) return json.get("version").getAsString();
+        } catch (Exception ignored) {
+            // 旧版后端仅返回纯文本 OK，视为不支持版本确认
+        }
+        return null;
+    }
+
     // =========================================================================
     // 2. 单品交易请求 (核心计价)
     // =========================================================================
@@ -97,7 +164,55 @@ public class BackendManager {
         // [关键] 路由分流：根据操作类型选择后端接口
         String endpoint = type.equalsIgnoreCase("buy") ? "/calculate_buy" : "/calculate_sell";
         String url = plugin.getConfiguration().getBackendUrl() + endpoint;
+        JsonObject body = calculateBody(player, itemId, amount, basePrice, decayLambda, manualEnvIndex, isPreview);
 
+        // 正式提交优先于预览，后端拥塞时预览可被丢弃
+        BackendAdmission.Priority priority = isPreview ? BackendAdmission.Priority.QUOTE : BackendAdmission.Priority.COMMIT;
+        sendPostRequest(url, body, priority, res -> {
+            if (res.statusCode() == 200) {
+                syncCallback(player, callback, gson.fromJson(res.body(), JsonObject.class));
+            } else {
+                plugin.getLogger().severe("交易请求被拒绝 (HTTP " + res.statusCode() + "): " + res.body());
+                syncCallback(player, callback, null);
+            }
+        }, ex -> {
+            if (!isShed(ex)) plugin.getLogger().severe("交易请求通讯失败: " + ex.getMessage());
+            syncCallback(player, callback, null);
+        });
+    }
+
+    /**
+     * 单品预览报价 (优先读取报价缓存，未命中时请求后端并回填)
+     * 正式提交不得使用本方法，应直接调用 sendCalculateRequest(isPreview=false)。
+     * 回调在主线程执行，失败时回调 null。
+     */
+    public void requestPreviewQuote(Player player, MarketItem item, int amount, boolean isBuy, Consumer<Quote> callback) {
+        Quote cached = quoteCache.get(item.getConfigKey(), isBuy, amount);
+        if (cached != null) {
+            callback.accept(cached);
+            return;
+        }
+
+        // 全局后端保护：突发期间直接拒绝预览，不再排队进入后端
+        if (!plugin.getRateLimiter().tryAcquireBackend()) {
+            callback.accept(null);
+            return;
+        }
+
+        QuoteRequest request = new QuoteRequest(item, amount, isBuy);
+        long priceVersion = plugin.getMarketManager().getPriceVersion();
+        long envVersion = plugin.getMarketManager().getEnvVersion();
+        long stamp = quoteCache.stamp();
+        sendCalculateRequest(player, isBuy ? "buy" : "sell", item.getConfigKey(), amount,
+                item.getBasePrice(), item.getLambda(), null, true, response -> {
+                    Quote quote = parseQuote(request, response);
+                    if (quote != null) quoteCache.put(quote, priceVersion, envVersion, stamp);
+                    callback.accept(quote);
+                });
+    }
+
+    private JsonObject calculateBody(Player player, String itemId, double amount, double basePrice,
+                                     double decayLambda, Double manualEnvIndex, boolean isPreview) {
         JsonObject body = new JsonObject();
         body.addProperty("playerId", player.getUniqueId().toString());
         body.addProperty("playerName", player.getName());
@@ -111,24 +226,181 @@ public class BackendManager {
         if (manualEnvIndex != null) {
             body.addProperty("manualEnvIndex", manualEnvIndex);
         }
+        return body;
+    }
 
-        sendPostRequest(url, body, res -> {
-            if (res.statusCode() == 200) {
-                syncCallback(callback, gson.fromJson(res.body(), JsonObject.class));
-            } else {
-                plugin.getLogger().severe("交易请求被拒绝 (HTTP " + res.statusCode() + "): " + res.body());
-                syncCallback(callback, null);
+    // =========================================================================
+    // 3. 批量报价接口 (Bulk Quote，仅预览)
+    // =========================================================================
+
+    /**
+     * 单条报价请求 (物品 + 数量 + 方向)
+     */
+    public record QuoteRequest(MarketItem item, int amount, boolean isBuy) {}
+
+    /**
+     * 单条报价结果 (totalPrice 为该数量的成交总额，已计入环境指数)
+     */
+    public record Quote(QuoteRequest request, double totalPrice, double unitPriceAvg, double envIndex) {}
+
+    /**
+     * 批量预览报价：一次请求携带多组 (物品, 数量, 方向)，结果按请求顺序返回。
+     * 回调在主线程执行；列表与请求等长，单条失败的位置为 null，整体失败时回调 null。
+     * 后端不支持 /api/calculate_bulk 时，未命中不超过 MAX_FAN_OUT 条则回退为逐条并发预览，调用方只收到一次回调；
+     * 超过时不再请求后端，未命中的位置为 null (如分类面板的整组报价直接省略)。
+     * 已在报价缓存中的条目不再请求后端，新取得的报价回填缓存。
+     */
+    public void sendBulkQuoteRequest(Player player, List<QuoteRequest> requests, Consumer<List<Quote>> callback) {
+        Quote[] merged = new Quote[requests.size()];
+        List<QuoteRequest> misses = new ArrayList<>();
+        List<Integer> missIndexes = new ArrayList<>();
+        for (int i = 0; i < requests.size(); i++) {
+            QuoteRequest request = requests.get(i);
+            merged[i] = quoteCache.get(request.item().getConfigKey(), request.isBuy(), request.amount());
+            if (merged[i] == null) {
+                misses.add(request);
+                missIndexes.add(i);
+            }
+        }
+        if (misses.isEmpty()) {
+            callback.accept(List.of(merged));
+            return;
+        }
+        if (Boolean.FALSE.equals(bulkQuoteSupported) && misses.size() > MAX_FAN_OUT) {
+            callback.accept(Arrays.asList(merged));
+            return;
+        }
+        if (!plugin.getRateLimiter().tryAcquireBackend()) {
+            callback.accept(null);
+            return;
+        }
+
+        long priceVersion = plugin.getMarketManager().getPriceVersion();
+        long envVersion = plugin.getMarketManager().getEnvVersion();
+        long stamp = quoteCache.stamp();
+        requestBulkQuotes(player, misses, fetched -> {
+            if (fetched == null) {
+                callback.accept(null);
+                return;
+            }
+            for (int i = 0; i < fetched.size(); i++) {
+                Quote quote = fetched.get(i);
+                if (quote == null) continue;
+                merged[missIndexes.get(i)] = quote;
+                quoteCache.put(quote, priceVersion, envVersion, stamp);
+            }
+            callback.accept(Arrays.asList(merged));
+        });
+    }
+
+    private void requestBulkQuotes(Player player, List<QuoteRequest> requests, Consumer<List<Quote>> callback) {
+        if (Boolean.FALSE.equals(bulkQuoteSupported)) {
+            fallbackQuotes(player, requests, callback);
+            return;
+        }
+
+        String url = plugin.getConfiguration().getBackendUrl() + "/api/calculate_bulk";
+        JsonObject root = new JsonObject();
+        root.addProperty("playerId", player.getUniqueId().toString());
+        root.addProperty("playerName", player.getName());
+        JsonArray quotes = new JsonArray();
+        for (QuoteRequest request : requests) {
+            JsonObject quote = quoteBody(player, request);
+            quote.addProperty("side", request.isBuy() ? "buy" : "sell");
+            quotes.add(quote);
+        }
+        root.add("quotes", quotes);
+
+        sendPostRequest(url, root, BackendAdmission.Priority.QUOTE, res -> {
+            if (res.statusCode() == 404 || res.statusCode() == 405) {
+                bulkQuoteSupported = false;
+                plugin.getLogger().info("后端不支持批量报价接口，已回退为逐条并发预览。");
+                fallbackQuotes(player, requests, callback);
+                return;
             }
+            if (res.statusCode() != 200) {
+                plugin.getLogger().warning("批量报价被拒绝 (HTTP " + res.statusCode() + "): " + res.body());
+                syncCallback(player, callback, null);
+                return;
+            }
+            bulkQuoteSupported = true;
+            syncCallback(player, callback, parseBulkQuotes(requests, res.body()));
         }, ex -> {
-            plugin.getLogger().severe("交易请求通讯失败: " + ex.getMessage());
-            syncCallback(callback, null);
+            if (!isShed(ex)) plugin.getLogger().warning("批量报价通讯失败: " + ex.getMessage());
+            syncCallback(player, callback, null);
         });
     }
 
+    private List<Quote> parseBulkQuotes(List<QuoteRequest> requests, String body) {
+        try {
+            JsonObject json = gson.fromJson(body, JsonObject.class);
+            JsonArray array = (json != null && json.has("quotes")) ? json.getAsJsonArray("quotes") : new JsonArray();
+            List<Quote> result = new ArrayList<>(requests.size());
+            for (int i = 0; i < requests.size(); i++) {
+                JsonElement element = i < array.size() ? array.get(i) : null;
+                result.add(element != null && element.isJsonObject() ? parseQuote(requests.get(i), element.getAsJsonObject()) : null);
+            }
+            return result;
+        } catch (Exception e) {
+            plugin.getLogger().warning("批量报价响应解析失败: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 旧版后端的回退入口：条数超过 MAX_FAN_OUT 时放弃本次预览 (回调 null)，否则逐条并发
+     */
+    private void fallbackQuotes(Player player, List<QuoteRequest> requests, Consumer<List<Quote>> callback) {
+        if (requests.size() > MAX_FAN_OUT) {
+            syncCallback(player, callback, null);
+            return;
+        }
+        fanOutQuotes(player, requests, callback);
+    }
+
+    /**
+     * 回退路径：对每条请求并发调用单品预览接口，全部完成后合并为一次回调
+     */
+    private void fanOutQuotes(Player player, List<QuoteRequest> requests, Consumer<List<Quote>> callback) {
+        String baseUrl = plugin.getConfiguration().getBackendUrl();
+        List<CompletableFuture<Quote>> futures = new ArrayList<>(requests.size());
+        for (QuoteRequest request : requests) {
+            String url = baseUrl + (request.isBuy() ? "/calculate_buy" : "/calculate_sell");
+            futures.add(postAsync(url, quoteBody(player, request), BackendAdmission.Priority.QUOTE)
+                    .thenApply(res -> res.statusCode() == 200
+                            ? parseQuote(request, gson.fromJson(res.body(), JsonObject.class)) : null)
+                    .exceptionally(ex -> null));
+        }
+
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).whenComplete((ignored, ex) -> {
+            List<Quote> result = new ArrayList<>(futures.size());
+            futures.forEach(f -> result.add(f.getNow(null)));
+            boolean anySuccess = result.stream().anyMatch(q -> q != null);
+            syncCallback(player, callback, anySuccess ? result : null);
+        });
+    }
+
+    private JsonObject quoteBody(Player player, QuoteRequest request) {
+        MarketItem item = request.item();
+        return calculateBody(player, item.getConfigKey(), request.amount(), item.getBasePrice(), item.getLambda(), null, true);
+    }
+
+    private Quote parseQuote(QuoteRequest request, JsonObject json) {
+        if (json == null || !json.has("totalPrice")) return null;
+        double total = json.get("totalPrice").getAsDouble();
+        double unit = json.has("unitPriceAvg") ? json.get("unitPriceAvg").getAsDouble() : total / Math.max(1, request.amount());
+        double env = json.has("envIndex") ? json.get("envIndex").getAsDouble() : plugin.getMarketManager().getLastEnvIndex();
+        return new Quote(request, total, unit, env);
+    }
+
     // =========================================================================
-    // 3. 批量交易接口 (Batch Sell)
+    // 4. 批量交易接口 (Batch Sell)
     // =========================================================================
 
+    /**
+     * 批量正式出售 (调用方负责限流与资产预留)
+     * 响应 results 数组与 trades 顺序一致，每条含 totalPrice，失败条目 success=false。
+     */
     public void sendBatchSellRequest(Player player, List<TradeData> trades, Consumer<JsonObject> callback) {
         String url = plugin.getConfiguration().getBackendUrl() + "/batch_sell";
 
@@ -148,59 +420,78 @@ public class BackendManager {
         root.addProperty("playerId", player.getUniqueId().toString());
         root.addProperty("playerName", player.getName());
 
-        sendPostRequest(url, root, res -> {
+        sendPostRequest(url, root, BackendAdmission.Priority.COMMIT, res -> {
             if (res.statusCode() == 200) {
-                syncCallback(callback, gson.fromJson(res.body(), JsonObject.class));
+                syncCallback(player, callback, gson.fromJson(res.body(), JsonObject.class));
             } else {
                 plugin.getLogger().severe("批量交易失败 (HTTP " + res.statusCode() + "): " + res.body());
-                syncCallback(callback, null);
+                syncCallback(player, callback, null);
             }
         }, ex -> {
-            plugin.getLogger().severe("批量交易通讯异常: " + ex.getMessage());
-            syncCallback(callback, null);
+            if (!isShed(ex)) plugin.getLogger().severe("批量交易通讯异常: " + ex.getMessage());
+            syncCallback(player, callback, null);
         });
     }
 
     // =========================================================================
-    // 4. 行情获取接口
+    // 5. 行情获取接口
     // =========================================================================
 
     public void fetchBulkPrices(List<String> itemIds, Consumer<JsonObject> callback) {
+        fetchBulkPrices(null, itemIds, callback);
+    }
+
+    /**
+     * 拉取行情，回调在拥有 owner 的区域线程执行 (owner 为 null 时在全局线程执行)
+     */
+    public void fetchBulkPrices(Player owner, List<String> itemIds, Consumer<JsonObject> callback) {
         String url = plugin.getConfiguration().getBackendUrl() + "/api/market/prices";
         JsonObject body = new JsonObject();
         JsonArray idsArray = new JsonArray();
         for (String id : itemIds) idsArray.add(id);
         body.add("itemIds", idsArray);
 
-        sendPostRequest(url, body, res -> {
+        // 行情刷新为最低优先级：相同请求在途时直接共享结果，拥塞时丢弃
+        sendPostRequest(url, body, BackendAdmission.Priority.REFRESH, res -> {
             if (res.statusCode() == 200) {
-                syncCallback(callback, gson.fromJson(res.body(), JsonObject.class));
+                syncCallback(owner, callback, gson.fromJson(res.body(), JsonObject.class));
             } else {
                 // 静默失败，通常是因为后端还没准备好
-                syncCallback(callback, null);
+                syncCallback(owner, callback, null);
             }
-        }, ex -> syncCallback(callback, null));
+        }, ex -> syncCallback(owner, callback, null));
     }
 
     // =========================================================================
-    // 5. 底层网络与进程管理
+    // 6. 底层网络与进程管理
     // =========================================================================
 
-    private void sendPostRequest(String url, JsonObject jsonBody, 
-                                 Consumer<HttpResponse<String>> onSuccess, 
-                                 Consumer<Throwable> onError) {
-        try {
+    /**
+     * 经准入控制发送 POST 请求 (刷新类请求以 URL + 请求体作为合并标识)
+     */
+    private CompletableFuture<HttpResponse<String>> postAsync(String url, JsonObject jsonBody,
+                                                              BackendAdmission.Priority priority) {
+        String payload = gson.toJson(jsonBody);
+        String mergeKey = priority == BackendAdmission.Priority.REFRESH ? url + "#" + payload : null;
+        return admission.submit(priority, mergeKey, () -> {
             HttpRequest request = HttpRequest.newBuilder()
                     .uri(URI.create(url))
                     .header("Content-Type", "application/json")
-                    .POST(HttpRequest.BodyPublishers.ofString(gson.toJson(jsonBody)))
+                    .POST(HttpRequest.BodyPublishers.ofString(payload))
                     .timeout(Duration.ofSeconds(10)) 
                     .build();
+            return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString());
+        });
+    }
 
-            httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+    private void sendPostRequest(String url, JsonObject jsonBody, BackendAdmission.Priority priority,
+                                 Consumer<HttpResponse<String>> onSuccess, 
+                                 Consumer<Throwable> onError) {
+        try {
+            postAsync(url, jsonBody, priority)
                     .thenAccept(onSuccess)
                     .exceptionally(ex -> {
-                        onError.accept(ex);
+                        onError.accept(ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex);
                         return null;
                     });
         } catch (Exception e) {
@@ -208,6 +499,13 @@ public class BackendManager {
         }
     }
 
+    /**
+     * 是否为准入控制主动丢弃的请求 (已计入指标，不再逐条打印日志)
+     */
+    private static boolean isShed(Throwable ex) {
+        return ex instanceof RejectedExecutionException;
+    }
+
     private void extractResources() {
         try {
             File backendDir = new File(plugin.getDataFolder(), "backend/static");
@@ -1,92 +1,191 @@
 package com.kyochigo.economy.managers;
 
 import com.kyochigo.economy.KyochigoPlugin;
-import org.bukkit.Location;
+import com.kyochigo.economy.model.Category;
+import com.kyochigo.economy.utils.RateLimiter;
 import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.InvalidConfigurationException;
 import org.bukkit.configuration.file.FileConfiguration;
-import org.bukkit.entity.Player;
+import org.bukkit.configuration.file.YamlConfiguration;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.logging.Level;
 
 /**
  * 核心配置管理器 (v3.0 模块化版)
  * 职责：封装 config.yml 读写逻辑，采用配置对象模式提高类型安全性。
+ * 重载分为 load (任意线程读取并编译新快照) -> validate -> apply (单次引用替换) 三步，
+ * 读取方始终看到完整的旧快照或完整的新快照。
  */
 public class ConfigManager {
 
     private final KyochigoPlugin plugin;
-    private FileConfiguration config;
-    private ConfigData configData;
+    private final File file;
+    private volatile ConfigData configData;
 
     public ConfigManager(KyochigoPlugin plugin) {
         this.plugin = plugin;
+        this.file = new File(plugin.getDataFolder(), "config.yml");
         this.reload();
     }
 
+    /**
+     * 同步重载 (仅用于启动)：读取失败时沿用默认配置
+     */
     public void reload() {
-        plugin.saveDefaultConfig();
-        plugin.reloadConfig();
-        this.config = plugin.getConfig();
-        
-        // 核心优化：一次性将配置映射到不可变对象
-        this.configData = new ConfigData(config);
-
-        if (configData.debug) {
-            plugin.getLogger().info("ConfigManager: 配置已重载，当前后端地址: " + configData.backendUrl);
+        ConfigData next;
+        try {
+            next = load();
+        } catch (InvalidConfigurationException | IOException e) {
+            plugin.getLogger().severe("config.yml 解析失败，使用默认配置: " + e.getMessage());
+            next = new ConfigData(defaults());
         }
+        apply(next);
     }
 
     /**
-     * 判断玩家是否处于交易所区域
+     * 读取 config.yml 并编译为新的配置快照 (不修改当前生效配置，可在异步线程调用)
+     * @throws InvalidConfigurationException YAML 语法错误
      */
-    public boolean isAtExchange(Player player) {
-        return configData.exchange.isAtExchange(player);
+    public ConfigData load() throws IOException, InvalidConfigurationException {
+        if (!file.exists()) plugin.saveDefaultConfig();
+        YamlConfiguration yaml = new YamlConfiguration();
+        yaml.load(file);
+        yaml.setDefaults(defaults());
+        return new ConfigData(yaml);
+    }
+
+    /**
+     * 校验配置快照
+     * @return 问题列表，为空表示可以生效
+     */
+    public List<String> validate(ConfigData data) {
+        List<String> problems = new ArrayList<>();
+        try {
+            String scheme = URI.create(data.backendUrl).getScheme();
+            if (!"http".equalsIgnoreCase(scheme) && !"https".equalsIgnoreCase(scheme)) {
+                problems.add("backend.url 必须为 http(s) 地址: " + data.backendUrl);
+            }
+        } catch (IllegalArgumentException e) {
+            problems.add("backend.url 格式错误: " + data.backendUrl);
+        }
+        if (data.connectTimeout <= 0 || data.requestTimeout <= 0) problems.add("backend 超时必须大于 0");
+        if (data.backendMaxInFlight < 1) problems.add("backend.max-in-flight 必须至少为 1");
+        if (data.callbackBudgetMicros <= 0) problems.add("backend.callback-budget-ms 必须大于 0");
+        data.rateLimits.forEach((action, limit) -> {
+            if (limit.burst() < 1 || limit.perSecond() < 0) {
+                problems.add("rate-limit." + action.getConfigKey() + " 需满足 burst >= 1 且 per-second >= 0");
+            }
+        });
+        for (ExchangeZoneIndex.Zone zone : data.exchanges) {
+            if (zone.radius() <= 0) problems.add("交易所 " + zone.id() + " 的 radius 必须大于 0");
+        }
+        if (data.categories.isEmpty()) problems.add("categories 未定义任何分类");
+        if (data.source.getConfigurationSection("items") == null) problems.add("缺少 items 节点");
+        return problems;
     }
 
-    // --- [ 动态物品参数查询 ] ---
+    /**
+     * 使配置快照生效 (单次引用替换)
+     */
+    public void apply(ConfigData next) {
+        this.configData = next;
+        if (next.debug) {
+            plugin.getLogger().info("ConfigManager: 配置已重载，当前后端地址: " + next.backendUrl);
+        }
+    }
 
-    public int getItemDailyLimit(String itemKey) {
-        return config.getInt("items." + itemKey + ".daily_limit", 0);
+    public ConfigData getData() {
+        return configData;
     }
 
-    public double getItemDouble(String itemKey, String path, double defaultValue) {
-        return config.getDouble("items." + itemKey + "." + path, defaultValue);
+    private YamlConfiguration defaults() {
+        InputStream resource = plugin.getResource("config.yml");
+        if (resource == null) return new YamlConfiguration();
+        return YamlConfiguration.loadConfiguration(new InputStreamReader(resource, StandardCharsets.UTF_8));
     }
 
+    // --- [ 物品与分类 ] ---
+    // 物品参数 (限额等) 在名录加载时编译进 MarketItem，运行期直接读取字段
+
     public ConfigurationSection getItemsSection() {
-        return config.getConfigurationSection("items");
+        return configData.getItemsSection();
     }
 
-    public void save() { plugin.saveConfig(); }
+    public void save() {
+        try {
+            configData.source.save(file);
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.SEVERE, "无法保存 config.yml", e);
+        }
+    }
 
     // --- [ 委托给内部配置对象 ] ---
 
-    public long getCooldownMs() { return configData.cooldownMs; }
     public boolean isDebug() { return configData.debug; }
     public List<String> getEnabledWorlds() { return configData.enabledWorlds; }
     public String getBackendUrl() { return configData.backendUrl; }
     public int getConnectTimeout() { return configData.connectTimeout; }
     public int getRequestTimeout() { return configData.requestTimeout; }
     public String getCurrencySymbol() { return configData.currencySymbol; }
-    public FileConfiguration getRaw() { return config; }
+    public long getStatisticsIntervalTicks() { return configData.statisticsIntervalTicks; }
+    public int getStatisticsTopSize() { return configData.statisticsTopSize; }
+    public long getAuditRotateBytes() { return configData.auditRotateBytes; }
+    public long getQuoteCacheTtlMs() { return configData.quoteCacheTtlMs; }
+    public int getBackendMaxInFlight() { return configData.backendMaxInFlight; }
+    public long getCallbackBudgetMicros() { return configData.callbackBudgetMicros; }
+    public RateLimiter.Limit getRateLimit(RateLimiter.Action action) { return configData.rateLimits.get(action); }
+    public List<ExchangeZoneIndex.Zone> getExchangeZones() { return configData.exchanges; }
+    public Collection<Category> getCategories() { return configData.categories.values(); }
+
+    /**
+     * 按 ID 查询分类 (未声明的分类以 ID 作为名称)
+     */
+    public Category getCategory(String id) {
+        Category category = configData.categories.get(id);
+        return category != null ? category : Category.fallback(id);
+    }
+
+    public FileConfiguration getRaw() { return configData.source; }
 
     /**
      * 配置数据容器 (Immutable-like Data Object)
+     * 持有其来源 YAML，同一快照内的设置、分类与物品节点始终一致。
      */
-    private static class ConfigData {
-        final long cooldownMs;
+    public static final class ConfigData {
+        final FileConfiguration source;
+        final Map<RateLimiter.Action, RateLimiter.Limit> rateLimits = new EnumMap<>(RateLimiter.Action.class);
         final boolean debug;
         final List<String> enabledWorlds;
         final String backendUrl;
         final int connectTimeout;
         final int requestTimeout;
+        final long quoteCacheTtlMs;
+        final int backendMaxInFlight;
+        final long callbackBudgetMicros;
         final String currencySymbol;
-        final ExchangeLocation exchange;
+        final long statisticsIntervalTicks;
+        final int statisticsTopSize;
+        final long auditRotateBytes;
+        final List<ExchangeZoneIndex.Zone> exchanges;
+        // 保持配置中的声明顺序 (行情总览按此顺序排列分类按钮)
+        final Map<String, Category> categories = new LinkedHashMap<>();
 
-        ConfigData(FileConfiguration config) {
+        private ConfigData(FileConfiguration config) {
+            this.source = config;
             // 系统设置
-            this.cooldownMs = config.getLong("settings.rate-limit-ms", 500L);
             this.debug = config.getBoolean("settings.debug", false);
             this.enabledWorlds = Objects.requireNonNullElse(
                     config.getStringList("settings.enabled-worlds"), List.of());
@@ -96,40 +195,73 @@ public class ConfigManager {
             this.backendUrl = rawUrl.endsWith("/") ? rawUrl.substring(0, rawUrl.length() - 1) : rawUrl;
             this.connectTimeout = config.getInt("backend.connect-timeout", 3);
             this.requestTimeout = config.getInt("backend.request-timeout", 10);
+            this.quoteCacheTtlMs = config.getLong("backend.quote-cache-ttl-ms", 3000L);
+            this.backendMaxInFlight = config.getInt("backend.max-in-flight", 64);
+            this.callbackBudgetMicros = (long) (config.getDouble("backend.callback-budget-ms", 2.0) * 1000);
+
+            // 限流设置 (令牌桶：burst=突发容量，per-second=每秒补充令牌数)
+            for (RateLimiter.Action action : RateLimiter.Action.values()) {
+                RateLimiter.Limit def = action.getDefaultLimit();
+                String path = "rate-limit." + action.getConfigKey();
+                rateLimits.put(action, new RateLimiter.Limit(
+                        config.getInt(path + ".burst", def.burst()),
+                        config.getDouble(path + ".per-second", def.perSecond())));
+            }
 
             // 显示设置
             this.currencySymbol = config.getString("display.currency-symbol", "⛁");
 
-            // 模块化子配置：交易所
-            this.exchange = new ExchangeLocation(config.getConfigurationSection("exchange"));
+            // 统计设置
+            this.statisticsIntervalTicks = config.getLong("statistics.publish-interval-ticks", 100L);
+            this.statisticsTopSize = config.getInt("statistics.top-size", 10);
+
+            // 审计日志设置
+            this.auditRotateBytes = config.getLong("audit.rotate-size-mb", 16L) * 1024L * 1024L;
+
+            // 模块化子配置：交易所 (exchanges 下可定义多个区域；未定义时沿用旧版单点 exchange 节点)
+            this.exchanges = parseExchanges(config);
+
+            // 分类：一次性编译名称组件
+            ConfigurationSection categorySection = config.getConfigurationSection("categories");
+            if (categorySection != null) {
+                for (String id : categorySection.getKeys(false)) {
+                    categories.put(id, Category.compile(id, categorySection.getString(id + ".name")));
+                }
+            }
         }
-    }
 
-    /**
-     * 交易所坐标逻辑封装
-     */
-    private static class ExchangeLocation {
-        private final String world;
-        private final double x, y, z, radius;
-
-        ExchangeLocation(ConfigurationSection section) {
-            if (section != null) {
-                this.world = section.getString("world", "world");
-                this.x = section.getDouble("x", 0.0);
-                this.y = section.getDouble("y", 64.0);
-                this.z = section.getDouble("z", 0.0);
-                this.radius = section.getDouble("radius", 8.0);
-            } else {
-                // 默认降级方案
-                this.world = "world"; this.x = 0; this.y = 64; this.z = 0; this.radius = 8.0;
+        public ConfigurationSection getItemsSection() {
+            return source.getConfigurationSection("items");
+        }
+
+        private static List<ExchangeZoneIndex.Zone> parseExchanges(FileConfiguration config) {
+            // 只看用户文件本身：jar 默认值带有 exchanges.spawn，若按默认值判断，旧版 exchange 节点永远不会生效，
+            // 且 getConfigurationSection 会在用户配置中创建空节点，停服保存时写回 exchanges: {}
+            // 已被写回的空 exchanges 节点同样视为未定义
+            ConfigurationSection zones = config.contains("exchanges", true) && config.isConfigurationSection("exchanges")
+                    ? config.getConfigurationSection("exchanges") : null;
+            if (zones == null || zones.getKeys(false).isEmpty()) {
+                ConfigurationSection legacy = config.contains("exchange", true) ? config.getConfigurationSection("exchange") : null;
+                return List.of(parseZone("exchange", legacy));
+            }
+
+            List<ExchangeZoneIndex.Zone> result = new ArrayList<>();
+            for (String id : zones.getKeys(false)) {
+                ConfigurationSection section = zones.getConfigurationSection(id);
+                if (section != null) result.add(parseZone(id, section));
             }
+            return List.copyOf(result);
         }
 
-        boolean isAtExchange(Player player) {
-            if (!player.getWorld().getName().equalsIgnoreCase(world)) return false;
-            Location exLoc = new Location(player.getWorld(), x, y, z);
-            // distanceSquared 比 distance 性能更高，但在 radius 较小时可忽略
-            return player.getLocation().distance(exLoc) <= radius;
+        private static ExchangeZoneIndex.Zone parseZone(String id, ConfigurationSection section) {
+            // 默认降级方案
+            if (section == null) return new ExchangeZoneIndex.Zone(id, "world", 0.0, 64.0, 0.0, 8.0);
+            return new ExchangeZoneIndex.Zone(id,
+                    section.getString("world", "world"),
+                    section.getDouble("x", 0.0),
+                    section.getDouble("y", 64.0),
+                    section.getDouble("z", 0.0),
+                    Math.max(0.0, section.getDouble("radius", 8.0)));
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,166 @@
+package com.kyochigo.economy.managers;
+
+import com.kyochigo.economy.KyochigoPlugin;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 交易所区域空间索引 (按区块网格划分 + 玩家候选区域缓存)
+ * <p>
+ * 职责：
+ * 1. 支持任意数量的交易所区域 (同一世界可有多处)，每个区域登记到其外接正方形覆盖的所有区块。
+ * 2. 仅在查询时判定 (不监听移动事件)：玩家所在区块未变时沿用缓存的候选区域，只对少量候选做平方距离判断，无 sqrt。
+ * 3. 候选区域为空的区块 (绝大多数位置) 查询即返回，isAtExchange 与 getZone 均为近似 O(1)。
+ * 4. 世界按名称匹配，首次出现时解析为 UID 并缓存；配置重载后重建索引并清空玩家缓存。
+ */
+public class ExchangeZoneIndex implements Listener {
+
+    /**
+     * 交易所区域定义 (球形范围)
+     */
+    public record Zone(String id, String world, double x, double y, double z, double radius) {
+        double radiusSquared() { return radius * radius; }
+
+        boolean contains(double px, double py, double pz) {
+            double dx = px - x, dy = py - y, dz = pz - z;
+            return dx * dx + dy * dy + dz * dz <= radiusSquared();
+        }
+    }
+
+    private static final Zone[] NONE = new Zone[0];
+
+    /**
+     * 玩家最近一次查询时所在区块的候选区域
+     */
+    private record PlayerState(UUID worldId, long chunkKey, Zone[] candidates) {}
+
+    private final KyochigoPlugin plugin;
+    // 世界名 (小写) -> 区块键 -> 覆盖该区块的区域
+    private volatile Map<String, Map<Long, Zone[]>> grid = Map.of();
+    // 世界 UID -> 网格 (按需解析后缓存)
+    private final Map<UUID, Map<Long, Zone[]>> worldCache = new ConcurrentHashMap<>();
+    private final Map<UUID, PlayerState> states = new ConcurrentHashMap<>();
+    private volatile List<Zone> zones = List.of();
+
+    public ExchangeZoneIndex(KyochigoPlugin plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * 以新的区域定义重建索引 (玩家候选缓存随之清空，下次查询时重新解析)
+     */
+    public void rebuild(@NotNull List<Zone> definitions) {
+        Map<String, Map<Long, List<Zone>>> building = new HashMap<>();
+        for (Zone zone : definitions) {
+            Map<Long, List<Zone>> chunks = building.computeIfAbsent(zone.world().toLowerCase(Locale.ROOT), k -> new HashMap<>());
+            int minX = floorChunk(zone.x() - zone.radius()), maxX = floorChunk(zone.x() + zone.radius());
+            int minZ = floorChunk(zone.z() - zone.radius()), maxZ = floorChunk(zone.z() + zone.radius());
+            for (int cx = minX; cx <= maxX; cx++) {
+                for (int cz = minZ; cz <= maxZ; cz++) {
+                    chunks.computeIfAbsent(chunkKey(cx, cz), k -> new ArrayList<>()).add(zone);
+                }
+            }
+        }
+
+        Map<String, Map<Long, Zone[]>> next = new HashMap<>();
+        building.forEach((world, chunks) -> {
+            Map<Long, Zone[]> frozen = new HashMap<>();
+            chunks.forEach((key, list) -> frozen.put(key, list.toArray(NONE)));
+            next.put(world, Map.copyOf(frozen));
+        });
+
+        this.zones = List.copyOf(definitions);
+        this.grid = Map.copyOf(next);
+        worldCache.clear();
+        states.clear();
+        if (plugin.getConfiguration().isDebug()) {
+            plugin.getLogger().info("[DEBUG] 交易所索引已重建: " + definitions.size() + " 个区域, " + next.size() + " 个世界");
+        }
+    }
+
+    // =========================================================================
+    // 查询
+    // =========================================================================
+
+    /**
+     * 判断玩家是否处于任一交易所区域
+     */
+    public boolean isAtExchange(@NotNull Player player) {
+        return getZone(player) != null;
+    }
+
+    /**
+     * 玩家当前所在的交易所 (不在任何区域时为 null；需在拥有该玩家的区域线程调用)
+     */
+    @Nullable
+    public Zone getZone(@NotNull Player player) {
+        return locate(player, player.getLocation());
+    }
+
+    @NotNull
+    public List<Zone> getZones() {
+        return zones;
+    }
+
+    // =========================================================================
+    // 状态维护
+    // =========================================================================
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onQuit(PlayerQuitEvent e) {
+        states.remove(e.getPlayer().getUniqueId());
+    }
+
+    /**
+     * 判定玩家所在区域：区块未变时沿用缓存的候选区域，换区块 / 换世界时重新查网格
+     */
+    private Zone locate(Player player, Location location) {
+        World world = location.getWorld();
+        if (world == null) return null;
+        UUID uuid = player.getUniqueId();
+        long key = chunkKey(location.getBlockX() >> 4, location.getBlockZ() >> 4);
+
+        PlayerState previous = states.get(uuid);
+        Zone[] candidates;
+        if (previous != null && previous.worldId().equals(world.getUID()) && previous.chunkKey() == key) {
+            candidates = previous.candidates();
+        } else {
+            candidates = gridFor(world).getOrDefault(key, NONE);
+            states.put(uuid, new PlayerState(world.getUID(), key, candidates));
+        }
+
+        double px = location.getX(), py = location.getY(), pz = location.getZ();
+        for (Zone zone : candidates) {
+            if (zone.contains(px, py, pz)) return zone;
+        }
+        return null;
+    }
+
+    private Map<Long, Zone[]> gridFor(World world) {
+        return worldCache.computeIfAbsent(world.getUID(),
+                id -> grid.getOrDefault(world.getName().toLowerCase(Locale.ROOT), Map.of()));
+    }
+
+    private static int floorChunk(double coordinate) {
+        return ((int) Math.floor(coordinate)) >> 4;
+    }
+
+    private static long chunkKey(int chunkX, int chunkZ) {
+        return ((long) chunkX << 32) | (chunkZ & 0xFFFFFFFFL);
+    }
+}
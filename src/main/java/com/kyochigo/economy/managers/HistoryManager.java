@@ -1,13 +1,16 @@
 package com.kyochigo.economy.managers;
 
 import com.kyochigo.economy.KyochigoPlugin;
-import org.bukkit.Bukkit;
+import com.kyochigo.economy.model.TradeEvent;
 import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.configuration.file.YamlConfiguration;
+import org.jetbrains.annotations.NotNull;
 
 import java.io.File;
 import java.io.IOException;
 import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.logging.Level;
@@ -15,8 +18,10 @@ import java.util.logging.Level;
 /**
  * 玩家交易历史/计数管理器 (v3.0 高并发读写分离版)
  * 职责：负责 player_counter.yml 的高性能读写，支持多线程并发查询。
+ * 每日限额在预留资产前即占用额度 (在途预留)，成交时在同一把写锁内转为正式计数、撤销时归还，
+ * 并行的多笔交易不会读到同一份旧计数。计数在提交路径同步累加；作为成交日志的关键消费者只负责批次落盘。
  */
-public class HistoryManager {
+public class HistoryManager implements TradeJournal.Sink {
 
     private final KyochigoPlugin plugin;
     private final File dataFile;
@@ -28,6 +33,9 @@ public class HistoryManager {
     // 日期键缓存，减少 LocalDate.now() 的开销
     private volatile String currentDateKey;
 
+    // 在途额度预留：玩家 + 物品 -> 已占用但尚未成交的数量 (写锁保护)
+    private final Map<String, Integer> pendingDaily = new HashMap<>();
+
     public HistoryManager(KyochigoPlugin plugin) {
         this.plugin = plugin;
         this.dataFile = new File(plugin.getDataFolder(), "player_counter.yml");
@@ -76,7 +84,7 @@ public class HistoryManager {
     }
 
     public void saveAsync() {
-        Bukkit.getScheduler().runTaskAsynchronously(plugin, this::save);
+        plugin.getTaskScheduler().runAsync(this::save);
     }
 
     // --- 内部逻辑辅助 ---
@@ -134,27 +142,98 @@ public class HistoryManager {
      */
     public void incrementTradeCount(String uuid, String itemKey, int amount) {
         String dateKey = getDateKey();
-        String basePath = getHistoryPath(uuid, itemKey);
-        int absAmount = Math.abs(amount);
+        lock.writeLock().lock();
+        try {
+            applyIncrement(uuid, itemKey, dateKey, Math.abs(amount));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // --- 每日限额预留 ---
 
+    /**
+     * 按剩余额度占用今日限额 (已成交 + 在途预留均计入已用量)
+     * @return 实际占用的数量，0 表示额度已用尽
+     */
+    public int reserveDaily(String uuid, String itemKey, int amount, int limit) {
+        String dateKey = getDateKey();
+        String pendingKey = uuid + ":" + itemKey;
         lock.writeLock().lock();
         try {
-            // 1. 更新总数 (直接从 config 读取，避免重入锁开销)
-            int currentTotal = dataConfig.getInt(basePath + ".total", 0);
-            dataConfig.set(basePath + ".total", currentTotal + absAmount);
-
-            // 2. 更新每日计数
-            String dailyPath = basePath + ".daily." + dateKey;
-            int currentDaily = dataConfig.getInt(dailyPath, 0);
-            dataConfig.set(dailyPath, currentDaily + absAmount);
-            
-            // 3. 记录时间戳
-            dataConfig.set("players." + uuid + ".last_update", System.currentTimeMillis());
+            int used = dataConfig.getInt(getHistoryPath(uuid, itemKey) + ".daily." + dateKey, 0)
+                    + pendingDaily.getOrDefault(pendingKey, 0);
+            int granted = Math.max(0, Math.min(amount, limit - used));
+            if (granted > 0) pendingDaily.merge(pendingKey, granted, Integer::sum);
+            return granted;
         } finally {
             lock.writeLock().unlock();
         }
     }
 
+    /**
+     * 归还未成交的额度预留 (交易被拒绝或已补偿)
+     */
+    public void releaseDaily(String uuid, String itemKey, int amount) {
+        lock.writeLock().lock();
+        try {
+            releasePending(uuid + ":" + itemKey, amount);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 成交：将额度预留转为正式计数 (同一把写锁内完成，期间不存在两头都不计的窗口)
+     */
+    public void commitDaily(String uuid, String itemKey, int amount) {
+        String dateKey = getDateKey();
+        lock.writeLock().lock();
+        try {
+            releasePending(uuid + ":" + itemKey, amount);
+            applyIncrement(uuid, itemKey, dateKey, amount);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void releasePending(String pendingKey, int amount) {
+        pendingDaily.computeIfPresent(pendingKey, (k, v) -> v > amount ? v - amount : null);
+    }
+
+    private void applyIncrement(String uuid, String itemKey, String dateKey, int amount) {
+        String basePath = getHistoryPath(uuid, itemKey);
+        // 1. 更新总数
+        int currentTotal = dataConfig.getInt(basePath + ".total", 0);
+        dataConfig.set(basePath + ".total", currentTotal + amount);
+
+        // 2. 更新每日计数
+        String dailyPath = basePath + ".daily." + dateKey;
+        int currentDaily = dataConfig.getInt(dailyPath, 0);
+        dataConfig.set(dailyPath, currentDaily + amount);
+
+        // 3. 记录时间戳
+        dataConfig.set("players." + uuid + ".last_update", System.currentTimeMillis());
+    }
+
+    // --- 成交日志消费者 ---
+
+    @Override
+    public @NotNull String name() { return "history"; }
+
+    @Override
+    public boolean critical() { return true; }
+
+    @Override
+    public void onEvent(@NotNull TradeEvent event) {
+        // 计数已在提交路径同步累加 (限额判定不能依赖异步消费进度)，此处只需在批次结束时落盘
+    }
+
+    @Override
+    public void onBatchEnd() {
+        save();
+    }
+
     /**
      * 获取配置对象副本 (读锁保护)
      */
@@ -0,0 +1,143 @@
+package com.kyochigo.economy.managers;
+
+import com.kyochigo.economy.model.MarketCatalog;
+import com.kyochigo.economy.model.MarketItem;
+import com.kyochigo.economy.utils.CraftEngineHook;
+import org.bukkit.Bukkit;
+import org.bukkit.entity.HumanEntity;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.block.BlockPlaceEvent;
+import org.bukkit.event.entity.EntityPickupItemEvent;
+import org.bukkit.event.entity.PlayerDeathEvent;
+import org.bukkit.event.inventory.InventoryClickEvent;
+import org.bukkit.event.inventory.InventoryCloseEvent;
+import org.bukkit.event.inventory.InventoryDragEvent;
+import org.bukkit.event.player.PlayerDropItemEvent;
+import org.bukkit.event.player.PlayerItemBreakEvent;
+import org.bukkit.event.player.PlayerItemConsumeEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.inventory.ItemStack;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 玩家背包数量缓存 (按名录快照单次遍历统计)
+ * <p>
+ * 职责：
+ * 1. 一次遍历背包即统计出名录内全部物品的持有数量，供 balance_ 等占位符直接读取。
+ * 2. 背包变化事件 (拾取、点击、拖拽、丢弃、消耗、放置等) 将对应玩家标记为失效。
+ * 3. 未失效时同一 Tick 内及之后的读取直接复用结果；最大寿命用于兜底 /give 等不触发事件的背包改动。
+ */
+public class InventoryCountCache implements Listener {
+
+    // 兜底寿命：即使没有收到任何事件，超过该 Tick 数也重新统计
+    private static final int MAX_AGE_TICKS = 20;
+
+    private final CraftEngineHook craftEngineHook;
+    private final Map<UUID, PlayerCounts> cache = new ConcurrentHashMap<>();
+
+    public InventoryCountCache(@Nullable CraftEngineHook craftEngineHook) {
+        this.craftEngineHook = craftEngineHook;
+    }
+
+    /**
+     * 获取玩家持有某物品的数量 (物品须属于传入的名录快照)
+     */
+    public int getCount(@NotNull Player player, @NotNull MarketCatalog catalog, @NotNull MarketItem item) {
+        int ordinal = catalog.ordinalOf(item);
+        if (ordinal < 0) return 0;
+        return getCounts(player, catalog)[ordinal];
+    }
+
+    /**
+     * 获取玩家在该名录快照下的全部物品数量 (以快照序号为下标，调用方不得修改)
+     */
+    public int[] getCounts(@NotNull Player player, @NotNull MarketCatalog catalog) {
+        int tick = Bukkit.getCurrentTick();
+        PlayerCounts state = cache.computeIfAbsent(player.getUniqueId(), k -> new PlayerCounts());
+        Snapshot snapshot = state.snapshot;
+        if (snapshot != null && snapshot.catalog == catalog && snapshot.epoch == state.epoch
+                && tick - snapshot.computedTick < MAX_AGE_TICKS) {
+            return snapshot.counts;
+        }
+
+        int epoch = state.epoch;
+        int[] counts = new int[catalog.size()];
+        for (ItemStack stack : player.getInventory().getContents()) {
+            catalog.accumulate(stack, craftEngineHook, counts);
+        }
+        state.snapshot = new Snapshot(catalog, counts, tick, epoch);
+        return counts;
+    }
+
+    /**
+     * 标记玩家背包已变化 (插件自身增删物品后也应调用)
+     */
+    public void invalidate(@NotNull UUID uuid) {
+        PlayerCounts state = cache.get(uuid);
+        if (state != null) state.epoch++;
+    }
+
+    public void clear() {
+        cache.clear();
+    }
+
+    // =========================================================================
+    // 背包变化事件
+    // =========================================================================
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onPickup(EntityPickupItemEvent e) {
+        if (e.getEntity() instanceof Player player) invalidate(player.getUniqueId());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onClick(InventoryClickEvent e) { invalidate(e.getWhoClicked()); }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onDrag(InventoryDragEvent e) { invalidate(e.getWhoClicked()); }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onClose(InventoryCloseEvent e) { invalidate(e.getPlayer()); }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onDrop(PlayerDropItemEvent e) { invalidate(e.getPlayer().getUniqueId()); }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onConsume(PlayerItemConsumeEvent e) { invalidate(e.getPlayer().getUniqueId()); }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onPlace(BlockPlaceEvent e) { invalidate(e.getPlayer().getUniqueId()); }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onBreak(PlayerItemBreakEvent e) { invalidate(e.getPlayer().getUniqueId()); }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onDeath(PlayerDeathEvent e) { invalidate(e.getEntity().getUniqueId()); }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onQuit(PlayerQuitEvent e) { cache.remove(e.getPlayer().getUniqueId()); }
+
+    private void invalidate(HumanEntity entity) {
+        invalidate(entity.getUniqueId());
+    }
+
+    // =========================================================================
+    // 内部状态
+    // =========================================================================
+
+    private record Snapshot(MarketCatalog catalog, int[] counts, int computedTick, int epoch) {}
+
+    private static final class PlayerCounts {
+        volatile Snapshot snapshot;
+        // 失效纪元：每次背包变化递增，统计结果记录开始统计时的纪元 (仅主线程写入)
+        volatile int epoch;
+    }
+}
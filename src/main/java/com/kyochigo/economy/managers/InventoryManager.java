@@ -18,13 +18,20 @@ import java.util.HashMap;
  * 1. hasSpaceForItem 不再产生副作用（不再误发物品）。
  * 2. giveItems 实现了标准的“背包满时掉落”逻辑。
  * 3. 统一了匹配逻辑，防止 NBT 不一致导致的扣除失败。
+ * 4. 持有背包数量缓存 (供占位符读取)，插件自身增删物品后主动使其失效。
  */
 public class InventoryManager {
 
     private final CraftEngineHook craftEngineHook;
+    private final InventoryCountCache countCache;
 
     public InventoryManager(@Nullable CraftEngineHook craftEngineHook) {
         this.craftEngineHook = craftEngineHook;
+        this.countCache = new InventoryCountCache(craftEngineHook);
+    }
+
+    public InventoryCountCache getCountCache() {
+        return countCache;
     }
 
     /**
@@ -114,6 +121,8 @@ public class InventoryManager {
             }
         }
         
+        countCache.invalidate(player.getUniqueId());
+
         // 更新背包状态（防止客户端显示不同步）
         // player.updateInventory(); // 高版本通常不需要，除非出现灵异现象
         return leftToRemove == 0;
@@ -132,6 +141,7 @@ public class InventoryManager {
         // 1. 尝试放入背包
         // addItem 返回无法放入的剩余物品 Map
         HashMap<Integer, ItemStack> leftover = player.getInventory().addItem(toGive);
+        countCache.invalidate(player.getUniqueId());
 
         // 
         // 2. 如果有剩余（背包满了），在玩家位置生成掉落物
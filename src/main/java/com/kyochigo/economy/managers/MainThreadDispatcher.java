@@ -0,0 +1,111 @@
+package com.kyochigo.economy.managers;
+
+import com.kyochigo.economy.KyochigoPlugin;
+import io.papermc.paper.threadedregions.scheduler.ScheduledTask;
+import org.bukkit.entity.Entity;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+
+/**
+ * 主线程回调分发器 (单队列 + 每 Tick 时间预算)
+ * <p>
+ * 职责：
+ * 1. 后端响应等异步结果统一投递到一个无锁队列，由常驻的同步任务在主线程按顺序执行，
+ *    不再为每个响应单独调用 runTask。
+ * 2. 每 Tick 执行的回调受时间预算限制，超出预算的回调顺延到下一 Tick，突发的大量响应不会集中在同一 Tick。
+ * 3. 统计队列深度峰值、已执行数量与被顺延的 Tick 数，供状态指令展示。
+ * 4. 队列挂在全局区域调度器上；与玩家绑定的回调出队后转交该玩家的实体调度器 (Folia 下不在全局线程操作玩家)。
+ */
+public class MainThreadDispatcher {
+
+    public record Stats(int pending, int peakPending, long executed, long deferredTicks) {}
+
+    private final KyochigoPlugin plugin;
+    private record Callback(Entity owner, Runnable task) {}
+
+    private final Queue<Callback> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final LongAdder executed = new LongAdder();
+    private final LongAdder deferredTicks = new LongAdder();
+    private volatile int peakPending = 0;
+    private ScheduledTask drainTask;
+
+    public MainThreadDispatcher(KyochigoPlugin plugin) {
+        this.plugin = plugin;
+    }
+
+    public void start() {
+        stop();
+        this.drainTask = plugin.getTaskScheduler().runGlobalTimer(task -> drain(), 1L, 1L);
+    }
+
+    /**
+     * 停止常驻任务，并在当前线程同步执行队列中剩余的回调
+     * (其中可能有已预留资产的交易回执，直接丢弃会使预留的资金或物品无人结算)
+     */
+    public void stop() {
+        if (drainTask != null) {
+            drainTask.cancel();
+            drainTask = null;
+        }
+        Callback callback;
+        while ((callback = queue.poll()) != null) {
+            pending.decrementAndGet();
+            try {
+                callback.task().run();
+            } catch (Throwable t) {
+                plugin.getLogger().log(Level.WARNING, "停用时执行剩余回调失败", t);
+            }
+            executed.increment();
+        }
+    }
+
+    /**
+     * 投递一个回调，在之后的某个 Tick 于主线程执行 (任意线程调用)
+     */
+    public void submit(@NotNull Runnable callback) {
+        submit(null, callback);
+    }
+
+    /**
+     * 投递一个与实体绑定的回调 (出队后在拥有该实体的区域线程执行；owner 为 null 时在全局线程执行)
+     */
+    public void submit(@Nullable Entity owner, @NotNull Runnable callback) {
+        queue.offer(new Callback(owner, callback));
+        int depth = pending.incrementAndGet();
+        if (depth > peakPending) peakPending = depth;
+    }
+
+    @NotNull
+    public Stats getStats() {
+        return new Stats(pending.get(), peakPending, executed.sum(), deferredTicks.sum());
+    }
+
+    /**
+     * 在时间预算内执行队列中的回调 (每 Tick 至少执行一个，保证持续前进)
+     */
+    private void drain() {
+        long deadline = System.nanoTime() + TimeUnit.MICROSECONDS.toNanos(plugin.getConfiguration().getCallbackBudgetMicros());
+        Callback callback;
+        while ((callback = queue.poll()) != null) {
+            pending.decrementAndGet();
+            try {
+                if (callback.owner() == null) callback.task().run();
+                // 玩家在回调送达前下线时仍需执行 (交易回调要完成资金结算或补偿)，由退役回调照常执行
+                else plugin.getTaskScheduler().runForEntity(callback.owner(), callback.task(), callback.task());
+            } catch (Throwable t) {
+                plugin.getLogger().log(Level.WARNING, "主线程回调执行失败", t);
+            }
+            executed.increment();
+            if (System.nanoTime() >= deadline) break;
+        }
+        if (!queue.isEmpty()) deferredTicks.increment();
+    }
+}
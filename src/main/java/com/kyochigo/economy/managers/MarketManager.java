@@ -5,9 +5,11 @@ import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.kyochigo.economy.KyochigoPlugin;
 import com.kyochigo.economy.gui.MarketDialog;
+import com.kyochigo.economy.gui.TradeSelectorMenu;
+import com.kyochigo.economy.model.MarketCatalog;
 import com.kyochigo.economy.model.MarketItem;
+import com.kyochigo.economy.utils.ContentHash;
 import com.kyochigo.economy.utils.CraftEngineHook;
-import org.bukkit.Bukkit;
 import org.bukkit.Material;
 import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.entity.Player;
@@ -15,7 +17,10 @@ import org.bukkit.inventory.ItemStack;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
@@ -25,12 +30,27 @@ public class MarketManager {
     private final Logger log;
     private final CraftEngineHook craftEngineHook;
     
-    private final List<MarketItem> loadedMarketItems = new ArrayList<>();
-    private final Map<String, MarketItem> itemByKey = new ConcurrentHashMap<>();
-    private final Map<String, ItemStack> iconCache = new ConcurrentHashMap<>();
+    // 每 tick 最多预热的图标数量，避免大名录加载时卡顿主线程
+    private static final int ICON_BATCH_PER_TICK = 16;
 
-    private double lastEnvIndex = 1.0;
-    private String lastEnvNote = "Normal";
+    // 当前生效的名录快照，重载时整体替换
+    private volatile MarketCatalog catalog = MarketCatalog.EMPTY;
+    private final AtomicLong loadGeneration = new AtomicLong();
+    // 尚未完成的构建：停用时统一以取消结束，重载调用方不会无限等待
+    private final Set<CompletableFuture<MarketCatalog>> pendingBuilds = ConcurrentHashMap.newKeySet();
+
+    // 后端已确认的名录状态 (增量同步基准)
+    private volatile String syncedCatalogVersion = null;
+    private volatile Map<String, String> syncedItemHashes = Map.of();
+    private volatile boolean legacySyncBackend = false;
+
+    // 由 updateInternalData 在 this 监视器内写入，PAPI 与各区域线程无锁读取
+    private volatile double lastEnvIndex = 1.0;
+    private volatile String lastEnvNote = "Normal";
+
+    // 行情/环境版本号：任一物品行情变化或环境变化时递增，渲染缓存据此失效
+    private final AtomicLong priceVersion = new AtomicLong();
+    private final AtomicLong envVersion = new AtomicLong();
 
     public MarketManager(KyochigoPlugin plugin, CraftEngineHook craftEngineHook) {
         this.plugin = plugin;
@@ -38,29 +58,150 @@ public class MarketManager {
         this.craftEngineHook = craftEngineHook;
     }
 
-    public void loadItems() {
-        log.info("[DEBUG] 开始加载本地配置文件 items.yml...");
-        loadedMarketItems.clear();
-        iconCache.clear();
-        itemByKey.clear();
-
-        ConfigurationSection itemsSection = plugin.getConfiguration().getItemsSection();
-        if (itemsSection != null) {
-            Set<String> keys = itemsSection.getKeys(false);
-            log.info("[DEBUG] 发现 " + keys.size() + " 个物品配置项。");
-            
-            keys.forEach(key -> {
-                ConfigurationSection itemData = itemsSection.getConfigurationSection(key);
-                if (itemData != null) {
-                    MarketItem marketItem = createMarketItem(key, itemData);
-                    loadedMarketItems.add(marketItem);
-                    itemByKey.put(key.toLowerCase(), marketItem);
-                    preheatIconCache(marketItem);
-                    log.info("[DEBUG] 已注册本地物品: " + key + " (ID: " + marketItem.getId() + ")");
-                }
-            });
+    /**
+     * 以当前配置加载并立即发布名录
+     *
+     * @return 新名录生效时完成的 Future (在全局区域线程完成)
+     */
+    public CompletableFuture<MarketCatalog> loadItems() {
+        return buildCatalog(plugin.getConfiguration().getItemsSection()).thenApply(next -> {
+            publishCatalog(next);
+            return catalog;
+        });
+    }
+
+    /**
+     * 分阶段构建名录 (不替换当前名录)
+     * 1. 异步线程并行解析与校验配置；
+     * 2. 全局区域线程按批次跨 tick 预热图标 (CraftEngine 构建需在主线程)；
+     * 3. 全部就绪后交由调用方校验，再经 publishCatalog 一次性替换，期间旧名录保持可用。
+     * 若构建期间又触发了新的构建，旧批次结果将被丢弃。
+     *
+     * @return 构建完成的名录 (在全局区域线程完成；被取代或插件停用时以取消结束)
+     */
+    public CompletableFuture<MarketCatalog> buildCatalog(ConfigurationSection itemsSection) {
+        long generation = loadGeneration.incrementAndGet();
+        CompletableFuture<MarketCatalog> result = new CompletableFuture<>();
+        pendingBuilds.add(result);
+        result.whenComplete((catalog, error) -> pendingBuilds.remove(result));
+        log.info("[DEBUG] 开始构建名录 (generation=" + generation + ")...");
+
+        CompletableFuture.supplyAsync(() -> parseItems(itemsSection))
+                .whenComplete((items, error) -> {
+                    if (error != null) {
+                        log.severe("[DEBUG] 名录解析失败: " + error.getMessage());
+                        result.completeExceptionally(error);
+                        return;
+                    }
+                    if (!plugin.isEnabled()) {
+                        result.completeExceptionally(new CancellationException("插件已停用，名录构建中止"));
+                        return;
+                    }
+                    plugin.getTaskScheduler().runGlobal(() -> warmIcons(generation, items, result));
+                });
+        return result;
+    }
+
+    /**
+     * 中止所有进行中的构建 (插件停用时调用：预热定时任务随插件一并取消，不会再完成这些 Future)
+     */
+    public void abortPendingBuilds() {
+        for (CompletableFuture<MarketCatalog> build : pendingBuilds) {
+            build.completeExceptionally(new CancellationException("插件已停用，名录构建中止"));
         }
-        if (!loadedMarketItems.isEmpty()) {
+    }
+
+    /**
+     * 判断名录是否仍是最近一次构建的结果 (构建期间又触发了新的构建时为 false)
+     */
+    public boolean isLatest(@NotNull MarketCatalog candidate) {
+        return candidate.getGeneration() == loadGeneration.get();
+    }
+
+    /**
+     * 发布已构建的名录 (需在全局区域线程调用)
+     * @return false 表示该名录已被更新的构建取代，未发布
+     */
+    public boolean publishCatalog(@NotNull MarketCatalog next) {
+        if (!isLatest(next)) {
+            log.info("[DEBUG] 名录 generation=" + next.getGeneration() + " 已被更新的加载取代，结果丢弃。");
+            return false;
+        }
+        swapCatalog(next);
+        return true;
+    }
+
+    private List<MarketItem> parseItems(ConfigurationSection itemsSection) {
+        if (itemsSection == null) return List.of();
+        List<String> keys = List.copyOf(itemsSection.getKeys(false));
+        log.info("[DEBUG] 发现 " + keys.size() + " 个物品配置项。");
+
+        // 保持配置中的原始顺序，仅解析过程并行
+        return keys.parallelStream()
+                .map(key -> parseItem(itemsSection, key))
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    private MarketItem parseItem(ConfigurationSection itemsSection, String key) {
+        ConfigurationSection itemData = itemsSection.getConfigurationSection(key);
+        if (itemData == null) return null;
+        String problem = validateItem(itemData);
+        if (problem != null) {
+            log.warning("[DEBUG] 跳过无效物品配置 [" + key + "]: " + problem);
+            return null;
+        }
+        return createMarketItem(key, itemData);
+    }
+
+    private String validateItem(ConfigurationSection data) {
+        String id = data.getString("id");
+        if (id == null || id.isEmpty()) return "缺少 id";
+        if (data.getDouble("base_price") <= 0) return "base_price 必须大于 0";
+        if (data.getDouble("lambda") < 0) return "lambda 不能为负数";
+        if (data.getInt("daily_limit", 0) < 0) return "daily_limit 不能为负数";
+        return null;
+    }
+
+    private void warmIcons(long generation, List<MarketItem> items, CompletableFuture<MarketCatalog> result) {
+        Map<String, ItemStack> icons = new HashMap<>();
+        Iterator<MarketItem> pending = items.iterator();
+
+        plugin.getTaskScheduler().runGlobalTimer(task -> {
+            if (generation != loadGeneration.get()) {
+                task.cancel();
+                log.info("[DEBUG] 名录加载 generation=" + generation + " 已被更新的加载取代，结果丢弃。");
+                result.cancel(false);
+                return;
+            }
+            for (int i = 0; i < ICON_BATCH_PER_TICK && pending.hasNext(); i++) {
+                MarketItem item = pending.next();
+                icons.put(item.getConfigKey(), item.getIcon(craftEngineHook));
+            }
+            if (pending.hasNext()) return;
+
+            task.cancel();
+            result.complete(new MarketCatalog(generation, items, icons));
+        }, 1L, 1L);
+    }
+
+    private void swapCatalog(MarketCatalog next) {
+        // 与 updateInternalData 互斥：复制行情与发布名录之间不会有行情包写入即将被替换的旧物品
+        synchronized (this) {
+            MarketCatalog previous = this.catalog;
+            // 沿用旧名录中同 Key 物品的行情，避免重载后价格回落到基准价
+            for (MarketItem item : next.getItems()) {
+                MarketItem old = previous.findByKey(item.getConfigKey());
+                if (old == null) continue;
+                item.updateQuote(old.getRawTempPrice(), old.getRawTempBuyPrice(), old.getTempNeff());
+            }
+            // 先发布名录再递增版本，读者看到新版本号时必定读到新名录
+            this.catalog = next;
+            priceVersion.incrementAndGet();
+        }
+        log.info("[DEBUG] 名录 generation=" + next.getGeneration() + " 已生效，共 " + next.size() + " 个物品。");
+
+        if (!next.isEmpty()) {
             log.info("[DEBUG] 正在触发启动同步...");
             reSyncToBackend();
         }
@@ -79,26 +220,61 @@ public class MarketManager {
                 .allowBuy(data.getBoolean("allow_buy", true))
                 .allowSell(data.getBoolean("allow_sell", true))
                 .initialN(data.getInt("n", 0))
+                .dailyLimit(data.getInt("daily_limit", 0))
                 .build();
     }
 
     /**
      * 【核心 Debug 解析】
+     * 行情包回调分散在各玩家所属的区域线程，可能并发到达：整个应用过程在 this 监视器内串行执行，
+     * 环境字段、物品行情、历史记录与名录漂移重同步不会交错。
      */
     public void updateInternalData(@NotNull JsonObject response) {
+        boolean changed;
+        synchronized (this) {
+            long priceVersionBefore = priceVersion.get();
+            long envVersionBefore = envVersion.get();
+            applyMarketResponse(response);
+
+            // 记录本次行情快照到历史时序存储 (分钟/小时/天 三档降采样)
+            if (response.has("items")) {
+                plugin.getPriceHistoryManager().record(catalog.getItems(), lastEnvIndex, System.currentTimeMillis());
+            }
+            changed = priceVersion.get() != priceVersionBefore || envVersion.get() != envVersionBefore;
+        }
+
+        // 行情或环境发生变化时，以槽位差量推送到所有已打开的柜台
+        if (changed) {
+            TradeSelectorMenu.applyPriceUpdate();
+        }
+    }
+
+    private void applyMarketResponse(@NotNull JsonObject response) {
         log.info("[DEBUG] ============= 收到后端数据更新包 =============");
         log.info("[DEBUG] 原始数据: " + response.toString());
 
         // 1. 解析环境
         if (response.has("envIndex")) {
-            this.lastEnvIndex = response.get("envIndex").getAsDouble();
+            double envIndex = response.get("envIndex").getAsDouble();
+            if (envIndex != lastEnvIndex) envVersion.incrementAndGet();
+            this.lastEnvIndex = envIndex;
             log.info("[DEBUG] 环境指数更新: " + lastEnvIndex);
         }
         if (response.has("envNote")) {
-            this.lastEnvNote = response.get("envNote").getAsString();
+            String envNote = response.get("envNote").getAsString();
+            if (!envNote.equals(lastEnvNote)) envVersion.incrementAndGet();
+            this.lastEnvNote = envNote;
             log.info("[DEBUG] 环境描述更新: " + lastEnvNote);
         }
 
+        // 后端回报的名录版本与已确认版本不一致 (通常为后端重启)，重新推送名录
+        if (response.has("catalogVersion") && syncedCatalogVersion != null && !legacySyncBackend
+                && !syncedCatalogVersion.equals(response.get("catalogVersion").getAsString())) {
+            log.warning("[DEBUG] 后端名录版本漂移，触发全量重新同步。");
+            syncedCatalogVersion = null;
+            reSyncToBackend();
+        }
+
         // 2. 解析物品列表
         if (!response.has("items")) {
             log.warning("[DEBUG] 同步失败：响应包中缺失 'items' 字段！");
@@ -133,13 +309,13 @@ public class MarketManager {
             }
         }
 
-        log.info("[DEBUG] 同步流程结束。预期物品: " + loadedMarketItems.size() + " | 成功更新: " + successCount);
+        log.info("[DEBUG] 同步流程结束。预期物品: " + catalog.size() + " | 成功更新: " + successCount);
         log.info("[DEBUG] ===============================================");
     }
 
     private boolean parseAndInjectItem(String id, JsonObject data) {
         String lookupKey = id.toLowerCase();
-        MarketItem item = itemByKey.get(lookupKey);
+        MarketItem item = catalog.findByKey(lookupKey);
         
         if (item == null) {
             log.warning("[DEBUG] 匹配失败：后端返回了 ID '" + id + "'，但本地配置找不到对应的 Key。");
@@ -153,9 +329,9 @@ public class MarketManager {
         double buyPrice = data.has("buyPrice") ? data.get("buyPrice").getAsDouble() : 0.0;
         double neff = data.has("neff") ? data.get("neff").getAsDouble() : 0.0;
 
-        item.setTempPrice(sellPrice);
-        item.setTempBuyPrice(buyPrice);
-        item.setTempNeff(neff);
+        if (item.updateQuote(sellPrice, buyPrice, neff)) {
+            priceVersion.incrementAndGet();
+        }
 
         log.info(String.format("[DEBUG] 更新成功 [%s]: 售卖=%.2f, 购买=%.2f, 热度=%.2f", 
                 item.getConfigKey(), sellPrice, buyPrice, neff));
@@ -163,49 +339,99 @@ public class MarketManager {
         return true;
     }
 
-    private void preheatIconCache(MarketItem item) {
-        ItemStack stack = item.getIcon(craftEngineHook);
-        iconCache.put(item.getConfigKey(), stack);
+    /**
+     * 名录同步 (增量模式)
+     * 以内容指纹计算名录版本，仅推送相对后端已确认版本新增/变更/移除的物品；
+     * 版本未变化时直接跳过，后端拒绝增量包时自动回退为全量同步。
+     */
+    public void reSyncToBackend() {
+        List<MarketItem> snapshot = catalog.getItems();
+        if (snapshot.isEmpty()) return;
+        Map<String, String> currentHashes = new LinkedHashMap<>();
+        snapshot.forEach(item -> currentHashes.put(item.getConfigKey(), item.getSyncHash()));
+        String version = computeCatalogVersion(currentHashes);
+
+        if (version.equals(syncedCatalogVersion)) {
+            log.info("[DEBUG] 名录版本 " + version + " 与后端一致，跳过同步。");
+            return;
+        }
+        if (syncedCatalogVersion == null || legacySyncBackend) {
+            pushFullSync(snapshot, currentHashes, version);
+            return;
+        }
+
+        JsonArray upserts = new JsonArray();
+        snapshot.stream()
+                .filter(item -> !currentHashes.get(item.getConfigKey()).equals(syncedItemHashes.get(item.getConfigKey())))
+                .forEach(item -> upserts.add(item.toJsonObject()));
+        JsonArray removed = new JsonArray();
+        syncedItemHashes.keySet().stream()
+                .filter(key -> !currentHashes.containsKey(key))
+                .forEach(removed::add);
+
+        log.info("[DEBUG] 正在推送增量同步 " + syncedCatalogVersion + " -> " + version
+                + " (变更 " + upserts.size() + ", 移除 " + removed.size() + ")");
+        log.info("[DEBUG] 推送 Payload: " + upserts + " | removed=" + removed);
+
+        plugin.getBackendManager().syncMarketData(syncedCatalogVersion, version, upserts, removed, result -> {
+            if (result.accepted() && version.equals(result.ackVersion())) {
+                markSynced(currentHashes, version);
+                log.info("✅ [DEBUG] 后端名录增量对齐成功 (version=" + version + ")。");
+                return;
+            }
+            log.warning("[DEBUG] 增量同步未获后端确认，回退为全量同步...");
+            pushFullSync(snapshot, currentHashes, version);
+        });
     }
 
-    public void reSyncToBackend() {
-        if (loadedMarketItems.isEmpty()) return;
+    private void pushFullSync(List<MarketItem> snapshot, Map<String, String> hashes, String version) {
         JsonArray jsonArray = new JsonArray();
-        loadedMarketItems.forEach(item -> jsonArray.add(item.toJsonObject()));
+        snapshot.forEach(item -> jsonArray.add(item.toJsonObject()));
         
-        log.info("[DEBUG] 正在推送全量同步到后端...");
+        log.info("[DEBUG] 正在推送全量同步到后端 (version=" + version + ")...");
         log.info("[DEBUG] 推送 Payload: " + jsonArray.toString());
         
-        plugin.getBackendManager().syncMarketData(jsonArray, success -> {
-            if (success) log.info("✅ [DEBUG] 后端名录对齐成功。");
-            else log.severe("❌ [DEBUG] 后端名录对齐失败！请检查 Rust 后端 API。");
+        plugin.getBackendManager().syncMarketData(null, version, jsonArray, new JsonArray(), result -> {
+            if (!result.accepted()) {
+                syncedCatalogVersion = null;
+                log.severe("❌ [DEBUG] 后端名录对齐失败！请检查 Rust 后端 API。");
+                return;
+            }
+            // 旧版后端不回传版本号：仍记录本地版本以跳过无变化的重载，但后续变更一律走全量
+            legacySyncBackend = result.ackVersion() == null;
+            markSynced(hashes, version);
+            log.info("✅ [DEBUG] 后端名录对齐成功。");
         });
     }
 
+    private void markSynced(Map<String, String> hashes, String version) {
+        this.syncedItemHashes = Map.copyOf(hashes);
+        this.syncedCatalogVersion = version;
+    }
+
+    private static String computeCatalogVersion(Map<String, String> itemHashes) {
+        return ContentHash.ofEntries(itemHashes);
+    }
+
     public void fetchMarketPricesAndOpenGui(Player player, boolean viewOnly) {
-        List<String> itemIds = loadedMarketItems.stream()
-                .map(MarketItem::getConfigKey)
-                .collect(Collectors.toList());
+        List<String> itemIds = catalog.getItemIds();
 
         log.info("[DEBUG] 玩家 " + (player != null ? player.getName() : "CONSOLE") + " 触发价格同步请求...");
         log.info("[DEBUG] 请求物品列表: " + itemIds);
 
-        plugin.getBackendManager().fetchBulkPrices(itemIds, response -> {
-            // 切回主线程处理 UI 和数据
-            Bukkit.getScheduler().runTask(plugin, () -> {
-                if (response == null) {
-                    log.severe("[DEBUG] 严重错误：fetchBulkPrices 回调返回 null！后端可能崩溃或超时。");
-                    if (player != null) player.sendMessage("§c通信异常：后端未响应。");
-                    return;
-                }
-
+        // 回调已由分发器在拥有该玩家的区域线程执行，直接处理 UI 和数据
+        // 刷新为最低优先级，拥塞时会被准入控制丢弃：此时与柜台一致，沿用当前行情快照开启界面
+        plugin.getBackendManager().fetchBulkPrices(player, itemIds, response -> {
+            if (response != null) {
                 updateInternalData(response);
+            } else {
+                log.info("[DEBUG] 行情刷新未完成 (被丢弃或后端未响应)，沿用当前行情快照。");
+            }
 
-                if (player != null) {
-                    log.info("[DEBUG] 正在为 " + player.getName() + " 开启行情对话框...");
-                    MarketDialog.open(player, viewOnly);
-                }
-            });
+            if (player != null) {
+                log.info("[DEBUG] 正在为 " + player.getName() + " 开启行情对话框...");
+                MarketDialog.open(player, viewOnly);
+            }
         });
     }
 
@@ -214,26 +440,29 @@ public class MarketManager {
     // =========================================================================
 
     public MarketItem findMarketItemByKey(String key) {
-        return (key == null) ? null : itemByKey.get(key.toLowerCase());
+        return catalog.findByKey(key);
     }
 
     public MarketItem findMarketItem(ItemStack item) {
         if (item == null || item.getType() == Material.AIR) return null;
-        return loadedMarketItems.stream()
+        return catalog.getItems().stream()
                 .filter(mi -> mi.matches(item, craftEngineHook))
                 .findFirst()
                 .orElse(null);
     }
 
     public ItemStack getItemIcon(MarketItem item) {
-        return Optional.ofNullable(iconCache.get(item.getConfigKey()))
-                .map(ItemStack::clone)
-                .orElse(new ItemStack(Material.BARRIER));
+        return catalog.getIcon(item);
     }
 
-    public List<MarketItem> getAllItems() { return List.copyOf(loadedMarketItems); }
+    public MarketCatalog getCatalog() { return catalog; }
+    public List<MarketItem> getAllItems() { return catalog.getItems(); }
+    public List<MarketItem> getItemsByCategory(String category) { return catalog.getItemsByCategory(category); }
+    public List<String> getItemIdsByCategory(String category) { return catalog.getItemIdsByCategory(category); }
     public double getLastEnvIndex() { return lastEnvIndex; }
     public String getLastEnvNote() { return lastEnvNote; }
+    public long getPriceVersion() { return priceVersion.get(); }
+    public long getEnvVersion() { return envVersion.get(); }
     public CraftEngineHook getCraftEngineHook() { return this.craftEngineHook; }
     public MarketItem getItem(String key) { return findMarketItemByKey(key); }
 }
\ No newline at end of file
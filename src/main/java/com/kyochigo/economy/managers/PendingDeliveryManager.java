@@ -0,0 +1,142 @@
+package com.kyochigo.economy.managers;
+
+import com.kyochigo.economy.KyochigoPlugin;
+import com.kyochigo.economy.model.MarketItem;
+import org.bukkit.Bukkit;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+
+/**
+ * 离线补发队列 (玩家不在线时结算出的物品)
+ * <p>
+ * 职责：
+ * 1. 交易结算或补偿需要交付物品、而玩家已下线 (或当前线程不拥有该玩家) 时登记欠付数量，并立即异步落盘。
+ * 2. 玩家上线后在其所属区域线程补发；物品已从名录移除时保留记录并告警，等待管理员处理。
+ * 3. 资金类补偿直接经 Vault 入账 (经济插件支持离线账户)，不经过本队列。
+ */
+public class PendingDeliveryManager implements Listener {
+
+    private final KyochigoPlugin plugin;
+    private final File dataFile;
+    // 玩家 UUID -> 物品 Key -> 欠付数量
+    // 单个玩家的内层表只在 owed.compute 内修改：与 deliver 的整体取出互斥，不会写入已被取走的表
+    private final Map<UUID, Map<String, Integer>> owed = new ConcurrentHashMap<>();
+
+    public PendingDeliveryManager(KyochigoPlugin plugin) {
+        this.plugin = plugin;
+        this.dataFile = new File(plugin.getDataFolder(), "pending_deliveries.yml");
+    }
+
+    public void load() {
+        owed.clear();
+        if (!dataFile.exists()) return;
+        YamlConfiguration data = YamlConfiguration.loadConfiguration(dataFile);
+        ConfigurationSection players = data.getConfigurationSection("players");
+        if (players == null) return;
+        for (String uuid : players.getKeys(false)) {
+            ConfigurationSection items = players.getConfigurationSection(uuid);
+            if (items == null) continue;
+            Map<String, Integer> entries = new ConcurrentHashMap<>();
+            for (String key : items.getKeys(false)) {
+                int amount = items.getInt(key);
+                if (amount > 0) entries.put(key, amount);
+            }
+            if (!entries.isEmpty()) owed.put(UUID.fromString(uuid), entries);
+        }
+        if (!owed.isEmpty()) {
+            plugin.getLogger().info("离线补发队列中有 " + owed.size() + " 名玩家的物品待上线领取。");
+        }
+    }
+
+    /**
+     * 登记欠付物品 (任意线程调用)
+     */
+    public void owe(@NotNull UUID uuid, @NotNull String itemKey, int amount) {
+        if (amount <= 0) return;
+        merge(uuid, Map.of(itemKey, amount));
+        plugin.getLogger().info(String.format("物品暂存至离线补发队列: player=%s item=%s amount=%d", uuid, itemKey, amount));
+        saveAsync();
+
+        // 玩家在线但当前线程不拥有该玩家 (或恰好与上线补发交错)：转到其所属区域线程立即补发
+        Player online = Bukkit.getPlayer(uuid);
+        if (online != null && plugin.isEnabled()) {
+            plugin.getTaskScheduler().runForEntity(online, () -> deliver(online));
+        }
+    }
+
+    public synchronized void save() {
+        YamlConfiguration data = new YamlConfiguration();
+        owed.forEach((uuid, items) -> items.forEach((key, amount) -> data.set("players." + uuid + "." + key, amount)));
+        try {
+            data.save(dataFile);
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.SEVERE, "无法保存离线补发队列!", e);
+        }
+    }
+
+    public void saveAsync() {
+        // 停用流程中无法再投递异步任务，直接同步落盘
+        if (!plugin.isEnabled()) {
+            save();
+            return;
+        }
+        plugin.getTaskScheduler().runAsync(this::save);
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onJoin(PlayerJoinEvent e) {
+        Player player = e.getPlayer();
+        if (!owed.containsKey(player.getUniqueId())) return;
+        plugin.getTaskScheduler().runForEntity(player, () -> deliver(player));
+    }
+
+    private void deliver(Player player) {
+        Map<String, Integer> items = owed.remove(player.getUniqueId());
+        if (items == null) return;
+
+        Map<String, Integer> kept = new HashMap<>();
+        int delivered = 0;
+        for (Map.Entry<String, Integer> entry : items.entrySet()) {
+            MarketItem item = plugin.getMarketManager().findMarketItemByKey(entry.getKey());
+            if (item == null) {
+                kept.put(entry.getKey(), entry.getValue());
+                plugin.getLogger().warning(String.format("离线补发失败，物品已不在名录中: player=%s item=%s amount=%d",
+                        player.getName(), entry.getKey(), entry.getValue()));
+                continue;
+            }
+            plugin.getInventoryManager().giveItems(player, item, entry.getValue());
+            delivered += entry.getValue();
+        }
+        if (!kept.isEmpty()) merge(player.getUniqueId(), kept);
+
+        if (delivered > 0) {
+            player.sendMessage("§8[§bKyochigo§8] §a离线期间结算的 §f" + delivered + " §a件物品已发放至背包。");
+        }
+        saveAsync();
+    }
+
+    /**
+     * 原子地将数量累加到某玩家的欠付记录
+     */
+    private void merge(UUID uuid, Map<String, Integer> amounts) {
+        owed.compute(uuid, (id, items) -> {
+            Map<String, Integer> merged = items != null ? items : new ConcurrentHashMap<>();
+            amounts.forEach((key, amount) -> merged.merge(key, amount, Integer::sum));
+            return merged;
+        });
+    }
+}
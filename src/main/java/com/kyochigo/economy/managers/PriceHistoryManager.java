@@ -0,0 +1,302 @@
+package com.kyochigo.economy.managers;
+
+import com.kyochigo.economy.KyochigoPlugin;
+import com.kyochigo.economy.model.MarketItem;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+/**
+ * 历史行情时序存储 (内存映射文件，固定大小)
+ * <p>
+ * 职责：
+ * 1. 每次行情快照更新时，记录各物品的售价、购价、热度与环境指数。
+ * 2. 同一数据按 1 分钟 / 1 小时 / 1 天 三档降采样 (每档保存桶内最后一次观测值)，各档为定长环形区。
+ * 3. 文件大小在创建时即固定 (物品槽位数 × 各档容量)，长期运行也不会增长。
+ * 4. 提供区间查询接口，供行情看板趋势箭头与走势图占位符使用。
+ * 5. 打开后首次写入时，以当时的名录回收已删除或改名物品占用的槽位，新物品优先复用空槽。
+ * <p>
+ * 文件布局：[文件头][物品 Key 目录][各物品序列区 (分钟档 | 小时档 | 天档)]，
+ * 每条记录为 桶编号(int) + 售价/购价/热度/环境指数(float)。
+ */
+public class PriceHistoryManager {
+
+    /**
+     * 降采样档位
+     */
+    public enum Tier {
+        MINUTE(TimeUnit.MINUTES.toMillis(1), 1440),  // 保留 24 小时
+        HOUR(TimeUnit.HOURS.toMillis(1), 720),       // 保留 30 天
+        DAY(TimeUnit.DAYS.toMillis(1), 365);         // 保留 1 年
+
+        final long spanMs;
+        final int capacity;
+
+        Tier(long spanMs, int capacity) {
+            this.spanMs = spanMs;
+            this.capacity = capacity;
+        }
+
+        public long getSpanMs() { return spanMs; }
+    }
+
+    /**
+     * 单个采样点 (timestamp 为所在桶的起始时间)
+     */
+    public record PricePoint(long timestamp, double sellPrice, double buyPrice, double neff, double envIndex) {}
+
+    private static final int MAGIC = 0x4B594F50; // "KYOP"
+    private static final int FORMAT_VERSION = 1;
+    private static final int MAX_SERIES = 256;
+    private static final int KEY_BYTES = 64;
+    private static final int RECORD_BYTES = 4 + 4 * 4;
+    private static final int HEADER_BYTES = 16;
+    private static final int DIRECTORY_BYTES = MAX_SERIES * KEY_BYTES;
+    private static final int SERIES_BYTES;
+    private static final int[] TIER_OFFSETS = new int[Tier.values().length];
+
+    static {
+        int offset = 0;
+        for (Tier tier : Tier.values()) {
+            TIER_OFFSETS[tier.ordinal()] = offset;
+            offset += tier.capacity * RECORD_BYTES;
+        }
+        SERIES_BYTES = offset;
+    }
+
+    private static final long FILE_BYTES = HEADER_BYTES + DIRECTORY_BYTES + (long) MAX_SERIES * SERIES_BYTES;
+
+    private final KyochigoPlugin plugin;
+    private final File dataFile;
+    private final Map<String, Integer> slots = new HashMap<>();
+    private final BitSet usedSlots = new BitSet(MAX_SERIES);
+    // 打开后尚未按名录回收槽位 (名录在文件打开之后才加载)
+    private boolean reclaimPending = false;
+
+    private RandomAccessFile file;
+    private MappedByteBuffer buffer;
+    private boolean capacityWarned = false;
+
+    public PriceHistoryManager(KyochigoPlugin plugin) {
+        this.plugin = plugin;
+        this.dataFile = new File(plugin.getDataFolder(), "price_history.dat");
+    }
+
+    public synchronized void open() {
+        try {
+            File parent = dataFile.getParentFile();
+            if (parent != null) parent.mkdirs();
+
+            this.file = new RandomAccessFile(dataFile, "rw");
+            boolean fresh = file.length() != FILE_BYTES;
+            if (fresh) {
+                if (file.length() > 0) {
+                    plugin.getLogger().warning("price_history.dat 布局不匹配，已重新初始化历史行情文件。");
+                }
+                file.setLength(0);
+                file.setLength(FILE_BYTES);
+            }
+
+            this.buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, FILE_BYTES);
+            if (fresh || buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION
+                    || buffer.getInt(8) != MAX_SERIES || buffer.getInt(12) != SERIES_BYTES) {
+                initializeHeader();
+            }
+            loadDirectory();
+            reclaimPending = true;
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.SEVERE, "无法打开历史行情文件 price_history.dat，走势功能将不可用。", e);
+            close();
+        }
+    }
+
+    public synchronized void close() {
+        if (buffer != null) buffer.force();
+        buffer = null;
+        slots.clear();
+        usedSlots.clear();
+        if (file != null) {
+            try {
+                file.close();
+            } catch (IOException ignored) {
+            }
+            file = null;
+        }
+    }
+
+    // =========================================================================
+    // 写入
+    // =========================================================================
+
+    /**
+     * 记录一次行情快照 (每档写入当前桶，桶内后写覆盖先写)
+     */
+    public synchronized void record(@NotNull List<MarketItem> items, double envIndex, long timestamp) {
+        if (buffer == null) return;
+        if (reclaimPending && !items.isEmpty()) {
+            reclaimPending = false;
+            reclaim(items);
+        }
+        for (MarketItem item : items) {
+            int slot = resolveSlot(item.getConfigKey(), true);
+            if (slot < 0) continue;
+            for (Tier tier : Tier.values()) {
+                long bucket = timestamp / tier.spanMs;
+                int pos = recordPosition(slot, tier, bucket);
+                buffer.putInt(pos, (int) bucket);
+                buffer.putFloat(pos + 4, (float) item.getSellPrice());
+                buffer.putFloat(pos + 8, (float) item.getBuyPrice());
+                buffer.putFloat(pos + 12, (float) item.getTempNeff());
+                buffer.putFloat(pos + 16, (float) envIndex);
+            }
+        }
+    }
+
+    // =========================================================================
+    // 查询
+    // =========================================================================
+
+    /**
+     * 区间查询 [from, to]，按时间升序返回存在数据的采样点 (超出档位保留期的部分自动截断)
+     */
+    @NotNull
+    public synchronized List<PricePoint> query(@NotNull String itemKey, @NotNull Tier tier, long fromMs, long toMs) {
+        List<PricePoint> points = new ArrayList<>();
+        int slot = resolveSlot(itemKey, false);
+        if (slot < 0 || fromMs > toMs) return points;
+
+        long last = toMs / tier.spanMs;
+        long first = Math.max(fromMs / tier.spanMs, last - tier.capacity + 1);
+        for (long bucket = first; bucket <= last; bucket++) {
+            PricePoint point = readPoint(slot, tier, bucket);
+            if (point != null) points.add(point);
+        }
+        return points;
+    }
+
+    /**
+     * 获取不晚于指定时间的最近一个采样点 (在档位保留期内查找)
+     */
+    @Nullable
+    public synchronized PricePoint latestAtOrBefore(@NotNull String itemKey, @NotNull Tier tier, long timeMs) {
+        int slot = resolveSlot(itemKey, false);
+        if (slot < 0) return null;
+
+        long bucket = timeMs / tier.spanMs;
+        for (int i = 0; i < tier.capacity; i++) {
+            PricePoint point = readPoint(slot, tier, bucket - i);
+            if (point != null) return point;
+        }
+        return null;
+    }
+
+    // =========================================================================
+    // 文件布局辅助
+    // =========================================================================
+
+    private void initializeHeader() {
+        // 文件头损坏或版本不符时整体清零 (文件大小固定为 8 的倍数)
+        for (int i = 0; i < FILE_BYTES; i += 8) {
+            buffer.putLong(i, 0L);
+        }
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, FORMAT_VERSION);
+        buffer.putInt(8, MAX_SERIES);
+        buffer.putInt(12, SERIES_BYTES);
+    }
+
+    /**
+     * 回收不在名录中的物品槽位：清空目录项与序列区，供新物品复用
+     */
+    private void reclaim(List<MarketItem> items) {
+        Set<String> live = new HashSet<>();
+        for (MarketItem item : items) live.add(item.getConfigKey().toLowerCase());
+
+        int reclaimed = 0;
+        Iterator<Map.Entry<String, Integer>> it = slots.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Integer> entry = it.next();
+            if (live.contains(entry.getKey())) continue;
+            int slot = entry.getValue();
+            clearRegion(HEADER_BYTES + slot * KEY_BYTES, KEY_BYTES);
+            clearRegion(HEADER_BYTES + DIRECTORY_BYTES + slot * SERIES_BYTES, SERIES_BYTES);
+            usedSlots.clear(slot);
+            it.remove();
+            reclaimed++;
+        }
+        if (reclaimed > 0) {
+            capacityWarned = false;
+            plugin.getLogger().info("历史行情文件已回收 " + reclaimed + " 个不在名录中的物品槽位。");
+        }
+    }
+
+    private void clearRegion(int offset, int length) {
+        for (int i = 0; i < length; i++) buffer.put(offset + i, (byte) 0);
+    }
+
+    private void loadDirectory() {
+        slots.clear();
+        usedSlots.clear();
+        byte[] raw = new byte[KEY_BYTES];
+        for (int slot = 0; slot < MAX_SERIES; slot++) {
+            buffer.get(HEADER_BYTES + slot * KEY_BYTES, raw);
+            int length = 0;
+            while (length < KEY_BYTES && raw[length] != 0) length++;
+            if (length == 0) continue;
+            slots.put(new String(raw, 0, length, StandardCharsets.UTF_8), slot);
+            usedSlots.set(slot);
+        }
+    }
+
+    private int resolveSlot(String itemKey, boolean create) {
+        if (buffer == null) return -1;
+        String key = itemKey.toLowerCase();
+        Integer slot = slots.get(key);
+        if (slot != null || !create) return slot != null ? slot : -1;
+
+        byte[] raw = key.getBytes(StandardCharsets.UTF_8);
+        if (raw.length > KEY_BYTES) return -1;
+        int assigned = usedSlots.nextClearBit(0);
+        if (assigned >= MAX_SERIES) {
+            if (!capacityWarned) {
+                plugin.getLogger().warning("历史行情文件槽位已满 (" + MAX_SERIES + ")，新增物品将不记录走势。");
+                capacityWarned = true;
+            }
+            return -1;
+        }
+
+        buffer.put(HEADER_BYTES + assigned * KEY_BYTES, raw);
+        slots.put(key, assigned);
+        usedSlots.set(assigned);
+        return assigned;
+    }
+
+    private static int recordPosition(int slot, Tier tier, long bucket) {
+        int index = (int) (bucket % tier.capacity);
+        return HEADER_BYTES + DIRECTORY_BYTES + slot * SERIES_BYTES + TIER_OFFSETS[tier.ordinal()] + index * RECORD_BYTES;
+    }
+
+    private PricePoint readPoint(int slot, Tier tier, long bucket) {
+        if (bucket <= 0) return null;
+        int pos = recordPosition(slot, tier, bucket);
+        if (buffer.getInt(pos) != (int) bucket) return null;
+        return new PricePoint(bucket * tier.spanMs, buffer.getFloat(pos + 4), buffer.getFloat(pos + 8),
+                buffer.getFloat(pos + 12), buffer.getFloat(pos + 16));
+    }
+}
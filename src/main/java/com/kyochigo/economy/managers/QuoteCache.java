@@ -0,0 +1,125 @@
+package com.kyochigo.economy.managers;
+
+import com.kyochigo.economy.KyochigoPlugin;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 预览报价缓存 (短 TTL + 行情版本校验)
+ * <p>
+ * 职责：
+ * 1. 以 (物品, 方向, 数量) 为键缓存后端预览报价，条目同时记录写入时的行情版本与环境版本。
+ * 2. 行情推送或拉取使任一版本递增后，旧条目在下一次读取时即判定失效，无需等待 TTL。
+ * 3. 本服成交后按物品主动失效 (后端热度已变化，但行情包尚未回传)，并记录该物品的失效序号；
+ *    发起时间早于最近一次失效的请求，其报价一律不回填，避免成交前发出的预览覆盖失效结果。
+ * 4. 仅服务于预览；正式提交必须直连后端，不经过本缓存。
+ */
+public class QuoteCache {
+
+    // 条目上限：超过后整体清空 (键空间为 物品 × 方向 × 数量，正常情况下远低于此值)
+    private static final int MAX_ENTRIES = 4096;
+
+    private final KyochigoPlugin plugin;
+    private final Map<Key, Entry> entries = new ConcurrentHashMap<>();
+    // 失效序号：每次 invalidate 递增，物品 Key (小写) -> 最近一次失效时的序号
+    private final AtomicLong sequence = new AtomicLong();
+    private final Map<String, Long> invalidatedAt = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    private record Key(String itemKey, boolean isBuy, int amount) {}
+
+    private record Entry(BackendManager.Quote quote, long priceVersion, long envVersion, long expiresAt) {}
+
+    public record Stats(long hits, long misses, int size) {
+        public double hitRatio() {
+            long total = hits + misses;
+            return total == 0 ? 0.0 : (double) hits / total;
+        }
+    }
+
+    public QuoteCache(KyochigoPlugin plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * 查询缓存 (命中需同时满足：未过期、行情版本与环境版本均未变化)
+     */
+    @Nullable
+    public BackendManager.Quote get(@NotNull String itemKey, boolean isBuy, int amount) {
+        Key key = new Key(itemKey.toLowerCase(), isBuy, amount);
+        Entry entry = entries.get(key);
+        if (entry != null && isValid(entry)) {
+            hits.increment();
+            return entry.quote();
+        }
+        if (entry != null) entries.remove(key, entry);
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * 请求标记 (发起后端请求前取得，写入时原样传回 put)
+     */
+    public long stamp() {
+        return sequence.get();
+    }
+
+    /**
+     * 写入报价
+     * @param priceVersion 发起请求时的行情版本 (请求期间版本变化则该条目天然失效)
+     * @param envVersion   发起请求时的环境版本
+     * @param requestStamp 发起请求时的 {@link #stamp()}；该物品此后被失效过则丢弃本次写入
+     */
+    public void put(@NotNull BackendManager.Quote quote, long priceVersion, long envVersion, long requestStamp) {
+        long ttl = plugin.getConfiguration().getQuoteCacheTtlMs();
+        if (ttl <= 0) return;
+
+        BackendManager.QuoteRequest request = quote.request();
+        String itemKey = request.item().getConfigKey().toLowerCase();
+        if (isStale(itemKey, requestStamp)) return;
+        if (entries.size() >= MAX_ENTRIES) entries.clear();
+
+        Key key = new Key(itemKey, request.isBuy(), request.amount());
+        Entry entry = new Entry(quote, priceVersion, envVersion, System.currentTimeMillis() + ttl);
+        entries.put(key, entry);
+        // 检查与写入之间可能恰好发生失效：写入后复查，已过时则撤回本条
+        if (isStale(itemKey, requestStamp)) entries.remove(key, entry);
+    }
+
+    /**
+     * 使某物品的全部报价失效 (本服成交后调用)
+     */
+    public void invalidate(@NotNull String itemKey) {
+        String lookup = itemKey.toLowerCase();
+        // 先登记失效序号再清理条目，保证清理之后的任何过时写入都能被 put 识别
+        invalidatedAt.put(lookup, sequence.incrementAndGet());
+        entries.keySet().removeIf(k -> k.itemKey().equals(lookup));
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    @NotNull
+    public Stats getStats() {
+        return new Stats(hits.sum(), misses.sum(), entries.size());
+    }
+
+    private boolean isStale(String itemKey, long requestStamp) {
+        Long invalidated = invalidatedAt.get(itemKey);
+        return invalidated != null && invalidated > requestStamp;
+    }
+
+    private boolean isValid(Entry entry) {
+        MarketManager market = plugin.getMarketManager();
+        return entry.expiresAt() > System.currentTimeMillis()
+                && entry.priceVersion() == market.getPriceVersion()
+                && entry.envVersion() == market.getEnvVersion();
+    }
+}
@@ -0,0 +1,136 @@
+package com.kyochigo.economy.managers;
+
+import com.kyochigo.economy.model.Category;
+import com.kyochigo.economy.model.MarketCatalog;
+import com.kyochigo.economy.model.MarketItem;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 热重载结果报告 (新旧配置与名录的差异)
+ * <p>
+ * 职责：
+ * 1. 对比生效前后的配置快照：后端、限流、显示、统计等标量设置，交易所区域与分类的增删改。
+ * 2. 对比生效前后的名录：物品增删，以及价格参数、限购、买卖开关、分类的变化。
+ * 3. 汇总非致命提示 (如物品引用了未声明的分类)，供管理员核对。
+ *
+ * @param catalog 新生效的名录
+ * @param changes 人类可读的变更条目 (按配置、交易所、分类、物品的顺序)
+ * @param warnings 不阻止生效的提示
+ */
+public record ReloadReport(MarketCatalog catalog, List<String> changes, List<String> warnings) {
+
+    public boolean isEmpty() {
+        return changes.isEmpty();
+    }
+
+    @NotNull
+    public static ReloadReport diff(@NotNull ConfigManager.ConfigData before, @NotNull ConfigManager.ConfigData after,
+                                    @NotNull MarketCatalog previous, @NotNull MarketCatalog next) {
+        List<String> changes = new ArrayList<>();
+        diffSettings(before, after, changes);
+        diffExchanges(before, after, changes);
+        diffCategories(before, after, changes);
+        diffItems(previous, next, changes);
+
+        List<String> warnings = new ArrayList<>();
+        next.getItems().stream()
+                .map(MarketItem::getCategory)
+                .filter(id -> id != null && !after.categories.containsKey(id))
+                .distinct()
+                .forEach(id -> warnings.add("分类 " + id + " 未在 categories 中声明，将以 ID 作为名称"));
+        return new ReloadReport(next, List.copyOf(changes), List.copyOf(warnings));
+    }
+
+    // =========================================================================
+    // 配置
+    // =========================================================================
+
+    private static void diffSettings(ConfigManager.ConfigData a, ConfigManager.ConfigData b, List<String> out) {
+        compare(out, "settings.debug", a.debug, b.debug);
+        compare(out, "settings.enabled-worlds", a.enabledWorlds, b.enabledWorlds);
+        compare(out, "backend.url", a.backendUrl, b.backendUrl);
+        compare(out, "backend.connect-timeout", a.connectTimeout, b.connectTimeout);
+        compare(out, "backend.request-timeout", a.requestTimeout, b.requestTimeout);
+        compare(out, "backend.quote-cache-ttl-ms", a.quoteCacheTtlMs, b.quoteCacheTtlMs);
+        compare(out, "backend.max-in-flight", a.backendMaxInFlight, b.backendMaxInFlight);
+        compare(out, "backend.callback-budget-ms", a.callbackBudgetMicros / 1000.0, b.callbackBudgetMicros / 1000.0);
+        compare(out, "display.currency-symbol", a.currencySymbol, b.currencySymbol);
+        compare(out, "statistics.publish-interval-ticks", a.statisticsIntervalTicks, b.statisticsIntervalTicks);
+        compare(out, "statistics.top-size", a.statisticsTopSize, b.statisticsTopSize);
+        compare(out, "audit.rotate-size-mb", a.auditRotateBytes / (1024L * 1024L), b.auditRotateBytes / (1024L * 1024L));
+        a.rateLimits.forEach((action, limit) ->
+                compare(out, "rate-limit." + action.getConfigKey(), limit, b.rateLimits.get(action)));
+    }
+
+    private static void diffExchanges(ConfigManager.ConfigData a, ConfigManager.ConfigData b, List<String> out) {
+        Map<String, ExchangeZoneIndex.Zone> before = index(a.exchanges, ExchangeZoneIndex.Zone::id);
+        Map<String, ExchangeZoneIndex.Zone> after = index(b.exchanges, ExchangeZoneIndex.Zone::id);
+        after.forEach((id, zone) -> {
+            ExchangeZoneIndex.Zone old = before.get(id);
+            if (old == null) out.add("+ 交易所 " + id + " (" + describe(zone) + ")");
+            else if (!old.equals(zone)) out.add("~ 交易所 " + id + ": " + describe(old) + " -> " + describe(zone));
+        });
+        before.keySet().stream().filter(id -> !after.containsKey(id)).forEach(id -> out.add("- 交易所 " + id));
+    }
+
+    private static void diffCategories(ConfigManager.ConfigData a, ConfigManager.ConfigData b, List<String> out) {
+        b.categories.forEach((id, category) -> {
+            Category old = a.categories.get(id);
+            if (old == null) out.add("+ 分类 " + id + " (" + category.plainName() + ")");
+            else if (!old.rawName().equals(category.rawName())) {
+                out.add("~ 分类 " + id + ": " + old.plainName() + " -> " + category.plainName());
+            }
+        });
+        a.categories.keySet().stream().filter(id -> !b.categories.containsKey(id)).forEach(id -> out.add("- 分类 " + id));
+    }
+
+    // =========================================================================
+    // 名录
+    // =========================================================================
+
+    private static void diffItems(MarketCatalog previous, MarketCatalog next, List<String> out) {
+        for (MarketItem item : next.getItems()) {
+            MarketItem old = previous.findByKey(item.getConfigKey());
+            if (old == null) {
+                out.add("+ 物品 " + item.getConfigKey());
+                continue;
+            }
+            List<String> fields = new ArrayList<>();
+            compare(fields, "base_price", old.getBasePrice(), item.getBasePrice());
+            compare(fields, "lambda", old.getLambda(), item.getLambda());
+            compare(fields, "daily_limit", old.getDailyLimit(), item.getDailyLimit());
+            compare(fields, "allow_buy", old.isAllowBuy(), item.isAllowBuy());
+            compare(fields, "allow_sell", old.isAllowSell(), item.isAllowSell());
+            compare(fields, "category", old.getCategory(), item.getCategory());
+            if (fields.isEmpty() && !Objects.equals(old.getSyncHash(), item.getSyncHash())) fields.add("定义已变更");
+            if (!fields.isEmpty()) out.add("~ 物品 " + item.getConfigKey() + ": " + String.join(", ", fields));
+        }
+        for (MarketItem old : previous.getItems()) {
+            if (next.findByKey(old.getConfigKey()) == null) out.add("- 物品 " + old.getConfigKey());
+        }
+    }
+
+    // =========================================================================
+    // 工具
+    // =========================================================================
+
+    private static void compare(List<String> out, String label, Object before, Object after) {
+        if (!Objects.equals(before, after)) out.add(label + ": " + before + " -> " + after);
+    }
+
+    private static String describe(ExchangeZoneIndex.Zone zone) {
+        return String.format("%s %.1f, %.1f, %.1f r=%.1f", zone.world(), zone.x(), zone.y(), zone.z(), zone.radius());
+    }
+
+    private static <T> Map<String, T> index(List<T> values, Function<T, String> key) {
+        return values.stream().collect(Collectors.toMap(key, Function.identity(), (x, y) -> x, LinkedHashMap::new));
+    }
+}
@@ -0,0 +1,239 @@
+package com.kyochigo.economy.managers;
+
+import com.kyochigo.economy.KyochigoPlugin;
+import com.kyochigo.economy.model.TradeEvent;
+import io.papermc.paper.threadedregions.scheduler.ScheduledTask;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 市场统计引擎 (滚动聚合 + 快照发布)
+ * <p>
+ * 职责：
+ * 1. 作为成交日志的关键消费者，成交事件先进入无锁队列，由发布任务单线程增量汇入滚动窗口 (物品按小时桶、玩家按日桶)。
+ * 2. 定时发布不可变快照：各物品 24h/7d 成交量与 VWAP、物品卖家排行、全服卖家排行。
+ * 3. 占位符只读取当前快照，查询为 O(1)，不再遍历 HistoryManager 的 YAML 树。
+ * <p>
+ * 注意：聚合仅保存在内存中，服务器重启后窗口从零开始累积。
+ */
+public class StatisticsManager implements TradeJournal.Sink {
+
+    private static final int HOURS_7D = 168;
+    private static final int DAYS_7D = 7;
+    private static final long HOUR_MS = TimeUnit.HOURS.toMillis(1);
+    private static final long DAY_MS = TimeUnit.DAYS.toMillis(1);
+
+    private final KyochigoPlugin plugin;
+    private final Queue<TradeEvent> pending = new ConcurrentLinkedQueue<>();
+
+    // 以下聚合仅由发布任务线程访问
+    private final Map<String, ItemAggregate> items = new HashMap<>();
+    private final Map<UUID, PlayerAggregate> players = new HashMap<>();
+
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+    private ScheduledTask publishTask;
+
+    public record Ranked(String playerName, double value) {}
+
+    public record ItemStats(long volume24h, long volume7d, double vwap24h, double vwap7d, List<Ranked> topSellers) {
+        public static final ItemStats EMPTY = new ItemStats(0, 0, 0.0, 0.0, List.of());
+    }
+
+    /**
+     * 只读统计快照 (发布后不再修改)
+     */
+    public record Snapshot(long version, long publishedAt, Map<String, ItemStats> items, List<Ranked> topSellers) {
+        public static final Snapshot EMPTY = new Snapshot(0L, 0L, Map.of(), List.of());
+
+        @NotNull
+        public ItemStats getItem(@Nullable String itemKey) {
+            return (itemKey == null) ? ItemStats.EMPTY : items.getOrDefault(itemKey.toLowerCase(), ItemStats.EMPTY);
+        }
+
+        @Nullable
+        public Ranked getTopSeller(int rank) {
+            return (rank >= 1 && rank <= topSellers.size()) ? topSellers.get(rank - 1) : null;
+        }
+    }
+
+    public StatisticsManager(KyochigoPlugin plugin) {
+        this.plugin = plugin;
+    }
+
+    public void start() {
+        stop();
+        long interval = Math.max(20L, plugin.getConfiguration().getStatisticsIntervalTicks());
+        this.publishTask = plugin.getTaskScheduler().runAsyncTimer(this::publish, interval, interval);
+    }
+
+    public void stop() {
+        if (publishTask != null) {
+            publishTask.cancel();
+            publishTask = null;
+        }
+    }
+
+    @Override
+    public @NotNull String name() { return "statistics"; }
+
+    @Override
+    public boolean critical() { return true; }
+
+    /**
+     * 记录一笔成交 (日志线程调用，仅入队)
+     */
+    @Override
+    public void onEvent(@NotNull TradeEvent event) {
+        pending.offer(event);
+    }
+
+    @NotNull
+    public Snapshot getSnapshot() {
+        return snapshot;
+    }
+
+    // =========================================================================
+    // 聚合与发布 (发布任务线程)
+    // =========================================================================
+
+    private synchronized void publish() {
+        TradeEvent trade;
+        while ((trade = pending.poll()) != null) {
+            apply(trade);
+        }
+
+        long now = System.currentTimeMillis();
+        long hour = now / HOUR_MS;
+        long day = now / DAY_MS;
+        int topSize = Math.max(1, plugin.getConfiguration().getStatisticsTopSize());
+
+        Map<String, ItemStats> itemStats = new HashMap<>();
+        items.forEach((key, agg) -> itemStats.put(key, agg.toStats(hour, day, players, topSize)));
+
+        List<Ranked> topSellers = rank(players.entrySet().stream()
+                .map(e -> new Ranked(e.getValue().name, e.getValue().sellTurnover.sum(day)))
+                .toList(), topSize);
+
+        // 清理窗口内已无记录的玩家，避免聚合无限增长
+        players.values().removeIf(p -> p.sellTurnover.sum(day) <= 0);
+        items.values().forEach(agg -> agg.sellers.values().removeIf(b -> b.sum(day) <= 0));
+
+        this.snapshot = new Snapshot(snapshot.version() + 1, now, Map.copyOf(itemStats), topSellers);
+    }
+
+    private void apply(TradeEvent trade) {
+        long hour = trade.timestamp() / HOUR_MS;
+        long day = trade.timestamp() / DAY_MS;
+
+        ItemAggregate item = items.computeIfAbsent(trade.itemKey().toLowerCase(), k -> new ItemAggregate());
+        item.add(hour, trade.amount(), trade.totalPrice());
+        if (trade.isBuy()) return;
+
+        PlayerAggregate player = players.computeIfAbsent(trade.playerId(), k -> new PlayerAggregate());
+        player.name = trade.playerName();
+        player.sellTurnover.add(day, trade.totalPrice());
+        item.sellers.computeIfAbsent(trade.playerId(), k -> new DayBuckets()).add(day, trade.amount());
+    }
+
+    private static List<Ranked> rank(List<Ranked> entries, int limit) {
+        return entries.stream()
+                .filter(r -> r.value() > 0)
+                .sorted(Comparator.comparingDouble(Ranked::value).reversed())
+                .limit(limit)
+                .toList();
+    }
+
+    // =========================================================================
+    // 滚动窗口结构
+    // =========================================================================
+
+    /**
+     * 物品聚合：168 个小时桶 (成交量与成交额) + 卖家日桶
+     */
+    private static final class ItemAggregate {
+        private final long[] volume = new long[HOURS_7D];
+        private final double[] notional = new double[HOURS_7D];
+        private final long[] stamps = new long[HOURS_7D];
+        private final Map<UUID, DayBuckets> sellers = new HashMap<>();
+
+        void add(long hour, int amount, double total) {
+            int slot = (int) (hour % HOURS_7D);
+            if (stamps[slot] != hour) {
+                stamps[slot] = hour;
+                volume[slot] = 0;
+                notional[slot] = 0.0;
+            }
+            volume[slot] += amount;
+            notional[slot] += total;
+        }
+
+        ItemStats toStats(long nowHour, long nowDay, Map<UUID, PlayerAggregate> players, int topSize) {
+            long vol24 = 0, vol7d = 0;
+            double sum24 = 0.0, sum7d = 0.0;
+            for (int i = 0; i < HOURS_7D; i++) {
+                long hour = nowHour - i;
+                int slot = (int) (hour % HOURS_7D);
+                if (stamps[slot] != hour) continue;
+                vol7d += volume[slot];
+                sum7d += notional[slot];
+                if (i < 24) {
+                    vol24 += volume[slot];
+                    sum24 += notional[slot];
+                }
+            }
+
+            List<Ranked> top = new ArrayList<>();
+            sellers.forEach((uuid, buckets) -> {
+                PlayerAggregate player = players.get(uuid);
+                top.add(new Ranked(player != null ? player.name : uuid.toString(), buckets.sum(nowDay)));
+            });
+
+            return new ItemStats(vol24, vol7d,
+                    vol24 > 0 ? sum24 / vol24 : 0.0,
+                    vol7d > 0 ? sum7d / vol7d : 0.0,
+                    rank(top, topSize));
+        }
+    }
+
+    private static final class PlayerAggregate {
+        String name;
+        final DayBuckets sellTurnover = new DayBuckets();
+    }
+
+    /**
+     * 7 个日桶的滚动累加器
+     */
+    private static final class DayBuckets {
+        private final double[] values = new double[DAYS_7D];
+        private final long[] stamps = new long[DAYS_7D];
+
+        void add(long day, double value) {
+            int slot = (int) (day % DAYS_7D);
+            if (stamps[slot] != day) {
+                stamps[slot] = day;
+                values[slot] = 0.0;
+            }
+            values[slot] += value;
+        }
+
+        double sum(long nowDay) {
+            double sum = 0.0;
+            for (int i = 0; i < DAYS_7D; i++) {
+                long day = nowDay - i;
+                int slot = (int) (day % DAYS_7D);
+                if (stamps[slot] == day) sum += values[slot];
+            }
+            return sum;
+        }
+    }
+}
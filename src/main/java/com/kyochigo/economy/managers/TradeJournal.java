@@ -0,0 +1,306 @@
+package com.kyochigo.economy.managers;
+
+import com.kyochigo.economy.KyochigoPlugin;
+import com.kyochigo.economy.model.TradeEvent;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+
+/**
+ * 成交事件日志 (有界无锁环形缓冲 + 独立异步消费者)
+ * <p>
+ * 职责：
+ * 1. 交易提交路径只做一次 publish (原子领号 + 写槽位)，不在调用线程执行任何 I/O。
+ * 2. 每个消费者拥有独立线程与读取序号，历史、统计、审计、指标、外部接收器互不影响。
+ * 3. 关键消费者 (critical) 参与门控：缓冲区写满时发布方至多等待 PUBLISH_WAIT_NANOS；
+ *    仍未追上 (磁盘缓慢、线程已退出) 则把即将被覆盖的事件转存到该消费者的溢出队列后照常写入，
+ *    发布方不会被无限期阻塞，关键消费者也不丢事件；
+ *    非关键消费者不参与门控，落后超过缓冲容量时直接跳到最旧的可用事件并累计丢弃数。
+ * 4. 消费者空闲时挂起，由 publish 按需唤醒，不做定时轮询。
+ */
+public class TradeJournal {
+
+    /**
+     * 成交事件接收器 (SPI)
+     * 其他插件可通过 KyochigoPlugin#getTradeJournal().register(...) 挂接本地接收器。
+     */
+    public interface Sink {
+        @NotNull String name();
+
+        void onEvent(@NotNull TradeEvent event) throws Exception;
+
+        /** 一批连续事件处理完毕、缓冲区暂时为空时回调，适合批量刷盘 */
+        default void onBatchEnd() throws Exception {}
+
+        /** 关键接收器参与门控，不会丢失事件 */
+        default boolean critical() { return false; }
+    }
+
+    /**
+     * 消费者运行状态 (只读视图)
+     */
+    public record ConsumerStats(String name, boolean critical, long processed, long dropped, long spilled, long lag) {}
+
+    // 发布方等待关键消费者的上限；超时后转存溢出队列
+    private static final long PUBLISH_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(2);
+    private static final long PUBLISH_SPIN_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    // 消费者挂起的兜底超时 (唤醒丢失时的自愈)，正常情况下由 publish 唤醒
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    // 关键接收器处理失败时的重试间隔 (毫秒)，全部失败后将事件完整写入服务器日志
+    private static final long[] CRITICAL_RETRY_MS = {50L, 250L, 1000L};
+
+    private final KyochigoPlugin plugin;
+    private final int capacity;
+    private final int mask;
+    private final AtomicReferenceArray<TradeEvent> slots;
+    private final AtomicLongArray published;
+    private final AtomicLong claim = new AtomicLong();
+    private final List<Consumer> consumers = new CopyOnWriteArrayList<>();
+    private volatile boolean running = false;
+
+    public TradeJournal(KyochigoPlugin plugin, int requestedCapacity) {
+        this.plugin = plugin;
+        int size = 64;
+        while (size < requestedCapacity) size <<= 1;
+        this.capacity = size;
+        this.mask = capacity - 1;
+        this.slots = new AtomicReferenceArray<>(capacity);
+        this.published = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) published.set(i, -1L);
+    }
+
+    public synchronized void start() {
+        running = true;
+        consumers.forEach(Consumer::start);
+    }
+
+    /**
+     * 停止所有消费者 (先处理完已发布的事件再退出)
+     */
+    public synchronized void stop() {
+        running = false;
+        for (Consumer consumer : consumers) {
+            LockSupport.unpark(consumer.thread);
+            try {
+                consumer.thread.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * 注册接收器，从当前发布位置开始消费
+     */
+    public synchronized void register(@NotNull Sink sink) {
+        Consumer consumer = new Consumer(sink, claim.get());
+        consumers.add(consumer);
+        if (running) consumer.start();
+    }
+
+    public void unregister(@NotNull Sink sink) {
+        consumers.removeIf(c -> {
+            if (c.sink != sink) return false;
+            c.active = false;
+            LockSupport.unpark(c.thread);
+            return true;
+        });
+    }
+
+    /**
+     * 发布成交事件 (任意线程；关键消费者落后整个缓冲区时至多等待 PUBLISH_WAIT_NANOS)
+     */
+    public void publish(@NotNull TradeEvent event) {
+        if (!running) {
+            plugin.getLogger().warning("成交日志已停止，事件未被消费: " + event);
+        }
+        long seq = claim.getAndIncrement();
+        int index = (int) (seq & mask);
+        long overwritten = seq - capacity;
+        if (overwritten >= 0 && overwritten >= minCriticalSequence()) {
+            long deadline = System.nanoTime() + PUBLISH_WAIT_NANOS;
+            while (overwritten >= minCriticalSequence() && System.nanoTime() < deadline) {
+                signalConsumers();
+                LockSupport.parkNanos(PUBLISH_SPIN_NANOS);
+            }
+            if (overwritten >= minCriticalSequence()) spill(index, overwritten);
+        }
+        // 先作废槽位序号再覆盖：消费者读取槽位后的复查必然发现覆盖，不会以旧序号处理新事件
+        published.set(index, -1L);
+        slots.set(index, event);
+        published.set(index, seq);
+        signalConsumers();
+    }
+
+    /**
+     * 将即将被覆盖的事件转存到尚未消费它的关键消费者 (须在覆盖槽位之前完成)
+     */
+    private void spill(int index, long overwritten) {
+        // 等待前一轮的发布方写完该槽位 (只有并发发布方相差整个缓冲区时才会发生)
+        while (published.get(index) < overwritten) Thread.onSpinWait();
+        TradeEvent old = slots.get(index);
+        for (Consumer consumer : consumers) {
+            if (!consumer.sink.critical() || !consumer.active || consumer.sequence.get() > overwritten) continue;
+            consumer.overflow.put(overwritten, old);
+            if (consumer.spilled++ == 0) {
+                plugin.getLogger().warning("成交日志接收器 [" + consumer.sink.name() + "] 落后超过缓冲容量，事件转存至溢出队列 (发布方不再等待)。");
+            }
+        }
+    }
+
+    private void signalConsumers() {
+        for (Consumer consumer : consumers) {
+            if (consumer.parked) LockSupport.unpark(consumer.thread);
+        }
+    }
+
+    public long getPublishedCount() {
+        return claim.get();
+    }
+
+    public List<ConsumerStats> getConsumerStats() {
+        long head = claim.get();
+        return consumers.stream()
+                .map(c -> new ConsumerStats(c.sink.name(), c.sink.critical(), c.processed, c.dropped, c.spilled,
+                        Math.max(0, head - c.sequence.get())))
+                .toList();
+    }
+
+    private long minCriticalSequence() {
+        long min = Long.MAX_VALUE;
+        for (Consumer consumer : consumers) {
+            if (consumer.sink.critical() && consumer.active) min = Math.min(min, consumer.sequence.get());
+        }
+        return min == Long.MAX_VALUE ? claim.get() : min;
+    }
+
+    // =========================================================================
+    // 消费者线程
+    // =========================================================================
+
+    private final class Consumer implements Runnable {
+        final Sink sink;
+        final AtomicLong sequence;
+        final Thread thread;
+        volatile boolean active = true;
+        volatile boolean parked = false;
+        volatile long processed;
+        volatile long dropped;
+        volatile long spilled;
+        // 关键消费者的溢出队列：序号 -> 事件 (槽位被覆盖前由发布方转存)
+        final ConcurrentSkipListMap<Long, TradeEvent> overflow = new ConcurrentSkipListMap<>();
+
+        Consumer(Sink sink, long start) {
+            this.sink = sink;
+            this.sequence = new AtomicLong(start);
+            this.thread = new Thread(this, "Kyochigo-Journal-" + sink.name());
+            this.thread.setDaemon(true);
+        }
+
+        void start() {
+            if (!thread.isAlive()) thread.start();
+        }
+
+        @Override
+        public void run() {
+            try {
+                loop();
+            } finally {
+                // 线程退出后不再参与门控，发布方不会为其等待
+                active = false;
+            }
+        }
+
+        private void loop() {
+            boolean inBatch = false;
+            while (active) {
+                long next = sequence.get();
+                int index = (int) (next & mask);
+                long available = published.get(index);
+
+                if (available == next) {
+                    TradeEvent event = slots.get(index);
+                    // 读取期间槽位未被覆盖才处理 (发布方覆盖前先将序号置为 -1，复查即可发现)
+                    if (published.get(index) == next) {
+                        dispatch(event);
+                        processed++;
+                        sequence.set(next + 1);
+                        if (!overflow.isEmpty()) overflow.headMap(next, true).clear();
+                        inBatch = true;
+                        continue;
+                    }
+                    available = published.get(index);
+                }
+
+                // 关键消费者被覆盖：该事件已由发布方转存到溢出队列
+                if (available > next && sink.critical()) {
+                    TradeEvent spilledEvent = overflow.remove(next);
+                    if (spilledEvent != null) {
+                        dispatch(spilledEvent);
+                        processed++;
+                        sequence.set(next + 1);
+                        inBatch = true;
+                        continue;
+                    }
+                }
+
+                // 非关键消费者被覆盖：跳到最旧的可用事件
+                if (available > next && !sink.critical()) {
+                    long resume = Math.max(next + 1, claim.get() - capacity);
+                    dropped += resume - next;
+                    sequence.set(resume);
+                    continue;
+                }
+
+                if (inBatch) {
+                    endBatch();
+                    inBatch = false;
+                }
+                if (!running && next >= claim.get()) break;
+                // 先声明挂起再复查，避免与 publish 的唤醒错过
+                parked = true;
+                if (published.get(index) == next || !running || !active) {
+                    parked = false;
+                    continue;
+                }
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                parked = false;
+            }
+            if (inBatch) endBatch();
+        }
+
+        private void dispatch(TradeEvent event) {
+            int attempt = 0;
+            while (true) {
+                try {
+                    sink.onEvent(event);
+                    return;
+                } catch (Throwable t) {
+                    if (!sink.critical() || attempt >= CRITICAL_RETRY_MS.length) {
+                        plugin.getLogger().log(Level.WARNING, "成交日志接收器 [" + sink.name() + "] 处理事件失败", t);
+                        // 关键接收器重试仍失败：至少在服务器日志中留下完整记录以便补录
+                        if (sink.critical()) plugin.getLogger().severe("[" + sink.name() + "] 未能写入的成交: " + event);
+                        return;
+                    }
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(CRITICAL_RETRY_MS[attempt++]));
+                }
+            }
+        }
+
+        private void endBatch() {
+            try {
+                sink.onBatchEnd();
+            } catch (Throwable t) {
+                plugin.getLogger().log(Level.WARNING, "成交日志接收器 [" + sink.name() + "] 批量提交失败", t);
+            }
+        }
+    }
+}
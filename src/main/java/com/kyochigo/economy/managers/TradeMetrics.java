@@ -0,0 +1,47 @@
+package com.kyochigo.economy.managers;
+
+import com.kyochigo.economy.model.TradeEvent;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 成交指标 (成交日志的非关键消费者)
+ * 职责：累计自启动以来的买入/卖出笔数、数量与成交额，供状态指令展示。
+ */
+public class TradeMetrics implements TradeJournal.Sink {
+
+    private final LongAdder buyTrades = new LongAdder();
+    private final LongAdder sellTrades = new LongAdder();
+    private final LongAdder buyUnits = new LongAdder();
+    private final LongAdder sellUnits = new LongAdder();
+    private final DoubleAdder buyTurnover = new DoubleAdder();
+    private final DoubleAdder sellTurnover = new DoubleAdder();
+    private volatile long lastTradeAt = 0L;
+
+    public record Snapshot(long buyTrades, long sellTrades, long buyUnits, long sellUnits,
+                           double buyTurnover, double sellTurnover, long lastTradeAt) {}
+
+    @Override
+    public @NotNull String name() { return "metrics"; }
+
+    @Override
+    public void onEvent(@NotNull TradeEvent event) {
+        if (event.isBuy()) {
+            buyTrades.increment();
+            buyUnits.add(event.amount());
+            buyTurnover.add(event.totalPrice());
+        } else {
+            sellTrades.increment();
+            sellUnits.add(event.amount());
+            sellTurnover.add(event.totalPrice());
+        }
+        lastTradeAt = event.timestamp();
+    }
+
+    public Snapshot snapshot() {
+        return new Snapshot(buyTrades.sum(), sellTrades.sum(), buyUnits.sum(), sellUnits.sum(),
+                buyTurnover.sum(), sellTurnover.sum(), lastTradeAt);
+    }
+}
@@ -1,23 +1,30 @@
 package com.kyochigo.economy.managers;
 
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
 import com.kyochigo.economy.KyochigoPlugin;
 import com.kyochigo.economy.TradeData;
 import com.kyochigo.economy.gui.TransactionDialog;
 import com.kyochigo.economy.model.MarketItem;
-import net.milkbowl.vault.economy.Economy;
-import org.bukkit.Bukkit;
+import com.kyochigo.economy.model.TradeEvent;
+import com.kyochigo.economy.utils.RateLimiter;
 import org.bukkit.Sound;
 import org.bukkit.entity.Player;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * 交易执行管理器 (v4.1 逻辑对齐版)
  * 职责：管理交易生命周期，确保后端计价与 Java 侧资产交换的绝对一致性。
+ * 资产交换经由 AssetTransaction 两阶段完成：本地预留 -> 后端记账 -> 本地提交，任一步失败即补偿退回。
  */
 public class TransactionManager {
 
@@ -26,6 +33,9 @@ public class TransactionManager {
     private static final String ERR_BACKEND = "§c计算失败：后端核心未响应。";
     private static final String ERR_LOCK_FAIL = "§c§l致命错误：§f价格锁定失败，交易被安全拦截！";
     private static final String ERR_PROCESSING = "§6请稍候，上一笔业务正在结算中...";
+    private static final String ERR_RATE_LIMITED = "§c操作过于频繁，请稍后再试。";
+    private static final String ERR_NO_ECONOMY = "§c严重错误：经济系统未就绪。";
+    private static final String ERR_CLOSING = "§c市场正在关闭，交易已取消，预留的资产已退回。";
     private static final String MSG_LOCKING = "§7正在接入核心执行资产结算...";
 
     private final KyochigoPlugin plugin;
@@ -33,23 +43,30 @@ public class TransactionManager {
     private final BackendManager backendManager;
     private final HistoryManager historyManager;
     
-    private Economy economy;
+    private VaultAdapter vault;
     private final Map<UUID, TradeData> tradeCache;
     
     // 交易互斥锁
     private final Set<UUID> processingPlayers = Collections.newSetFromMap(new ConcurrentHashMap<>());
 
-    public TransactionManager(KyochigoPlugin plugin, InventoryManager inv, BackendManager backend, Economy eco, Map<UUID, TradeData> cache) {
+    // 尚未结束的资产事务 (停用时据此退回仍处于预留状态的资产)
+    private final Set<AssetTransaction> openTransactions = ConcurrentHashMap.newKeySet();
+    private volatile boolean closing = false;
+
+    // 成交编号：以启动时刻 (微秒) 为起点单调递增，跨重启不重复
+    private final AtomicLong tradeIds = new AtomicLong(System.currentTimeMillis() * 1000L);
+
+    public TransactionManager(KyochigoPlugin plugin, InventoryManager inv, BackendManager backend, VaultAdapter vault, Map<UUID, TradeData> cache) {
         this.plugin = plugin;
         this.inventoryManager = inv;
         this.backendManager = backend;
-        this.economy = eco;
+        this.vault = vault;
         this.tradeCache = cache;
         this.historyManager = plugin.getHistoryManager();
     }
 
-    public void setEconomy(Economy economy) {
-        this.economy = economy;
+    public void setVault(VaultAdapter vault) {
+        this.vault = vault;
     }
 
     // =========================================================================
@@ -60,32 +77,33 @@ public class TransactionManager {
     public void openSellConfirmDialog(Player p, MarketItem i, int amt) { requestPriceAndOpen(p, i, amt, "sell"); }
 
     private void requestPriceAndOpen(Player player, MarketItem item, int amount, String action) {
-        // 向 Rust 后端请求实时报价
-        backendManager.sendCalculateRequest(player, action, item.getConfigKey(), (double) amount,
-                item.getBasePrice(), item.getLambda(), null, true, response -> {
-                    
-                    Bukkit.getScheduler().runTask(plugin, () -> {
-                        if (response == null || !response.has("totalPrice")) {
-                            sendMsg(player, ERR_BACKEND);
-                            return;
-                        }
-
-                        double unitPrice = response.get("unitPriceAvg").getAsDouble();
-                        double currentEnv = response.get("envIndex").getAsDouble(); 
-
-                        // 创建交易快照，锁定环境指数以防在确认期间发生变动
-                        TradeData data = new TradeData(item.getConfigKey(), item.getPlainDisplayName(), 
-                            item.getMaterial().name(), amount, unitPrice, 
-                            response.get("totalPrice").getAsDouble(), 
-                            currentEnv, action.equals("buy"));
-
-                        tradeCache.put(player.getUniqueId(), data);
-
-                        // 统一术语：调用对齐后的 Dialog
-                        if (data.isBuy) TransactionDialog.openBuyConfirm(player, item, amount, unitPrice);
-                        else TransactionDialog.openSellConfirm(player, item, amount, unitPrice);
-                    });
-                });
+        if (!plugin.checkRateLimit(player.getUniqueId(), RateLimiter.Action.QUOTE)) {
+            sendMsg(player, ERR_RATE_LIMITED);
+            return;
+        }
+
+        // 向 Rust 后端请求实时报价 (预览走报价缓存，同一行情版本内重复点击不再访问后端)
+        // 回调已由分发器在主线程执行
+        backendManager.requestPreviewQuote(player, item, amount, action.equals("buy"), quote -> {
+            if (quote == null) {
+                sendMsg(player, ERR_BACKEND);
+                return;
+            }
+
+            double unitPrice = quote.unitPriceAvg();
+
+            // 创建交易快照，锁定环境指数以防在确认期间发生变动
+            TradeData data = new TradeData(item.getConfigKey(), item.getPlainDisplayName(), 
+                item.getMaterial().name(), amount, unitPrice, 
+                quote.totalPrice(), 
+                quote.envIndex(), action.equals("buy"));
+
+            tradeCache.put(player.getUniqueId(), data);
+
+            // 统一术语：调用对齐后的 Dialog
+            if (data.isBuy) TransactionDialog.openBuyConfirm(player, item, amount, unitPrice);
+            else TransactionDialog.openSellConfirm(player, item, amount, unitPrice);
+        });
     }
 
     // =========================================================================
@@ -94,127 +112,299 @@ public class TransactionManager {
 
     public void executeTransaction(Player player, MarketItem item, int amount) {
         UUID uuid = player.getUniqueId();
-        
+        if (closing) return;
+
         if (processingPlayers.contains(uuid)) {
             sendMsg(player, ERR_PROCESSING);
             return;
         }
 
+        if (!plugin.checkRateLimit(uuid, RateLimiter.Action.COMMIT)) {
+            sendMsg(player, ERR_RATE_LIMITED);
+            return;
+        }
+
         TradeData snapshot = tradeCache.get(uuid);
         if (snapshot == null) {
             sendMsg(player, ERR_EXPIRED);
             return;
         }
 
-        if (economy == null) {
-            sendMsg(player, "§c严重错误：经济系统未就绪。");
+        if (vault == null) {
+            sendMsg(player, ERR_NO_ECONOMY);
             return;
         }
 
-        // 数量与限额验证
-        int finalAmount = calculateAdjustedAmount(player, item, amount);
+        // 数量与限额验证 (同时占用今日额度，结算或撤销时转正 / 归还)
+        int finalAmount = reserveQuota(player, item, amount);
         if (finalAmount <= 0) return;
-        if (!isAssetCheckPassed(player, item, finalAmount, snapshot.isBuy)) return;
 
+        // 阶段一：本地预留 (买入预扣资金，卖出先扣物品)，预留失败则不向后端提交
         processingPlayers.add(uuid);
-        sendMsg(player, MSG_LOCKING);
-        
-        // 正式提交：使用快照中的环境指数进行锁定汇率计算
-        backendManager.sendCalculateRequest(player, snapshot.isBuy ? "buy" : "sell", item.getConfigKey(), 
-            (double) finalAmount, item.getBasePrice(), item.getLambda(), snapshot.envIndex, false, response -> {
-                
-                Bukkit.getScheduler().runTask(plugin, () -> {
-                    try {
-                        if (response == null || !response.has("totalPrice")) {
-                            sendMsg(player, ERR_LOCK_FAIL);
-                            return;
-                        }
-                        
-                        double finalPrice = response.get("totalPrice").getAsDouble();
-                        finalizeAssetSwap(player, item, snapshot, finalAmount, finalPrice);
-                    } finally {
+        AssetTransaction tx = newTransaction(player, item, finalAmount, snapshot.isBuy);
+        tx.reserve(snapshot.unitPrice * finalAmount).whenComplete((reserved, error) -> {
+            if (error != null || !Boolean.TRUE.equals(reserved)) {
+                releaseQuota(player, tx);
+                openTransactions.remove(tx);
+                processingPlayers.remove(uuid);
+                sendMsg(player, error != null ? ERR_LOCK_FAIL : "§c" + tx.getFailure());
+                return;
+            }
+            // 预留完成时插件已开始停用：不再提交后端，直接退回
+            if (closing) {
+                abandon(player, tx);
+                processingPlayers.remove(uuid);
+                return;
+            }
+            sendMsg(player, MSG_LOCKING);
+
+            // 阶段二：后端正式记账 (使用快照中的环境指数进行锁定汇率计算)，随后本地提交或补偿
+            backendManager.sendCalculateRequest(player, snapshot.isBuy ? "buy" : "sell", item.getConfigKey(),
+                (double) finalAmount, item.getBasePrice(), item.getLambda(), snapshot.envIndex, false, response -> {
+                    // 回调已由分发器在拥有该玩家的区域线程执行
+                    if (response == null || !response.has("totalPrice")) sendMsg(player, ERR_LOCK_FAIL);
+                    settle(player, tx, response).whenComplete((settled, settleError) -> {
+                        if (Boolean.TRUE.equals(settled)) handleTransactionSuccess(player, tx, snapshot.envIndex);
                         processingPlayers.remove(uuid);
                         tradeCache.remove(uuid);
-                    }
+                    });
                 });
-            });
+        });
     }
 
     // =========================================================================
-    // 3. 资产交换逻辑 (安全排序)
+    // 3. 批量出售 (各物品独立预留，一次后端请求，逐条提交或补偿)
     // =========================================================================
 
-    private void finalizeAssetSwap(Player player, MarketItem item, TradeData snapshot, int amount, double price) {
-        if (snapshot.isBuy && !economy.has(player, price)) {
-            sendMsg(player, "§c账户余额不足，购买取消。");
+    /**
+     * 出售背包中指定物品的全部持有量
+     * 物品在提交前已从背包扣除，同一玩家的多次批量出售可并行在途，互不重复结算。
+     */
+    public void executeBatchSell(Player player, List<MarketItem> items) {
+        if (closing) return;
+        if (vault == null) {
+            sendMsg(player, ERR_NO_ECONOMY);
+            return;
+        }
+        if (!plugin.checkRateLimit(player.getUniqueId(), RateLimiter.Action.SELLALL)) {
+            sendMsg(player, ERR_RATE_LIMITED);
+            return;
+        }
+
+        double envIndex = plugin.getMarketManager().getLastEnvIndex();
+        List<AssetTransaction> reserved = new ArrayList<>();
+        List<TradeData> trades = new ArrayList<>();
+        for (MarketItem item : items) {
+            if (!item.isAllowSell()) continue;
+            int held = inventoryManager.countItems(player, item);
+            if (held <= 0) continue;
+            int amount = reserveQuota(player, item, held);
+            if (amount <= 0) continue;
+
+            // 卖出预留只操作背包，在当前线程同步完成
+            AssetTransaction tx = newTransaction(player, item, amount, false);
+            if (!tx.reserve(0.0).getNow(false)) {
+                releaseQuota(player, tx);
+                openTransactions.remove(tx);
+                continue;
+            }
+            reserved.add(tx);
+            trades.add(new TradeData(item.getConfigKey(), item.getPlainDisplayName(), item.getMaterial().name(),
+                    amount, item.getSellPrice(), item.getSellPrice() * amount, envIndex, false));
+        }
+
+        if (reserved.isEmpty()) {
+            sendMsg(player, "§7背包中没有可出售的市场物品。");
             return;
         }
+        sendMsg(player, MSG_LOCKING);
+
+        backendManager.sendBatchSellRequest(player, trades, response -> {
+            JsonArray results = (response != null && response.has("results")) ? response.getAsJsonArray("results") : null;
+            List<CompletableFuture<Boolean>> settlements = new ArrayList<>(reserved.size());
+            for (int i = 0; i < reserved.size(); i++) {
+                JsonObject result = (results != null && i < results.size() && results.get(i).isJsonObject())
+                        ? results.get(i).getAsJsonObject() : null;
+                if (result != null && result.has("success") && !result.get("success").getAsBoolean()) result = null;
+                settlements.add(settle(player, reserved.get(i), result));
+            }
+
+            CompletableFuture.allOf(settlements.toArray(CompletableFuture[]::new)).whenComplete((ignored, error) -> {
+                int settled = 0;
+                double income = 0.0;
+                for (int i = 0; i < reserved.size(); i++) {
+                    if (!Boolean.TRUE.equals(settlements.get(i).getNow(false))) continue;
+                    AssetTransaction tx = reserved.get(i);
+                    recordTrade(player, tx, envIndex);
+                    settled++;
+                    income += tx.getSettledPrice();
+                }
 
-        if (snapshot.isBuy) {
-            // 购买：先扣钱，确保资金到账再发货
-            economy.withdrawPlayer(player, price);
-            inventoryManager.giveItems(player, item, amount);
-            handleTransactionSuccess(player, item, amount, price, true);
-        } else {
-            // 售卖：先扣货，扣除成功后再给钱（防止刷物品）
-            if (inventoryManager.removeItems(player, item, amount)) {
-                economy.depositPlayer(player, price);
-                handleTransactionSuccess(player, item, amount, price, false);
+                if (settled == 0) {
+                    sendMsg(player, ERR_LOCK_FAIL);
+                    return;
+                }
+                player.playSound(player.getLocation(), Sound.ENTITY_EXPERIENCE_ORB_PICKUP, 1f, 1f);
+                String refunded = settled < reserved.size() ? String.format(" §7(%d 项未成交，物品已退回)", reserved.size() - settled) : "";
+                sendMsg(player, String.format("§a§l批量出售成功！ §f获得 §a+%.2f §6⛁ §7(%d 项)%s", income, settled, refunded));
+            });
+        });
+    }
+
+    /**
+     * 依据后端记账结果提交或补偿 (response 为 null 或缺少 totalPrice 视为后端拒绝)
+     * @return true 表示已按最终成交价完成本地结算
+     */
+    private CompletableFuture<Boolean> settle(Player player, AssetTransaction tx, JsonObject response) {
+        return settleReserved(player, tx, response).whenComplete((settled, error) -> openTransactions.remove(tx));
+    }
+
+    private CompletableFuture<Boolean> settleReserved(Player player, AssetTransaction tx, JsonObject response) {
+        // 停用流程已退回该事务的预留资产 (回执晚于停用到达)
+        if (tx.getState() != AssetTransaction.State.RESERVED) {
+            if (response != null && response.has("totalPrice")) {
+                plugin.getLogger().severe(String.format("后端回执晚于资产退回，后端已记账需人工对账: player=%s item=%s amount=%d side=%s price=%.2f",
+                        player.getName(), tx.getItem().getConfigKey(), tx.getAmount(), tx.isBuy() ? "buy" : "sell",
+                        response.get("totalPrice").getAsDouble()));
+            }
+            return CompletableFuture.completedFuture(false);
+        }
+        if (response == null || !response.has("totalPrice")) {
+            return tx.compensate().thenApply(v -> {
+                releaseQuota(player, tx);
+                return false;
+            });
+        }
+        double finalPrice = response.get("totalPrice").getAsDouble();
+        return tx.commit(finalPrice).thenApply(committed -> {
+            if (committed) {
+                commitQuota(player, tx);
             } else {
-                sendMsg(player, "§c§l交易失败：§f物品状态异常（可能已离开背包）。");
+                releaseQuota(player, tx);
+                reportSettlementFailure(player, tx, finalPrice);
             }
+            return committed;
+        });
+    }
+
+    private AssetTransaction newTransaction(Player player, MarketItem item, int amount, boolean isBuy) {
+        AssetTransaction tx = new AssetTransaction(player, item, amount, isBuy, vault, inventoryManager,
+                plugin.getTaskScheduler(), plugin.getPendingDeliveryManager());
+        openTransactions.add(tx);
+        return tx;
+    }
+
+    /**
+     * 放弃尚未提交后端的事务：退回预留资产并归还额度
+     */
+    private void abandon(Player player, AssetTransaction tx) {
+        openTransactions.remove(tx);
+        tx.compensate();
+        releaseQuota(player, tx);
+        sendMsg(player, ERR_CLOSING);
+    }
+
+    // =========================================================================
+    // 停用
+    // =========================================================================
+
+    /**
+     * 停用时收尾 (需在 VaultAdapter 关闭前调用，且分发器已同步执行完剩余回执)
+     * 1. 拒绝新的交易；
+     * 2. 仍在等待后端回执的事务立即退回预留资产 (后端可能已记账，留下对账日志)；
+     * 3. 正在预留或结算中的事务在限定时间内等待其自行走完 (TaskScheduler 停用模式下结果就地交付)。
+     */
+    public void shutdown(long timeoutMillis) {
+        closing = true;
+        for (AssetTransaction tx : List.copyOf(openTransactions)) {
+            if (tx.getState() != AssetTransaction.State.RESERVED) continue;
+            plugin.getLogger().warning(String.format("停用时交易未收到后端回执，预留资产已退回 (后端若已记账需人工对账): item=%s amount=%d side=%s",
+                    tx.getItem().getConfigKey(), tx.getAmount(), tx.isBuy() ? "buy" : "sell"));
+            abandon(tx.getPlayer(), tx);
         }
+
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (!openTransactions.isEmpty() && System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(10L);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        for (AssetTransaction tx : openTransactions) {
+            plugin.getLogger().severe(String.format("停用时交易仍未结束，需人工核对: player=%s item=%s amount=%d side=%s state=%s",
+                    tx.getPlayer().getName(), tx.getItem().getConfigKey(), tx.getAmount(), tx.isBuy() ? "buy" : "sell", tx.getState()));
+        }
+        processingPlayers.clear();
     }
 
     // =========================================================================
     // 4. 辅助验证
     // =========================================================================
 
-    private int calculateAdjustedAmount(Player player, MarketItem item, int amount) {
-        int limit = plugin.getConfiguration().getItemDailyLimit(item.getConfigKey());
+    /**
+     * 按剩余额度调整数量并占用今日限额 (在途交易的预留同样计入已用量)
+     * @return 可交易数量，0 表示额度已用尽
+     */
+    private int reserveQuota(Player player, MarketItem item, int amount) {
+        int limit = item.getDailyLimit();
         if (limit <= 0) return amount;
 
-        int traded = historyManager.getDailyTradeCount(player.getUniqueId().toString(), item.getConfigKey());
-        if (traded >= limit) {
+        int granted = historyManager.reserveDaily(player.getUniqueId().toString(), item.getConfigKey(), amount, limit);
+        if (granted <= 0) {
             sendMsg(player, "§c§l业务拒绝！§7今日额度已达上限 (§f" + limit + "§7)。");
             return 0;
         }
-        
-        if (traded + amount > limit) {
-            int adjusted = limit - traded;
-            sendMsg(player, "§e提示: §7受限于配额，交易数量已调整为 §a" + adjusted + " §7个。");
-            return adjusted;
+        if (granted < amount) {
+            sendMsg(player, "§e提示: §7受限于配额，交易数量已调整为 §a" + granted + " §7个。");
         }
-        return amount;
+        return granted;
     }
 
-    private boolean isAssetCheckPassed(Player player, MarketItem item, int amount, boolean isBuy) {
-        if (isBuy) {
-            if (!inventoryManager.hasSpaceForItem(player, item, amount)) {
-                sendMsg(player, "§c行囊空间不足，请清理后再试。");
-                return false;
-            }
-        } else {
-            if (!inventoryManager.hasEnoughItems(player, item, amount)) {
-                sendMsg(player, "§c所需物资数量不足。");
-                return false;
-            }
-        }
-        return true;
+    /**
+     * 成交：额度预留转为正式计数 (无限额物品直接累加计数)
+     */
+    private void commitQuota(Player player, AssetTransaction tx) {
+        String uuid = player.getUniqueId().toString();
+        String key = tx.getItem().getConfigKey();
+        if (tx.getItem().getDailyLimit() > 0) historyManager.commitDaily(uuid, key, tx.getAmount());
+        else historyManager.incrementTradeCount(uuid, key, tx.getAmount());
+    }
+
+    private void releaseQuota(Player player, AssetTransaction tx) {
+        if (tx.getItem().getDailyLimit() <= 0) return;
+        historyManager.releaseDaily(player.getUniqueId().toString(), tx.getItem().getConfigKey(), tx.getAmount());
     }
 
-    private void handleTransactionSuccess(Player p, MarketItem item, int amt, double price, boolean isBuy) {
+    private void handleTransactionSuccess(Player p, AssetTransaction tx, double envIndex) {
         p.playSound(p.getLocation(), Sound.ENTITY_EXPERIENCE_ORB_PICKUP, 1f, 1f);
         
-        String actionText = isBuy ? "§a§l购买成功" : "§a§l售卖成功";
-        String moneyText = isBuy ? "§f支出 §c-" : "§f获得 §a+";
+        String actionText = tx.isBuy() ? "§a§l购买成功" : "§a§l售卖成功";
+        String moneyText = tx.isBuy() ? "§f支出 §c-" : "§f获得 §a+";
         
         // 消息对齐 GUI 风格
-        sendMsg(p, String.format("%s！ %s%.2f §6⛁ §7(x%d)", actionText, moneyText, price, amt));
-        
-        // 记录历史
-        historyManager.incrementTradeCount(p.getUniqueId().toString(), item.getConfigKey(), amt);
-        historyManager.saveAsync();
+        sendMsg(p, String.format("%s！ %s%.2f §6⛁ §7(x%d)", actionText, moneyText, tx.getSettledPrice(), tx.getAmount()));
+        recordTrade(p, tx, envIndex);
+    }
+
+    private void recordTrade(Player p, AssetTransaction tx, double envIndex) {
+        // 本服成交已改变后端热度，该物品的预览报价立即失效
+        backendManager.getQuoteCache().invalidate(tx.getItem().getConfigKey());
+
+        // 发布成交事件：统计、指标、审计与计数落盘由成交日志的异步消费者处理 (计数本身已在 settle 中同步累加)
+        plugin.getTradeJournal().publish(new TradeEvent(tradeIds.incrementAndGet(), p.getUniqueId(), p.getName(),
+                tx.getItem().getConfigKey(), tx.getAmount(), tx.getSettledPrice(), tx.isBuy(), envIndex,
+                tx.getBalanceBefore(), tx.getBalanceAfter(), System.currentTimeMillis()));
+    }
+
+    /**
+     * 后端已记账但本地结算失败 (资产已退回)：通知玩家并留下对账日志
+     */
+    private void reportSettlementFailure(Player p, AssetTransaction tx, double finalPrice) {
+        sendMsg(p, "§c§l交易失败：§f" + tx.getFailure());
+        plugin.getLogger().severe(String.format("本地结算失败，后端已记账需人工对账: player=%s item=%s amount=%d side=%s price=%.2f reason=%s",
+                p.getName(), tx.getItem().getConfigKey(), tx.getAmount(), tx.isBuy() ? "buy" : "sell", finalPrice, tx.getFailure()));
     }
 
     private void sendMsg(Player p, String msg) { p.sendMessage(PREFIX + msg); }
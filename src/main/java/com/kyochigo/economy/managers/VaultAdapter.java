@@ -0,0 +1,178 @@
+package com.kyochigo.economy.managers;
+
+import com.kyochigo.economy.KyochigoPlugin;
+import net.milkbowl.vault.economy.Economy;
+import net.milkbowl.vault.economy.EconomyResponse;
+import org.bukkit.OfflinePlayer;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Map;
+import java.util.OptionalDouble;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.DoubleConsumer;
+import java.util.logging.Level;
+
+/**
+ * Vault 经济异步适配层 (分道单线程执行 + 余额展示缓存)
+ * <p>
+ * 职责：
+ * 1. 所有经济插件调用 (查询余额、扣款、入账) 在专用线程上执行，数据库型经济插件的阻塞不再占用 Tick 时间。
+ * 2. 按玩家 UUID 哈希到固定的执行通道，同一玩家的调用严格按提交顺序执行 (预扣 -> 补扣 / 退款 -> 入账)。
+ * 3. 缓存近期余额供界面展示；本插件发起扣款 / 入账时先使缓存失效，完成后以响应中的余额回填。
+ * 4. 经济插件抛出的异常统一转换为失败的 EconomyResponse，调用方只需检查 transactionSuccess。
+ * <p>
+ * 返回的 Future 在执行通道线程上完成，需要操作玩家时应经 TaskScheduler.resumeOn 切回玩家所属区域。
+ */
+public class VaultAdapter implements Listener {
+
+    private static final int LANES = 4;
+    // 展示用余额的有效期 (本插件的交易会主动刷新，此值只约束外部插件造成的余额变化)
+    private static final long BALANCE_TTL_MS = 10_000L;
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 5L;
+
+    private final KyochigoPlugin plugin;
+    private final Economy economy;
+    private final ExecutorService[] lanes = new ExecutorService[LANES];
+    private final Map<UUID, CachedBalance> balances = new ConcurrentHashMap<>();
+
+    private record CachedBalance(double balance, long expiresAt) {}
+
+    public VaultAdapter(@NotNull KyochigoPlugin plugin, @NotNull Economy economy) {
+        this.plugin = plugin;
+        this.economy = economy;
+        AtomicInteger index = new AtomicInteger();
+        for (int i = 0; i < LANES; i++) {
+            lanes[i] = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "Kyochigo-Vault-" + index.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    @NotNull
+    public Economy getEconomy() {
+        return economy;
+    }
+
+    /**
+     * 停止接收新调用，并等待已提交的扣款 / 入账执行完毕
+     */
+    public void shutdown() {
+        for (ExecutorService lane : lanes) lane.shutdown();
+        try {
+            for (ExecutorService lane : lanes) {
+                if (!lane.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                    plugin.getLogger().warning("Vault 执行通道未能在 " + SHUTDOWN_TIMEOUT_SECONDS + " 秒内排空，剩余经济操作可能丢失。");
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        balances.clear();
+    }
+
+    // =========================================================================
+    // 余额查询
+    // =========================================================================
+
+    /**
+     * 查询实时余额并回填缓存
+     */
+    @NotNull
+    public CompletableFuture<Double> getBalance(@NotNull OfflinePlayer player) {
+        return CompletableFuture.supplyAsync(() -> {
+            double balance = economy.getBalance(player);
+            cache(player.getUniqueId(), balance);
+            return balance;
+        }, laneFor(player.getUniqueId()));
+    }
+
+    /**
+     * 读取展示用余额缓存 (不访问经济插件)
+     */
+    @NotNull
+    public OptionalDouble getCachedBalance(@NotNull UUID uuid) {
+        CachedBalance cached = balances.get(uuid);
+        if (cached == null || cached.expiresAt() <= System.currentTimeMillis()) return OptionalDouble.empty();
+        return OptionalDouble.of(cached.balance());
+    }
+
+    /**
+     * 取得展示用余额：缓存命中时立即回调，否则异步查询后在玩家所属区域线程回调
+     */
+    public void withDisplayBalance(@NotNull Player player, @NotNull DoubleConsumer callback) {
+        OptionalDouble cached = getCachedBalance(player.getUniqueId());
+        if (cached.isPresent()) {
+            callback.accept(cached.getAsDouble());
+            return;
+        }
+        plugin.getTaskScheduler().resumeOn(player, getBalance(player)).thenAccept(callback::accept);
+    }
+
+    public void invalidate(@NotNull UUID uuid) {
+        balances.remove(uuid);
+    }
+
+    // =========================================================================
+    // 扣款 / 入账
+    // =========================================================================
+
+    @NotNull
+    public CompletableFuture<EconomyResponse> withdraw(@NotNull OfflinePlayer player, double amount) {
+        return submit(player, amount, () -> economy.withdrawPlayer(player, amount));
+    }
+
+    @NotNull
+    public CompletableFuture<EconomyResponse> deposit(@NotNull OfflinePlayer player, double amount) {
+        return submit(player, amount, () -> economy.depositPlayer(player, amount));
+    }
+
+    private CompletableFuture<EconomyResponse> submit(OfflinePlayer player, double amount, EconomyCall call) {
+        UUID uuid = player.getUniqueId();
+        invalidate(uuid);
+        return CompletableFuture.supplyAsync(() -> {
+            EconomyResponse res;
+            try {
+                res = call.run();
+            } catch (Throwable t) {
+                plugin.getLogger().log(Level.WARNING, "经济插件调用异常 (" + player.getName() + ")", t);
+                return new EconomyResponse(amount, 0.0, EconomyResponse.ResponseType.FAILURE, "经济插件异常");
+            }
+            if (res == null) {
+                return new EconomyResponse(amount, 0.0, EconomyResponse.ResponseType.FAILURE, "经济插件无响应");
+            }
+            if (res.transactionSuccess()) cache(uuid, res.balance);
+            return res;
+        }, laneFor(uuid));
+    }
+
+    @FunctionalInterface
+    private interface EconomyCall {
+        EconomyResponse run();
+    }
+
+    private ExecutorService laneFor(UUID uuid) {
+        return lanes[Math.floorMod(uuid.hashCode(), LANES)];
+    }
+
+    private void cache(UUID uuid, double balance) {
+        balances.put(uuid, new CachedBalance(balance, System.currentTimeMillis() + BALANCE_TTL_MS));
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onQuit(PlayerQuitEvent e) {
+        invalidate(e.getPlayer().getUniqueId());
+    }
+}
@@ -0,0 +1,39 @@
+package com.kyochigo.economy.model;
+
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.format.TextDecoration;
+import net.kyori.adventure.text.minimessage.MiniMessage;
+import net.kyori.adventure.text.serializer.plain.PlainTextComponentSerializer;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * 市场分类 (Immutable Category)
+ * <p>
+ * 职责：在配置重载时由 categories.&lt;id&gt; 节点一次性编译，
+ * 界面与占位符直接读取字段，不再按 YAML 路径逐次查询与解析 MiniMessage。
+ *
+ * @param id          分类 ID (与物品的 category 字段对应)
+ * @param rawName     原始名称 (MiniMessage 格式，未配置时为 ID)
+ * @param displayName 已解析的名称组件 (已去除斜体，可直接用于物品 Lore 与按钮)
+ * @param plainName   去除格式后的纯文本名称
+ */
+public record Category(String id, String rawName, Component displayName, String plainName) {
+
+    private static final MiniMessage MM = MiniMessage.miniMessage();
+
+    @NotNull
+    public static Category compile(@NotNull String id, @Nullable String rawName) {
+        String raw = (rawName == null || rawName.isEmpty()) ? id : rawName;
+        Component display = MM.deserialize(raw).decoration(TextDecoration.ITALIC, false);
+        return new Category(id, raw, display, PlainTextComponentSerializer.plainText().serialize(display));
+    }
+
+    /**
+     * 未在配置中声明的分类：以 ID 作为名称
+     */
+    @NotNull
+    public static Category fallback(@NotNull String id) {
+        return new Category(id, id, Component.text(id).decoration(TextDecoration.ITALIC, false), id);
+    }
+}
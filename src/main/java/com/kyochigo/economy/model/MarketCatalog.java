@@ -0,0 +1,179 @@
+package com.kyochigo.economy.model;
+
+import com.kyochigo.economy.utils.CraftEngineHook;
+import org.bukkit.Material;
+import org.bukkit.inventory.ItemStack;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 市场名录快照 (Immutable Catalog Generation)
+ * <p>
+ * 职责：
+ * 1. 一次加载产出的完整名录（物品列表、Key 索引、分类索引、预热图标），构建完成后不再修改。
+ * 2. 分类索引与 ID 列表仅在构建时计算一次，按分类渲染/拉取行情时零分配。
+ * 3. 由 MarketManager 通过单次引用替换发布，已打开的菜单继续持有旧快照，不受重载影响。
+ * 4. 为每个物品分配快照内序号 (在物品列表中的下标)，菜单槽位只需保存 int 即可 O(1) 反查物品。
+ * 5. 按 材质 / CraftEngine ID 建立匹配索引，单次遍历背包即可统计全部物品数量。
+ */
+public final class MarketCatalog {
+
+    public static final MarketCatalog EMPTY = new MarketCatalog(0L, List.of(), Map.of());
+
+    private final long generation;
+    private final List<MarketItem> items;
+    private final Map<String, MarketItem> itemByKey;
+    private final Map<String, Integer> ordinalByKey;
+    private final Map<String, ItemStack> icons;
+    private final List<String> itemIds;
+    private final Map<String, List<MarketItem>> itemsByCategory;
+    private final Map<String, List<String>> itemIdsByCategory;
+    private final Map<String, int[]> ordinalsByCategory;
+    private final Map<Material, int[]> ordinalsByMaterial;
+    private final Map<String, int[]> ordinalsByCustomId;
+
+    public MarketCatalog(long generation, List<MarketItem> items, Map<String, ItemStack> icons) {
+        this.generation = generation;
+        this.items = List.copyOf(items);
+        this.icons = Map.copyOf(icons);
+
+        Map<String, MarketItem> byKey = new HashMap<>();
+        Map<String, Integer> ordinals = new HashMap<>();
+        Map<String, List<MarketItem>> byCategory = new LinkedHashMap<>();
+        Map<String, List<Integer>> ordinalLists = new HashMap<>();
+        Map<Material, List<Integer>> materialLists = new EnumMap<>(Material.class);
+        Map<String, List<Integer>> customIdLists = new HashMap<>();
+        for (int ordinal = 0; ordinal < this.items.size(); ordinal++) {
+            MarketItem item = this.items.get(ordinal);
+            String category = item.getCategory().toLowerCase();
+            byKey.put(item.getConfigKey().toLowerCase(), item);
+            ordinals.put(item.getConfigKey(), ordinal);
+            byCategory.computeIfAbsent(category, k -> new ArrayList<>()).add(item);
+            ordinalLists.computeIfAbsent(category, k -> new ArrayList<>()).add(ordinal);
+            indexMatchKey(item, ordinal, materialLists, customIdLists);
+        }
+        this.itemByKey = Map.copyOf(byKey);
+        this.ordinalByKey = Map.copyOf(ordinals);
+        this.itemIds = this.items.stream().map(MarketItem::getConfigKey).toList();
+
+        Map<String, List<MarketItem>> categoryItems = new HashMap<>();
+        Map<String, List<String>> categoryIds = new HashMap<>();
+        byCategory.forEach((category, list) -> {
+            categoryItems.put(category, List.copyOf(list));
+            categoryIds.put(category, list.stream().map(MarketItem::getConfigKey).toList());
+        });
+        this.itemsByCategory = Map.copyOf(categoryItems);
+        this.itemIdsByCategory = Map.copyOf(categoryIds);
+
+        Map<String, int[]> categoryOrdinals = new HashMap<>();
+        ordinalLists.forEach((category, list) ->
+                categoryOrdinals.put(category, list.stream().mapToInt(Integer::intValue).toArray()));
+        this.ordinalsByCategory = Map.copyOf(categoryOrdinals);
+        this.ordinalsByMaterial = toOrdinalArrays(materialLists);
+        this.ordinalsByCustomId = toOrdinalArrays(customIdLists);
+    }
+
+    // 与 MarketItem.matches 保持一致：MATERIAL 按材质名 (忽略大小写)，CRAFTENGINE 按自定义 ID (忽略大小写)
+    private static void indexMatchKey(MarketItem item, int ordinal,
+                                      Map<Material, List<Integer>> materialLists, Map<String, List<Integer>> customIdLists) {
+        switch (item.getItemType()) {
+            case MATERIAL -> {
+                Material material = Material.getMaterial(item.getId().toUpperCase());
+                if (material != null) materialLists.computeIfAbsent(material, k -> new ArrayList<>()).add(ordinal);
+            }
+            case CRAFTENGINE -> customIdLists.computeIfAbsent(item.getId().toLowerCase(), k -> new ArrayList<>()).add(ordinal);
+        }
+    }
+
+    private static <K> Map<K, int[]> toOrdinalArrays(Map<K, List<Integer>> lists) {
+        Map<K, int[]> arrays = new HashMap<>();
+        lists.forEach((key, list) -> arrays.put(key, list.stream().mapToInt(Integer::intValue).toArray()));
+        return Map.copyOf(arrays);
+    }
+
+    public long getGeneration() { return generation; }
+    public List<MarketItem> getItems() { return items; }
+    public List<String> getItemIds() { return itemIds; }
+    public boolean isEmpty() { return items.isEmpty(); }
+    public int size() { return items.size(); }
+
+    @Nullable
+    public MarketItem findByKey(@Nullable String key) {
+        return (key == null) ? null : itemByKey.get(key.toLowerCase());
+    }
+
+    /**
+     * 获取分类下的物品 (分类 ID 忽略大小写，未知分类返回空列表)
+     */
+    @NotNull
+    public List<MarketItem> getItemsByCategory(@Nullable String category) {
+        return (category == null) ? List.of() : itemsByCategory.getOrDefault(category.toLowerCase(), List.of());
+    }
+
+    @NotNull
+    public List<String> getItemIdsByCategory(@Nullable String category) {
+        return (category == null) ? List.of() : itemIdsByCategory.getOrDefault(category.toLowerCase(), List.of());
+    }
+
+    /**
+     * 按快照内序号获取物品 (越界返回 null)
+     */
+    @Nullable
+    public MarketItem getByOrdinal(int ordinal) {
+        return (ordinal >= 0 && ordinal < items.size()) ? items.get(ordinal) : null;
+    }
+
+    /**
+     * 获取物品在本快照中的序号 (不属于本快照的物品返回 -1)
+     */
+    public int ordinalOf(@NotNull MarketItem item) {
+        Integer ordinal = ordinalByKey.get(item.getConfigKey());
+        return (ordinal != null && items.get(ordinal) == item) ? ordinal : -1;
+    }
+
+    /**
+     * 获取分类内第 index 个物品的快照序号 (未知分类或越界返回 -1)
+     */
+    public int getCategoryOrdinal(@Nullable String category, int index) {
+        if (category == null) return -1;
+        int[] ordinals = ordinalsByCategory.get(category.toLowerCase());
+        return (ordinals != null && index >= 0 && index < ordinals.length) ? ordinals[index] : -1;
+    }
+
+    /**
+     * 将一组物品堆叠计入各物品的数量 (counts 以快照序号为下标，长度应为 size())
+     * 匹配规则与 MarketItem.matches 一致，但每个堆叠只做一次索引查找。
+     */
+    public void accumulate(@Nullable ItemStack stack, @Nullable CraftEngineHook hook, int[] counts) {
+        if (stack == null || stack.getType().isAir()) return;
+        int amount = stack.getAmount();
+
+        int[] byMaterial = ordinalsByMaterial.get(stack.getType());
+        if (byMaterial != null) {
+            for (int ordinal : byMaterial) counts[ordinal] += amount;
+        }
+
+        if (ordinalsByCustomId.isEmpty() || hook == null) return;
+        String customId = hook.getCustomId(stack);
+        int[] byCustomId = (customId != null) ? ordinalsByCustomId.get(customId) : null;
+        if (byCustomId != null) {
+            for (int ordinal : byCustomId) counts[ordinal] += amount;
+        }
+    }
+
+    /**
+     * 获取预热图标的副本 (未预热时降级为屏障方块)
+     */
+    @NotNull
+    public ItemStack getIcon(@NotNull MarketItem item) {
+        ItemStack icon = icons.get(item.getConfigKey());
+        return icon != null ? icon.clone() : new ItemStack(Material.BARRIER);
+    }
+}
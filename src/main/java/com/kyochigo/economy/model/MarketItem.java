@@ -1,6 +1,7 @@
 package com.kyochigo.economy.model;
 
 import com.google.gson.JsonObject;
+import com.kyochigo.economy.utils.ContentHash;
 import com.kyochigo.economy.utils.CraftEngineHook;
 import net.kyori.adventure.text.Component;
 import net.kyori.adventure.text.minimessage.MiniMessage;
@@ -13,6 +14,7 @@ import org.jetbrains.annotations.Nullable;
 
 import java.util.Arrays;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * 市场物品模型 (v3.3 补全版)
@@ -42,11 +44,21 @@ public class MarketItem {
     private final double lambda;
     private final boolean allowBuy;
     private final boolean allowSell;
+    // 每日限额 (0 表示不限)，名录加载时由 daily_limit 编译
+    private final int dailyLimit;
     private int n;
 
-    private double tempNeff = 0.0;
-    private double tempPrice = 0.0;
-    private double tempBuyPrice = 0.0;
+    // 行情快照：三项数值整体替换，多个区域线程并发读取时不会读到半更新的报价
+    private volatile Quote quote = Quote.EMPTY;
+    // 行情版本：每次行情数值实际变化时递增，供渲染缓存判定是否失效
+    private final AtomicInteger priceVersion = new AtomicInteger();
+
+    private record Quote(double sellPrice, double buyPrice, double neff) {
+        static final Quote EMPTY = new Quote(0.0, 0.0, 0.0);
+    }
+
+    // 纯文本名称缓存：名称来源均为不可变字段，只需渲染一次
+    private volatile String plainDisplayName;
 
     private MarketItem(Builder builder) {
         this.configKey = builder.key;
@@ -59,6 +71,7 @@ public class MarketItem {
         this.lambda = builder.lambda;
         this.allowBuy = builder.allowBuy;
         this.allowSell = builder.allowSell;
+        this.dailyLimit = Math.max(0, builder.dailyLimit);
         this.n = builder.initialN;
     }
 
@@ -103,7 +116,12 @@ public class MarketItem {
     }
 
     public String getPlainDisplayName() {
-        return PlainTextComponentSerializer.plainText().serialize(getDisplayNameComponent(null));
+        String cached = plainDisplayName;
+        if (cached == null) {
+            cached = PlainTextComponentSerializer.plainText().serialize(getDisplayNameComponent(null));
+            plainDisplayName = cached;
+        }
+        return cached;
     }
 
     @NotNull
@@ -129,6 +147,13 @@ public class MarketItem {
         return json;
     }
 
+    /**
+     * 名录内容指纹：覆盖所有同步到后端的字段，任一字段变化都会产生新指纹
+     */
+    public String getSyncHash() {
+        return ContentHash.hex(ContentHash.fnv1a64(toJsonObject().toString()));
+    }
+
     // =========================================================================
     // 核心修复区域：Standard Getters
     // =========================================================================
@@ -141,21 +166,41 @@ public class MarketItem {
     public double getLambda() { return lambda; }
     public boolean isAllowBuy() { return allowBuy; }
     public boolean isAllowSell() { return allowSell; }
+    public int getDailyLimit() { return dailyLimit; }
     public int getN() { return n; }
     
     // 行情数据 Getter [修复重点]
-    public double getTempNeff() { return tempNeff; }
-    public double getRawTempPrice() { return tempPrice; }
-    public double getRawTempBuyPrice() { return tempBuyPrice; }
-
-    public double getSellPrice() { return (tempPrice > PRICE_THRESHOLD) ? tempPrice : basePrice; }
-    public double getBuyPrice() { return (tempBuyPrice > PRICE_THRESHOLD) ? tempBuyPrice : basePrice * DEFAULT_BUY_MULTIPLIER; }
+    public double getTempNeff() { return quote.neff(); }
+    public double getRawTempPrice() { return quote.sellPrice(); }
+    public double getRawTempBuyPrice() { return quote.buyPrice(); }
+    public int getPriceVersion() { return priceVersion.get(); }
+
+    public double getSellPrice() {
+        double price = quote.sellPrice();
+        return (price > PRICE_THRESHOLD) ? price : basePrice;
+    }
+    public double getBuyPrice() {
+        double price = quote.buyPrice();
+        return (price > PRICE_THRESHOLD) ? price : basePrice * DEFAULT_BUY_MULTIPLIER;
+    }
 
     // Setters
     public void setN(int n) { this.n = n; }
-    public void setTempPrice(double p) { this.tempPrice = p; }
-    public void setTempBuyPrice(double p) { this.tempBuyPrice = p; }
-    public void setTempNeff(double n) { this.tempNeff = n; }
+    public synchronized void setTempPrice(double p) { updateQuote(p, quote.buyPrice(), quote.neff()); }
+    public synchronized void setTempBuyPrice(double p) { updateQuote(quote.sellPrice(), p, quote.neff()); }
+    public synchronized void setTempNeff(double n) { updateQuote(quote.sellPrice(), quote.buyPrice(), n); }
+
+    /**
+     * 整体写入一次行情快照 (任意线程调用)
+     * @return 行情是否实际发生变化 (仅变化时递增行情版本)
+     */
+    public synchronized boolean updateQuote(double sellPrice, double buyPrice, double neff) {
+        Quote next = new Quote(sellPrice, buyPrice, neff);
+        if (next.equals(quote)) return false;
+        this.quote = next;
+        priceVersion.incrementAndGet();
+        return true;
+    }
 
     public Material getMaterial() { 
         return Optional.ofNullable(Material.matchMaterial(id)).orElse(Material.BARRIER); 
@@ -167,6 +212,7 @@ public class MarketItem {
         private double basePrice, lambda;
         private boolean allowBuy = true, allowSell = true;
         private int initialN = 0;
+        private int dailyLimit = 0;
         public Builder key(String v) { this.key = v; return this; }
         public Builder type(String v) { this.type = v; return this; }
         public Builder id(String v) { this.id = v; return this; }
@@ -178,6 +224,7 @@ public class MarketItem {
         public Builder allowBuy(boolean v) { this.allowBuy = v; return this; }
         public Builder allowSell(boolean v) { this.allowSell = v; return this; }
         public Builder initialN(int v) { this.initialN = v; return this; }
+        public Builder dailyLimit(int v) { this.dailyLimit = v; return this; }
         public MarketItem build() { return new MarketItem(this); }
     }
 }
\ No newline at end of file
@@ -0,0 +1,27 @@
+package com.kyochigo.economy.model;
+
+import java.util.UUID;
+
+/**
+ * 成交事件 (Immutable Trade Event)
+ * <p>
+ * 职责：交易提交成功后由 TransactionManager 发布到 TradeJournal，
+ * 历史计数、统计、审计、指标等消费者各自异步处理，互不阻塞。
+ *
+ * @param tradeId    成交编号 (单调递增，用于审计追溯)
+ * @param itemKey    物品配置 Key
+ * @param amount     成交数量
+ * @param totalPrice 成交总额 (货币)
+ * @param envIndex   成交时锁定的环境指数
+ * @param balanceBefore 成交前账户余额
+ * @param balanceAfter  成交后账户余额
+ * @param timestamp  成交时间 (毫秒)
+ */
+public record TradeEvent(long tradeId, UUID playerId, String playerName, String itemKey, int amount,
+                         double totalPrice, boolean isBuy, double envIndex,
+                         double balanceBefore, double balanceAfter, long timestamp) {
+
+    public double unitPrice() {
+        return amount > 0 ? totalPrice / amount : 0.0;
+    }
+}
@@ -0,0 +1,44 @@
+package com.kyochigo.economy.utils;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 内容指纹工具 (FNV-1a 64 位)
+ * 职责：
+ * 1. fnv1a64 对字符序列逐字符计算指纹，结果与内容顺序相关。
+ * 2. ofEntries 先按 Key 排序再计算，为物品名录生成与遍历顺序无关的版本号，用于增量同步比对。
+ */
+public final class ContentHash {
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private ContentHash() {}
+
+    public static long fnv1a64(CharSequence content) {
+        long hash = FNV_OFFSET;
+        for (int i = 0; i < content.length(); i++) {
+            char c = content.charAt(i);
+            hash ^= (c & 0xFF);
+            hash *= FNV_PRIME;
+            hash ^= (c >>> 8);
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * 键值表的指纹 (按 Key 排序后拼接为 "key=value\n"，与 Map 的遍历顺序无关)
+     */
+    public static String ofEntries(Map<String, String> entries) {
+        StringBuilder canonical = new StringBuilder();
+        new TreeMap<>(entries).forEach((key, value) -> canonical.append(key).append('=').append(value).append('\n'));
+        return hex(fnv1a64(canonical));
+    }
+
+    public static String hex(long hash) {
+        String raw = Long.toHexString(hash);
+        return "0".repeat(16 - raw.length()) + raw;
+    }
+}
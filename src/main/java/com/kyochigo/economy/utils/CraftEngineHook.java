@@ -87,6 +87,18 @@ public class CraftEngineHook {
                 .orElse(false);
     }
 
+    /**
+     * 读取物品的 CraftEngine 自定义 ID (小写)，非自定义物品返回 null
+     */
+    @Nullable
+    public String getCustomId(@Nullable ItemStack item) {
+        if (!enabled || item == null || item.getType().isAir()) return null;
+        return itemManager.wrap(item)
+                .customId()
+                .map(key -> key.toString().toLowerCase())
+                .orElse(null);
+    }
+
     public boolean isEnabled() {
         return enabled;
     }
@@ -10,7 +10,6 @@ import net.kyori.adventure.text.Component;
 import net.kyori.adventure.text.minimessage.MiniMessage;
 import net.kyori.adventure.text.minimessage.tag.resolver.Placeholder;
 import net.kyori.adventure.text.minimessage.tag.resolver.TagResolver;
-import org.bukkit.Bukkit;
 import org.bukkit.Material;
 import org.bukkit.entity.Player;
 import org.bukkit.inventory.ItemStack;
@@ -48,8 +47,8 @@ public class FancyNpcsHook extends NpcAction {
 
         KyochigoPlugin plugin = KyochigoPlugin.getInstance();
 
-        // 使用调度器切换回主线程执行，防止异步打开 GUI 报错
-        Bukkit.getScheduler().runTask(plugin, () -> {
+        // 切换到拥有该玩家的区域线程执行 (Paper 下即主线程)，防止异步打开 GUI 报错
+        plugin.getTaskScheduler().runForEntity(player, () -> {
             // 1. 特殊逻辑：打开全分类看板
             if (ANALYZER_TRIGGERS.contains(value.toLowerCase())) {
                 plugin.getMarketManager().fetchMarketPricesAndOpenGui(player, true);
@@ -0,0 +1,180 @@
+package com.kyochigo.economy.utils;
+
+import com.kyochigo.economy.KyochigoPlugin;
+import io.papermc.paper.threadedregions.scheduler.ScheduledTask;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 令牌桶限流器 (GCRA 实现，单个 long 状态 + CAS 无锁更新)
+ * <p>
+ * 职责：
+ * 1. 按 玩家 × 动作 (报价、提交、菜单刷新、批量出售) 维护独立令牌桶，互不挤占额度。
+ * 2. 全局后端保护桶：突发流量在到达 BackendManager 之前即被削峰 (正式提交不受此桶限制)。
+ * 3. 玩家退出时移除其全部令牌桶，并定期清扫已完全回满的桶 (与新建桶等价)，内存只与活跃玩家数相关。
+ * <p>
+ * 每个桶仅保存 "理论到达时间" (TAT)：请求将其推后一个补充间隔，推后量超过突发容量即拒绝，
+ * 与容量为 burst、每秒补充 perSecond 个令牌的令牌桶等价。
+ */
+public class RateLimiter implements Listener {
+
+    /**
+     * 限流动作 (configKey 对应 config.yml 中 rate-limit 下的子节点)
+     */
+    public enum Action {
+        QUOTE("quote", 5, 2.0),
+        COMMIT("commit", 2, 1.0),
+        MENU_REFRESH("menu-refresh", 3, 1.0),
+        SELLALL("sellall", 1, 0.2),
+        // 全局后端保护桶 (不区分玩家)
+        BACKEND("backend", 200, 100.0);
+
+        private final String configKey;
+        private final int defaultBurst;
+        private final double defaultPerSecond;
+
+        Action(String configKey, int defaultBurst, double defaultPerSecond) {
+            this.configKey = configKey;
+            this.defaultBurst = defaultBurst;
+            this.defaultPerSecond = defaultPerSecond;
+        }
+
+        public String getConfigKey() { return configKey; }
+        public Limit getDefaultLimit() { return new Limit(defaultBurst, defaultPerSecond); }
+    }
+
+    /**
+     * 桶参数 (perSecond <= 0 表示不限流)
+     */
+    public record Limit(int burst, double perSecond) {
+        long intervalNanos() {
+            return perSecond > 0 ? (long) (1_000_000_000L / perSecond) : 0L;
+        }
+    }
+
+    private static final Action[] ACTIONS = Action.values();
+    private static final long SWEEP_INTERVAL_TICKS = 20L * 60;
+
+    private final KyochigoPlugin plugin;
+    // 以构造时刻为原点的单调时钟，保证 TAT 初始值 0 表示 "桶已满"
+    private final long origin = System.nanoTime();
+    private final Map<UUID, AtomicLongArray> buckets = new ConcurrentHashMap<>();
+    private final AtomicLong backendBucket = new AtomicLong();
+    private final LongAdder[] rejected = new LongAdder[ACTIONS.length];
+    private ScheduledTask sweepTask;
+
+    public RateLimiter(KyochigoPlugin plugin) {
+        this.plugin = plugin;
+        for (int i = 0; i < rejected.length; i++) rejected[i] = new LongAdder();
+    }
+
+    public void start() {
+        stop();
+        this.sweepTask = plugin.getTaskScheduler().runAsyncTimer(this::sweep, SWEEP_INTERVAL_TICKS, SWEEP_INTERVAL_TICKS);
+    }
+
+    public void stop() {
+        if (sweepTask != null) {
+            sweepTask.cancel();
+            sweepTask = null;
+        }
+    }
+
+    // =========================================================================
+    // 令牌获取
+    // =========================================================================
+
+    /**
+     * 尝试为玩家的某个动作获取一个令牌
+     * @return false 表示已超出该动作的速率限制
+     */
+    public boolean tryAcquire(@NotNull UUID uuid, @NotNull Action action) {
+        if (action == Action.BACKEND) return tryAcquireBackend();
+        Limit limit = plugin.getConfiguration().getRateLimit(action);
+        if (limit.intervalNanos() <= 0) return true;
+
+        AtomicLongArray state = buckets.computeIfAbsent(uuid, k -> new AtomicLongArray(ACTIONS.length));
+        int index = action.ordinal();
+        long now = now();
+        while (true) {
+            long current = state.get(index);
+            long next = advance(current, now, limit);
+            if (next < 0) return reject(action);
+            if (state.compareAndSet(index, current, next)) return true;
+        }
+    }
+
+    /**
+     * 全局后端保护：尝试获取一个后端请求令牌
+     */
+    public boolean tryAcquireBackend() {
+        Limit limit = plugin.getConfiguration().getRateLimit(Action.BACKEND);
+        if (limit.intervalNanos() <= 0) return true;
+
+        long now = now();
+        while (true) {
+            long current = backendBucket.get();
+            long next = advance(current, now, limit);
+            if (next < 0) return reject(Action.BACKEND);
+            if (backendBucket.compareAndSet(current, next)) return true;
+        }
+    }
+
+    public long getRejected(@NotNull Action action) {
+        return rejected[action.ordinal()].sum();
+    }
+
+    public int getTrackedPlayers() {
+        return buckets.size();
+    }
+
+    /**
+     * 计算放行后的新 TAT，超出突发容量时返回 -1
+     */
+    private static long advance(long tat, long now, Limit limit) {
+        long interval = limit.intervalNanos();
+        long next = Math.max(tat, now) + interval;
+        return (next - now > interval * Math.max(1, limit.burst())) ? -1L : next;
+    }
+
+    private boolean reject(Action action) {
+        rejected[action.ordinal()].increment();
+        return false;
+    }
+
+    private long now() {
+        return System.nanoTime() - origin;
+    }
+
+    // =========================================================================
+    // 内存回收
+    // =========================================================================
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onQuit(PlayerQuitEvent e) {
+        buckets.remove(e.getPlayer().getUniqueId());
+    }
+
+    /**
+     * 清扫所有动作均已回满的桶 (TAT 不晚于当前时间)
+     */
+    private void sweep() {
+        long now = now();
+        buckets.values().removeIf(state -> {
+            for (int i = 0; i < state.length(); i++) {
+                if (state.get(i) > now) return false;
+            }
+            return true;
+        });
+    }
+}
@@ -0,0 +1,152 @@
+package com.kyochigo.economy.utils;
+
+import com.kyochigo.economy.KyochigoPlugin;
+import io.papermc.paper.threadedregions.scheduler.ScheduledTask;
+import org.bukkit.Bukkit;
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Entity;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * 区域感知调度器 (Paper / Folia 通用)
+ * <p>
+ * 职责：
+ * 1. 玩家相关的工作 (背包增删、对话框、音效、打开菜单) 投递到该玩家的实体调度器，在拥有该玩家的区域线程执行。
+ * 2. 与具体玩家无关的全局工作 (名录替换、回调分发、行情推送入口) 投递到全局区域调度器。
+ * 3. 文件 I/O 与统计等后台工作投递到异步调度器。
+ * <p>
+ * Paper 同样实现了上述调度器 (全部落在主线程)，因此同一套代码在两种服务端上行为一致；
+ * 当前线程已拥有目标玩家时直接执行，不额外增加调度跳转。
+ * <p>
+ * 实体在投递时已退役 (玩家已下线) 则实体调度器不会执行任何回调，此时退役回调改在当前线程执行；
+ * 插件停用期间不再投递任务，resumeOn 直接在完成线程交付结果，保证结算链路总能走完。
+ */
+public class TaskScheduler {
+
+    private static final long MS_PER_TICK = 50L;
+
+    private final KyochigoPlugin plugin;
+    private final boolean folia;
+    private volatile boolean shuttingDown = false;
+
+    public TaskScheduler(KyochigoPlugin plugin) {
+        this.plugin = plugin;
+        this.folia = detectFolia();
+    }
+
+    public boolean isFolia() {
+        return folia;
+    }
+
+    /**
+     * 进入停用流程：此后 resumeOn 不再经由实体调度器 (停用期间调度器不会再执行本插件的任务)
+     */
+    public void beginShutdown() {
+        this.shuttingDown = true;
+    }
+
+    // =========================================================================
+    // 玩家 / 实体
+    // =========================================================================
+
+    /**
+     * 在拥有该实体的区域线程执行 (当前线程已拥有时立即执行；实体已移除时丢弃)
+     */
+    public void runForEntity(@NotNull Entity entity, @NotNull Runnable task) {
+        runForEntity(entity, task, null);
+    }
+
+    /**
+     * 在拥有该实体的区域线程执行
+     * @param retired 实体在任务执行前被移除 (玩家下线) 时改为执行的回调，为 null 表示丢弃；
+     *                投递时实体已退役则在当前线程立即执行 (此时不存在拥有该实体的区域)
+     */
+    public void runForEntity(@NotNull Entity entity, @NotNull Runnable task, @Nullable Runnable retired) {
+        if (Bukkit.isOwnedByCurrentRegion(entity)) {
+            task.run();
+            return;
+        }
+        // 实体已退役时 run 返回 null，且两个回调都不会被调用
+        if (entity.getScheduler().run(plugin, t -> task.run(), retired) == null && retired != null) {
+            retired.run();
+        }
+    }
+
+    /**
+     * 将异步结果转交到拥有该实体的区域线程完成
+     * 实体已退役或插件正在停用时在完成线程直接交付，保证后续结算 / 补偿不被丢弃；
+     * 因此后续步骤操作玩家背包前须确认当前线程拥有该玩家 (见 AssetTransaction)。
+     */
+    @NotNull
+    public <T> CompletableFuture<T> resumeOn(@NotNull Entity entity, @NotNull CompletableFuture<T> future) {
+        CompletableFuture<T> resumed = new CompletableFuture<>();
+        future.whenComplete((value, error) -> {
+            Runnable deliver = () -> {
+                if (error != null) resumed.completeExceptionally(error);
+                else resumed.complete(value);
+            };
+            if (shuttingDown) deliver.run();
+            else runForEntity(entity, deliver, deliver);
+        });
+        return resumed;
+    }
+
+    /**
+     * 向指令发送者回执：玩家走实体调度器，控制台走全局调度器
+     */
+    public void runForSender(@NotNull CommandSender sender, @NotNull Runnable task) {
+        if (sender instanceof Entity entity) runForEntity(entity, task);
+        else runGlobal(task);
+    }
+
+    // =========================================================================
+    // 全局区域
+    // =========================================================================
+
+    public void runGlobal(@NotNull Runnable task) {
+        if (Bukkit.isGlobalTickThread()) {
+            task.run();
+            return;
+        }
+        Bukkit.getGlobalRegionScheduler().execute(plugin, task);
+    }
+
+    /**
+     * 全局区域定时任务 (延迟与周期单位为 Tick，延迟至少 1 Tick)
+     */
+    @NotNull
+    public ScheduledTask runGlobalTimer(@NotNull Consumer<ScheduledTask> task, long delayTicks, long periodTicks) {
+        return Bukkit.getGlobalRegionScheduler().runAtFixedRate(plugin, task, Math.max(1L, delayTicks), periodTicks);
+    }
+
+    // =========================================================================
+    // 异步
+    // =========================================================================
+
+    public void runAsync(@NotNull Runnable task) {
+        Bukkit.getAsyncScheduler().runNow(plugin, t -> task.run());
+    }
+
+    /**
+     * 异步定时任务 (延迟与周期以 Tick 计，按 50ms/Tick 换算为墙钟时间)
+     */
+    @NotNull
+    public ScheduledTask runAsyncTimer(@NotNull Runnable task, long delayTicks, long periodTicks) {
+        return Bukkit.getAsyncScheduler().runAtFixedRate(plugin, t -> task.run(),
+                Math.max(1L, delayTicks) * MS_PER_TICK, periodTicks * MS_PER_TICK, TimeUnit.MILLISECONDS);
+    }
+
+    private static boolean detectFolia() {
+        try {
+            Class.forName("io.papermc.paper.threadedregions.RegionizedServer");
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+}